@@ -40,6 +40,7 @@ import com.thewizrd.shared_resources.sharedDeps
 import com.thewizrd.shared_resources.utils.JSONParser
 import com.thewizrd.shared_resources.utils.Logger
 import com.thewizrd.simplewear.camera.TorchListener
+import com.thewizrd.simplewear.helpers.AppIconCache
 import com.thewizrd.simplewear.helpers.PhoneStatusHelper
 import com.thewizrd.simplewear.media.MediaControllerService
 import com.thewizrd.simplewear.services.CallControllerService
@@ -269,6 +270,9 @@ class App : Application(), ActivityLifecycleCallbacks, Configuration.Provider {
             }
         }
 
+        // Drop cached app icons as apps are updated or removed
+        AppIconCache.registerListener(applicationContext)
+
         val oldHandler = Thread.getDefaultUncaughtExceptionHandler()
         Thread.setDefaultUncaughtExceptionHandler { t, e ->
             Logger.writeLine(Log.ERROR, e, "Uncaught exception!")
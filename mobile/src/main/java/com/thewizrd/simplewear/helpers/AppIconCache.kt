@@ -0,0 +1,251 @@
+package com.thewizrd.simplewear.helpers
+
+import android.content.BroadcastReceiver
+import android.content.Context
+import android.content.Intent
+import android.content.IntentFilter
+import android.graphics.drawable.Drawable
+import android.util.Log
+import android.util.LruCache
+import androidx.core.content.ContextCompat
+import androidx.core.content.pm.PackageInfoCompat
+import com.thewizrd.shared_resources.appLib
+import com.thewizrd.shared_resources.data.AppCatalogKeys
+import com.thewizrd.shared_resources.utils.ImageUtils
+import com.thewizrd.shared_resources.utils.ImageUtils.toByteArray
+import com.thewizrd.shared_resources.utils.Logger
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.launch
+import kotlinx.coroutines.sync.Mutex
+import kotlinx.coroutines.sync.withLock
+import kotlinx.coroutines.withContext
+import java.io.File
+import java.util.concurrent.ConcurrentHashMap
+
+/**
+ * Persistent cache of rendered app icons
+ *
+ * Icons are stored encoded and keyed by package, activity, version code, density and size,
+ * so an icon is only rendered again when the app changes. Entries of a package are dropped
+ * when it is added, removed or replaced. The disk cache is a bounded LRU, so entries left
+ * behind by a missed broadcast (e.g. while the process was not running) are evicted over time
+ */
+object AppIconCache {
+    private const val TAG = "AppIconCache"
+
+    private const val CACHE_DIR = "app_icons"
+    private const val TEMP_FILE_SUFFIX = ".tmp"
+    private const val MAX_DISK_BYTES = 4L * 1024 * 1024 // 4MB
+    private const val MAX_MEMORY_BYTES = 512 * 1024 // 512KB
+
+    private val memoryCache = object : LruCache<String, ByteArray>(MAX_MEMORY_BYTES) {
+        override fun sizeOf(key: String, value: ByteArray): Int = value.size
+    }
+
+    private val diskLock = Mutex()
+
+    // Disk entries and their sizes in access order; loaded on first use
+    private var diskEntries: LinkedHashMap<String, Long>? = null
+    private var diskSize = 0L
+
+    // Version codes of packages; looked up once instead of on every icon request
+    private val versionCodes = ConcurrentHashMap<String, Long>()
+
+    var isRegistered = false
+        private set
+
+    private val packageReceiver = lazy {
+        object : BroadcastReceiver() {
+            override fun onReceive(context: Context, intent: Intent) {
+                val packageName = intent.data?.schemeSpecificPart ?: return
+                invalidate(packageName)
+            }
+        }
+    }
+
+    /**
+     * Returns the encoded icon of the activity; rendered with [loadIcon] if not cached
+     */
+    suspend fun getIcon(
+        packageName: String,
+        activityName: String?,
+        sizePx: Int,
+        loadIcon: () -> Drawable?
+    ): ByteArray? {
+        val fileName = getFileName(packageName, activityName, sizePx)
+
+        memoryCache.get(fileName)?.let { return it }
+
+        val cachedIcon = withContext(Dispatchers.IO) {
+            diskLock.withLock {
+                runCatching {
+                    if (getDiskEntries()[fileName] == null) return@runCatching null
+
+                    val file = File(getCacheDir(), fileName)
+                    file.readBytes().also {
+                        // Keep the access order across restarts
+                        file.setLastModified(System.currentTimeMillis())
+                    }
+                }.onFailure {
+                    Logger.error(TAG, it, "error reading icon")
+                    removeDiskEntry(fileName)
+                }.getOrNull()
+            }
+        }
+
+        if (cachedIcon != null) {
+            memoryCache.put(fileName, cachedIcon)
+            return cachedIcon
+        }
+
+        val icon = runCatching {
+            loadIcon()?.let {
+                ImageUtils.bitmapFromDrawable(it, sizePx, sizePx).toByteArray()
+            }
+        }.getOrNull() ?: return null
+
+        memoryCache.put(fileName, icon)
+
+        withContext(Dispatchers.IO) {
+            diskLock.withLock {
+                runCatching {
+                    val entries = getDiskEntries()
+                    val cacheDir = getCacheDir()
+
+                    // Write to a temp file first; readers never see a partial icon
+                    val tmpFile = File.createTempFile(fileName, TEMP_FILE_SUFFIX, cacheDir)
+                    tmpFile.writeBytes(icon)
+                    if (!tmpFile.renameTo(File(cacheDir, fileName))) {
+                        tmpFile.delete()
+                        return@runCatching
+                    }
+
+                    entries.remove(fileName)?.let { diskSize -= it }
+                    entries[fileName] = icon.size.toLong()
+                    diskSize += icon.size
+
+                    trimDiskCache(entries)
+                }.onFailure {
+                    Logger.error(TAG, it, "error writing icon")
+                }
+            }
+        }
+
+        return icon
+    }
+
+    /**
+     * Drops the cached icons of the package
+     */
+    fun invalidate(packageName: String) {
+        val prefix = AppCatalogKeys.getIconKeyPrefix(packageName)
+
+        versionCodes.remove(packageName)
+        memoryCache.snapshot().keys
+            .filter { it.startsWith(prefix) }
+            .forEach { memoryCache.remove(it) }
+
+        appLib.appScope.launch(Dispatchers.IO) {
+            diskLock.withLock {
+                runCatching {
+                    getDiskEntries().keys
+                        .filter { it.startsWith(prefix) }
+                        .forEach { removeDiskEntry(it) }
+                }.onFailure {
+                    Logger.writeLine(Log.ERROR, it)
+                }
+            }
+        }
+    }
+
+    fun registerListener(context: Context): Boolean {
+        if (isRegistered) return true
+
+        return runCatching {
+            val filter = IntentFilter().apply {
+                addAction(Intent.ACTION_PACKAGE_ADDED)
+                addAction(Intent.ACTION_PACKAGE_REMOVED)
+                addAction(Intent.ACTION_PACKAGE_REPLACED)
+                addAction(Intent.ACTION_PACKAGE_CHANGED)
+                addDataScheme("package")
+            }
+
+            // Receiver exported for system broadcasts
+            ContextCompat.registerReceiver(
+                context.applicationContext,
+                packageReceiver.value,
+                filter,
+                ContextCompat.RECEIVER_EXPORTED
+            )
+
+            isRegistered = true
+            true
+        }.onFailure {
+            Logger.writeLine(Log.ERROR, it)
+        }.getOrDefault(false)
+    }
+
+    private fun getFileName(packageName: String, activityName: String?, sizePx: Int): String {
+        val context = appLib.context
+
+        val versionCode = versionCodes.getOrPut(packageName) {
+            runCatching {
+                PackageInfoCompat.getLongVersionCode(
+                    context.packageManager.getPackageInfo(packageName, 0)
+                )
+            }.getOrDefault(0L)
+        }
+
+        return AppCatalogKeys.getIconKey(
+            packageName,
+            activityName,
+            versionCode,
+            context.resources.displayMetrics.densityDpi,
+            sizePx
+        )
+    }
+
+    private fun getCacheDir(): File {
+        return File(appLib.context.cacheDir, CACHE_DIR).apply { mkdirs() }
+    }
+
+    private fun getDiskEntries(): LinkedHashMap<String, Long> {
+        diskEntries?.let { return it }
+
+        val entries = LinkedHashMap<String, Long>(16, 0.75f, true)
+        diskSize = 0L
+
+        getCacheDir().listFiles()
+            ?.sortedBy { it.lastModified() }
+            ?.forEach {
+                if (it.name.endsWith(TEMP_FILE_SUFFIX)) {
+                    // Left behind by an interrupted write
+                    it.delete()
+                } else {
+                    entries[it.name] = it.length()
+                    diskSize += it.length()
+                }
+            }
+
+        diskEntries = entries
+        trimDiskCache(entries)
+
+        return entries
+    }
+
+    private fun trimDiskCache(entries: LinkedHashMap<String, Long>) {
+        val iterator = entries.entries.iterator()
+
+        while (diskSize > MAX_DISK_BYTES && iterator.hasNext()) {
+            val (key, size) = iterator.next()
+            iterator.remove()
+            diskSize -= size
+            File(getCacheDir(), key).delete()
+        }
+    }
+
+    private fun removeDiskEntry(fileName: String) {
+        diskEntries?.remove(fileName)?.let { diskSize -= it }
+        File(getCacheDir(), fileName).delete()
+    }
+}
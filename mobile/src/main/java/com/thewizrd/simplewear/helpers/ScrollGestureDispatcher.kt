@@ -0,0 +1,184 @@
+package com.thewizrd.simplewear.helpers
+
+import android.accessibilityservice.AccessibilityService
+import android.accessibilityservice.GestureDescription
+import android.accessibilityservice.GestureDescription.StrokeDescription
+import android.graphics.Path
+import android.hardware.display.DisplayManager
+import android.os.Build
+import android.view.Display
+import android.view.ViewConfiguration
+import androidx.annotation.RequiresApi
+import kotlinx.coroutines.delay
+import kotlin.math.abs
+import kotlin.math.roundToLong
+
+/**
+ * Turns scroll deltas streamed from the watch into accessibility gestures
+ *
+ * Deltas are accumulated as they arrive and dispatched once per display frame, scaled from the
+ * watch screen to the phone screen. On Android O+ the frames are segments of one continued
+ * stroke, so the touch follows the finger on the watch; on older versions every frame with
+ * enough movement is dispatched as its own swipe
+ *
+ * @param watchWidth screen width of the watch in px
+ * @param watchHeight screen height of the watch in px
+ */
+class ScrollGestureDispatcher(
+    private val service: AccessibilityService,
+    watchWidth: Float,
+    watchHeight: Float
+) {
+    companion object {
+        private const val DEFAULT_REFRESH_RATE = 60f
+        private const val MIN_FRAME_INTERVAL_MS = 8L
+    }
+
+    private val screenWidth: Float
+    private val screenHeight: Float
+    private val scaleX: Float
+    private val scaleY: Float
+    private val touchSlop: Int
+    private val frameIntervalMs: Long
+
+    private val lock = Any()
+    private var pendingX = 0f
+    private var pendingY = 0f
+
+    // Pointer position and the stroke it belongs to (continued strokes only)
+    private var pointerX: Float
+    private var pointerY: Float
+    private var stroke: StrokeDescription? = null
+
+    init {
+        val displayMetrics = service.applicationContext.resources.displayMetrics
+        screenWidth = displayMetrics.widthPixels.toFloat()
+        screenHeight = displayMetrics.heightPixels.toFloat()
+        scaleX = if (watchWidth > 0) screenWidth / watchWidth else 1f
+        scaleY = if (watchHeight > 0) screenHeight / watchHeight else 1f
+        touchSlop = ViewConfiguration.get(service).scaledTouchSlop
+
+        val refreshRate = service.getSystemService(DisplayManager::class.java)
+            ?.getDisplay(Display.DEFAULT_DISPLAY)?.refreshRate
+            ?.takeIf { it > 0 } ?: DEFAULT_REFRESH_RATE
+        frameIntervalMs = (1000 / refreshRate).roundToLong().coerceAtLeast(MIN_FRAME_INTERVAL_MS)
+
+        pointerX = screenWidth / 2f
+        pointerY = screenHeight / 2f
+    }
+
+    /**
+     * Adds a delta (in watch px); may be called from any thread
+     */
+    fun addDelta(dX: Float, dY: Float) {
+        synchronized(lock) {
+            pendingX += dX
+            pendingY += dY
+        }
+    }
+
+    /**
+     * Dispatches the accumulated deltas every frame until [isEnded] returns true, then releases
+     * the touch
+     */
+    suspend fun dispatchFrames(isEnded: () -> Boolean) {
+        while (true) {
+            val ended = isEnded()
+
+            val (dX, dY) = synchronized(lock) {
+                (pendingX * scaleX to pendingY * scaleY).also {
+                    pendingX = 0f
+                    pendingY = 0f
+                }
+            }
+
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+                dispatchSegment(dX, dY, ended)
+            } else {
+                dispatchSwipe(dX, dY, ended)
+            }
+
+            if (ended) break
+
+            delay(frameIntervalMs)
+        }
+    }
+
+    @RequiresApi(Build.VERSION_CODES.O)
+    private fun dispatchSegment(dX: Float, dY: Float, isLast: Boolean) {
+        val isIdle = dX == 0f && dY == 0f
+        if (isIdle && (!isLast || stroke == null)) return
+
+        // Strokes need a non-empty path; release the touch with a 1px move
+        val moveX = if (isIdle) 1f else dX
+        val endX = pointerX + moveX
+        val endY = pointerY + dY
+
+        // Lift if the pointer would leave the screen; the movement continues from the center
+        // with the next frame
+        if (stroke != null && !isOnScreen(endX, endY) && !isLast) {
+            val liftY = if (pointerY > 0) pointerY - 1f else pointerY + 1f
+            dispatchStroke(pointerX, pointerY, pointerX, liftY, false)
+            addDelta(dX / scaleX, dY / scaleY)
+            return
+        }
+
+        dispatchStroke(
+            pointerX, pointerY,
+            endX.coerceIn(0f, screenWidth - 1), endY.coerceIn(0f, screenHeight - 1),
+            !isLast
+        )
+    }
+
+    @RequiresApi(Build.VERSION_CODES.O)
+    private fun dispatchStroke(
+        startX: Float, startY: Float, endX: Float, endY: Float, willContinue: Boolean
+    ) {
+        val path = Path().apply {
+            moveTo(startX, startY)
+            lineTo(endX, endY)
+        }
+
+        val current = stroke
+        val next = current?.continueStroke(path, 0, frameIntervalMs, willContinue)
+            ?: StrokeDescription(path, 0, frameIntervalMs, willContinue)
+
+        service.dispatchGesture(
+            GestureDescription.Builder().addStroke(next).build(), null, null
+        )
+
+        stroke = if (willContinue) next else null
+        pointerX = if (willContinue) endX else screenWidth / 2f
+        pointerY = if (willContinue) endY else screenHeight / 2f
+    }
+
+    private fun dispatchSwipe(dX: Float, dY: Float, isLast: Boolean) {
+        // Small movements are kept until they add up to a scroll
+        if (abs(dX) < touchSlop && abs(dY) < touchSlop) {
+            if (!isLast) addDelta(dX / scaleX, dY / scaleY)
+            return
+        }
+
+        val startX = screenWidth / 2f
+        val startY = screenHeight / 2f
+
+        val path = Path().apply {
+            moveTo(startX, startY)
+            lineTo(
+                (startX + dX).coerceIn(0f, screenWidth - 1),
+                (startY + dY).coerceIn(0f, screenHeight - 1)
+            )
+        }
+
+        service.dispatchGesture(
+            GestureDescription.Builder()
+                .addStroke(StrokeDescription(path, 0, frameIntervalMs))
+                .build(),
+            null, null
+        )
+    }
+
+    private fun isOnScreen(x: Float, y: Float): Boolean {
+        return x >= 0 && x < screenWidth && y >= 0 && y < screenHeight
+    }
+}
@@ -0,0 +1,197 @@
+package com.thewizrd.simplewear.media
+
+import android.graphics.Bitmap
+import android.os.Build
+import android.util.LruCache
+import androidx.core.graphics.scale
+import com.thewizrd.shared_resources.media.MediaArtworkSpec
+import com.thewizrd.shared_resources.utils.HashUtils
+import com.thewizrd.shared_resources.utils.ImageUtils.toByteArray
+import java.util.concurrent.ConcurrentHashMap
+import kotlin.math.roundToInt
+
+/**
+ * Encodes media artwork for the watch and tracks the artwork each node last received
+ *
+ * Artwork is identified by a fingerprint of the bitmap's pixels, so a bitmap re-created for an
+ * unchanged track (e.g. on play/pause) is neither re-encoded nor re-sent.
+ *
+ * Nodes which report a [MediaArtworkSpec] get artwork scaled down to their display size and
+ * encoded within their byte budget; others get the artwork as provided by the media app
+ */
+class MediaArtworkCache {
+    companion object {
+        const val NO_ARTWORK = 0L
+
+        private const val MAX_CACHE_SIZE = 1024 * 1024 // 1MB
+
+        private const val LEGACY_QUALITY = 50
+        private val ENCODE_QUALITIES = intArrayOf(85, 70, 55, 40)
+        private const val MIN_ARTWORK_SIZE = 96
+
+        // Reported by the node when connecting; shared with WearableDataListenerService
+        private val artworkSpecs = ConcurrentHashMap<String, MediaArtworkSpec>()
+
+        fun setArtworkSpec(nodeID: String, artworkSpec: MediaArtworkSpec?) {
+            if (artworkSpec != null) {
+                artworkSpecs[nodeID] = artworkSpec
+            } else {
+                artworkSpecs.remove(nodeID)
+            }
+        }
+
+        fun getArtworkSpec(nodeID: String): MediaArtworkSpec? = artworkSpecs[nodeID]
+    }
+
+    internal data class ArtworkKey(val fingerprint: Long, val artworkSpec: MediaArtworkSpec?)
+
+    class Artwork internal constructor(
+        internal val key: ArtworkKey,
+        val bytes: ByteArray?
+    )
+
+    private val encodedArtwork = object : LruCache<ArtworkKey, ByteArray>(MAX_CACHE_SIZE) {
+        override fun sizeOf(key: ArtworkKey, value: ByteArray): Int = value.size
+    }
+
+    // Artwork last sent to each node
+    private val sentArtwork = HashMap<String, ArtworkKey>()
+
+    // Last fingerprinted bitmap; avoids hashing the same instance again
+    private var lastBitmap: Bitmap? = null
+    private var lastGenerationId = 0
+    private var lastFingerprint = NO_ARTWORK
+
+    suspend fun getArtwork(bitmap: Bitmap?, artworkSpec: MediaArtworkSpec? = null): Artwork {
+        if (bitmap == null || bitmap.isRecycled) {
+            return Artwork(ArtworkKey(NO_ARTWORK, artworkSpec), null)
+        }
+
+        val key = ArtworkKey(getFingerprint(bitmap), artworkSpec)
+
+        val bytes = encodedArtwork.get(key) ?: encode(bitmap, artworkSpec).also {
+            encodedArtwork.put(key, it)
+        }
+
+        return Artwork(key, bytes)
+    }
+
+    @Synchronized
+    fun isSent(nodeID: String, artwork: Artwork): Boolean {
+        return sentArtwork[nodeID] == artwork.key
+    }
+
+    @Synchronized
+    fun setSent(nodeID: String, artwork: Artwork) {
+        sentArtwork[nodeID] = artwork.key
+    }
+
+    /**
+     * Forgets the artwork sent to the node; the next artwork update is always sent
+     */
+    @Synchronized
+    fun reset(nodeID: String) {
+        sentArtwork.remove(nodeID)
+    }
+
+    @Synchronized
+    fun clear() {
+        sentArtwork.clear()
+        encodedArtwork.evictAll()
+        lastBitmap = null
+        lastFingerprint = NO_ARTWORK
+    }
+
+    @Synchronized
+    private fun getFingerprint(bitmap: Bitmap): Long {
+        if (bitmap === lastBitmap && bitmap.generationId == lastGenerationId) {
+            return lastFingerprint
+        }
+
+        var hash = if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O && bitmap.config == Bitmap.Config.HARDWARE) {
+            // Pixels of hardware bitmaps can't be read; fall back to the instance
+            31L * System.identityHashCode(bitmap) + bitmap.generationId
+        } else {
+            hashPixels(bitmap)
+        }
+
+        // Reserve NO_ARTWORK for missing artwork
+        if (hash == NO_ARTWORK) hash = 1L
+
+        lastBitmap = bitmap
+        lastGenerationId = bitmap.generationId
+        lastFingerprint = hash
+
+        return hash
+    }
+
+    /**
+     * FNV-1a hash over the dimensions and pixels of the bitmap
+     */
+    private fun hashPixels(bitmap: Bitmap): Long {
+        var hash = HashUtils.FNV_OFFSET_BASIS
+
+        hash = HashUtils.fnv1a(hash, bitmap.width.toLong())
+        hash = HashUtils.fnv1a(hash, bitmap.height.toLong())
+
+        val row = IntArray(bitmap.width)
+        for (y in 0 until bitmap.height) {
+            bitmap.getPixels(row, 0, bitmap.width, 0, y, bitmap.width, 1)
+            for (pixel in row) {
+                hash = HashUtils.fnv1a(hash, pixel.toLong())
+            }
+        }
+
+        return hash
+    }
+
+    private suspend fun encode(bitmap: Bitmap, artworkSpec: MediaArtworkSpec?): ByteArray {
+        if (artworkSpec == null) {
+            return bitmap.toByteArray(format = Bitmap.CompressFormat.JPEG, quality = LEGACY_QUALITY)
+        }
+
+        var targetSize = artworkSpec.sizePx
+        var encoded = ByteArray(0)
+
+        while (true) {
+            val scaled = bitmap.scaleToFit(targetSize)
+
+            try {
+                for (quality in ENCODE_QUALITIES) {
+                    encoded = encodeSmallest(scaled, quality)
+                    if (encoded.size <= artworkSpec.maxBytes) return encoded
+                }
+            } finally {
+                if (scaled !== bitmap) scaled.recycle()
+            }
+
+            // Still over budget; lower the resolution
+            if (targetSize <= MIN_ARTWORK_SIZE) return encoded
+            targetSize = (targetSize * 3 / 4).coerceAtLeast(MIN_ARTWORK_SIZE)
+        }
+    }
+
+    private suspend fun encodeSmallest(bitmap: Bitmap, quality: Int): ByteArray {
+        val webpFormat = if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.R) {
+            Bitmap.CompressFormat.WEBP_LOSSY
+        } else {
+            @Suppress("DEPRECATION")
+            Bitmap.CompressFormat.WEBP
+        }
+
+        val jpeg = bitmap.toByteArray(format = Bitmap.CompressFormat.JPEG, quality = quality)
+        val webp = bitmap.toByteArray(format = webpFormat, quality = quality)
+
+        return if (webp.size < jpeg.size) webp else jpeg
+    }
+
+    private fun Bitmap.scaleToFit(sizePx: Int): Bitmap {
+        val scale = sizePx.toFloat() / maxOf(width, height)
+        if (scale >= 1f) return this
+
+        return scale(
+            (width * scale).roundToInt().coerceAtLeast(1),
+            (height * scale).roundToInt().coerceAtLeast(1)
+        )
+    }
+}
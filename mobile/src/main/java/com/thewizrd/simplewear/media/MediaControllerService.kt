@@ -49,10 +49,12 @@ import com.thewizrd.shared_resources.actions.AudioStreamType
 import com.thewizrd.shared_resources.actions.ValueDirection
 import com.thewizrd.shared_resources.data.AppItemData
 import com.thewizrd.shared_resources.helpers.MediaHelper
+import com.thewizrd.shared_resources.helpers.WireProtocolHelper
 import com.thewizrd.shared_resources.helpers.toImmutableCompatFlag
 import com.thewizrd.shared_resources.media.ActionItem
 import com.thewizrd.shared_resources.media.BrowseMediaItems
 import com.thewizrd.shared_resources.media.CustomControls
+import com.thewizrd.shared_resources.media.MediaDataSerializer
 import com.thewizrd.shared_resources.media.MediaItem
 import com.thewizrd.shared_resources.media.MediaMetaData
 import com.thewizrd.shared_resources.media.MediaPlayerState
@@ -60,7 +62,9 @@ import com.thewizrd.shared_resources.media.PlaybackState
 import com.thewizrd.shared_resources.media.PositionState
 import com.thewizrd.shared_resources.media.QueueItem
 import com.thewizrd.shared_resources.media.QueueItems
+import com.thewizrd.shared_resources.utils.ConflatedRateLimiter
 import com.thewizrd.shared_resources.utils.ContextUtils.dpToPx
+import com.thewizrd.shared_resources.utils.FramedStreamWriter
 import com.thewizrd.shared_resources.utils.ImageUtils
 import com.thewizrd.shared_resources.utils.ImageUtils.toByteArray
 import com.thewizrd.shared_resources.utils.JSONParser
@@ -105,7 +109,18 @@ class MediaControllerService : Service(), MessageClient.OnMessageReceivedListene
         SupervisorJob() + Executors.newSingleThreadExecutor().asCoroutineDispatcher()
     )
     private var disconnectJob: Job? = null
-    private var volumeJob: Job? = null
+
+    // Volume changes from the watch and volume status replies; only the latest one is
+    // handled, at a fixed rate
+    private val volumeStatusUpdates = ConflatedRateLimiter<String?>(scope) { nodeID ->
+        sendVolumeStatus(nodeID)
+    }
+    private val volumeUpdates = ConflatedRateLimiter<Pair<String, Int>>(scope) {
+        val (nodeID, value) = it
+        setVolume(value)
+        volumeStatusUpdates.submit(nodeID)
+    }
+
     private lateinit var mMainHandler: Handler
 
     private lateinit var mAvailableMediaApps: MutableSet<MediaAppDetails>
@@ -114,6 +129,7 @@ class MediaControllerService : Service(), MessageClient.OnMessageReceivedListene
     private lateinit var mMessageClient: MessageClient
 
     private lateinit var connectedNodes: MutableSet<String>
+    private val mArtworkCache = MediaArtworkCache()
 
     private var mController: MediaControllerCompat? = null
     private var mBrowser: MediaBrowserCompat? = null
@@ -615,7 +631,7 @@ class MediaControllerService : Service(), MessageClient.OnMessageReceivedListene
         }
 
         override fun onAudioInfoChanged(info: MediaControllerCompat.PlaybackInfo?) {
-            scope.launch { sendVolumeStatus() }
+            volumeStatusUpdates.submit(null)
         }
 
         private fun onUpdate() {
@@ -698,7 +714,10 @@ class MediaControllerService : Service(), MessageClient.OnMessageReceivedListene
                 Logger.debug(TAG, "sending media info")
 
                 sendMediaPlayerState(playerState = playerState)
-                sendMediaArtwork(bitmap = artBitmap)
+                sendMediaArtwork(
+                    bitmap = artBitmap,
+                    trackKey = MediaHelper.getTrackKey(mediaMetaData)
+                )
 
                 if (Settings.isBridgeMediaEnabled()) {
                     if (playbackState?.isPlaybackStateActive() == true) {
@@ -820,7 +839,7 @@ class MediaControllerService : Service(), MessageClient.OnMessageReceivedListene
                     PhoneStatusHelper.setVolume(this, ValueDirection.UP, AudioStreamType.MUSIC)
                 }
 
-                scope.launch { sendVolumeStatus(messageEvent.sourceNodeId) }
+                volumeStatusUpdates.submit(messageEvent.sourceNodeId)
             }
             MediaHelper.MediaVolumeDownPath -> {
                 if (!isNotificationListenerEnabled(messageEvent)) return
@@ -834,33 +853,15 @@ class MediaControllerService : Service(), MessageClient.OnMessageReceivedListene
                     PhoneStatusHelper.setVolume(this, ValueDirection.DOWN, AudioStreamType.MUSIC)
                 }
 
-                scope.launch { sendVolumeStatus(messageEvent.sourceNodeId) }
+                volumeStatusUpdates.submit(messageEvent.sourceNodeId)
             }
             MediaHelper.MediaVolumeStatusPath -> {
                 if (!isNotificationListenerEnabled(messageEvent)) return
-                scope.launch { sendVolumeStatus(messageEvent.sourceNodeId) }
+                volumeStatusUpdates.submit(messageEvent.sourceNodeId)
             }
             MediaHelper.MediaSetVolumePath -> {
                 if (!isNotificationListenerEnabled(messageEvent)) return
-                volumeJob?.cancel()
-                volumeJob = scope.launch {
-                    val value = messageEvent.data.bytesToInt()
-
-                    if (!isActive) return@launch
-
-                    var flags = AudioManager.FLAG_PLAY_SOUND
-                    if (mPowerManager.isInteractive) flags = flags or AudioManager.FLAG_SHOW_UI
-
-                    mController?.takeIf {
-                        it.playbackInfo?.volumeControl == VolumeProviderCompat.VOLUME_CONTROL_ABSOLUTE
-                    }?.setVolumeTo(value, flags) ?: run {
-                        mAudioManager.setStreamVolume(AudioManager.STREAM_MUSIC, value, flags)
-                    }
-
-                    if (!isActive) return@launch
-
-                    sendVolumeStatus(messageEvent.sourceNodeId)
-                }
+                volumeUpdates.submit(messageEvent.sourceNodeId to messageEvent.data.bytesToInt())
             }
             MediaHelper.MediaActionsPath -> {
                 if (!isNotificationListenerEnabled(messageEvent)) return
@@ -884,15 +885,19 @@ class MediaControllerService : Service(), MessageClient.OnMessageReceivedListene
 
             MediaHelper.MediaPlayerStatePath -> {
                 if (!isNotificationListenerEnabled(messageEvent)) return
+                // Requested explicitly; the node expects artwork in response
+                mArtworkCache.reset(messageEvent.sourceNodeId)
                 sendMediaInfo()
             }
 
             MediaHelper.MediaPlayerConnectPath -> {
                 connectedNodes.add(messageEvent.sourceNodeId)
+                mArtworkCache.reset(messageEvent.sourceNodeId)
             }
 
             MediaHelper.MediaPlayerDisconnectPath -> {
                 connectedNodes.remove(messageEvent.sourceNodeId)
+                mArtworkCache.reset(messageEvent.sourceNodeId)
             }
 
             MediaHelper.MediaPlayerAppInfoPath -> {
@@ -983,10 +988,16 @@ class MediaControllerService : Service(), MessageClient.OnMessageReceivedListene
                         val channel = openChannel(node, path).await()
                         val outputStream = getOutputStream(channel).await()
 
-                        outputStream.bufferedWriter().use { writer ->
-                            writer.write("data: ${JSONParser.serializer(data, type)}")
-                            writer.newLine()
-                            writer.flush()
+                        if (WireProtocolHelper.isFramedChannelSupported(node)) {
+                            outputStream.buffered().use {
+                                MediaDataSerializer.serialize(data, FramedStreamWriter(it))
+                            }
+                        } else {
+                            outputStream.bufferedWriter().use { writer ->
+                                writer.write("data: ${JSONParser.serializer(data, type)}")
+                                writer.newLine()
+                                writer.flush()
+                            }
                         }
                         close(channel)
                     }
@@ -1010,10 +1021,43 @@ class MediaControllerService : Service(), MessageClient.OnMessageReceivedListene
         )
     }
 
-    private suspend fun sendMediaArtwork(nodeID: String? = null, bitmap: Bitmap? = null) {
-        val artworkBytes = bitmap?.toByteArray(format = Bitmap.CompressFormat.JPEG, quality = 50)
-        Logger.debug(TAG, "sendArtwork - bytes (${artworkBytes?.size ?: 0})")
-        mWearableManager.sendMessage(nodeID, MediaHelper.MediaPlayerArtPath, artworkBytes)
+    /**
+     * @param trackKey key of the track the artwork belongs to; sent along so the watch
+     * caches the artwork under its track
+     */
+    private suspend fun sendMediaArtwork(
+        nodeID: String? = null,
+        bitmap: Bitmap? = null,
+        trackKey: String? = null
+    ) {
+        val nodeIDs = nodeID?.let { listOf(it) }
+            ?: mWearableManager.getWearNodesWithApp().map { it.id }
+
+        nodeIDs.forEach { id ->
+            // Encoded per artwork spec; nodes with the same spec share the result
+            val artwork = mArtworkCache.getArtwork(bitmap, MediaArtworkCache.getArtworkSpec(id))
+
+            // Skip artwork the node already has
+            if (mArtworkCache.isSent(id, artwork)) return@forEach
+
+            Logger.debug(TAG, "sendArtwork - node ($id), bytes (${artwork.bytes?.size ?: 0})")
+            // Only a delivered artwork counts as sent; a failed one is sent again next time
+            val payload = MediaHelper.createMediaPlayerArtPayload(id, trackKey, artwork.bytes)
+            if (mWearableManager.sendMessage(id, MediaHelper.MediaPlayerArtPath, payload)) {
+                mArtworkCache.setSent(id, artwork)
+            }
+        }
+    }
+
+    private fun setVolume(value: Int) {
+        var flags = AudioManager.FLAG_PLAY_SOUND
+        if (mPowerManager.isInteractive) flags = flags or AudioManager.FLAG_SHOW_UI
+
+        mController?.takeIf {
+            it.playbackInfo?.volumeControl == VolumeProviderCompat.VOLUME_CONTROL_ABSOLUTE
+        }?.setVolumeTo(value, flags) ?: run {
+            mAudioManager.setStreamVolume(AudioManager.STREAM_MUSIC, value, flags)
+        }
     }
 
     private suspend fun sendVolumeStatus(nodeID: String? = null) {
@@ -0,0 +1,62 @@
+package com.thewizrd.simplewear.wearable
+
+import com.thewizrd.shared_resources.actions.Action
+import com.thewizrd.shared_resources.actions.ActionSerializer
+import com.thewizrd.shared_resources.actions.Actions
+import com.thewizrd.shared_resources.actions.DashboardSyncState
+import java.util.EnumMap
+import kotlin.random.Random
+
+/**
+ * Tracks a monotonically increasing version for each dashboard action state sent to the watch
+ *
+ * Versions are only valid for the lifetime of the process; the [epoch] lets the watch
+ * detect a restart, in which case the full state is sent again
+ */
+object DashboardStateTracker {
+    val epoch = Random.nextLong(1, Long.MAX_VALUE)
+
+    private var currentVersion = 0L
+    private val entries = EnumMap<Actions, Entry>(Actions::class.java)
+
+    private class Entry(val state: ByteArray, val version: Long)
+
+    /**
+     * Records the current state of the action; the version is bumped if the state changed
+     */
+    @Synchronized
+    fun update(action: Action) {
+        val state = ActionSerializer.encode(action)
+        val entry = entries[action.actionType]
+
+        if (entry == null || !entry.state.contentEquals(state)) {
+            entries[action.actionType] = Entry(state, ++currentVersion)
+        }
+    }
+
+    /**
+     * Records the given action states and returns the ones changed since the given sync state
+     *
+     * @param syncState sync state last applied by the watch or null to return all actions
+     * @return the actions to send along with the resulting sync state
+     */
+    @Synchronized
+    fun getChanges(
+        actions: List<Action>,
+        syncState: DashboardSyncState?
+    ): Pair<List<Action>, DashboardSyncState> {
+        actions.forEach { update(it) }
+
+        val sinceVersion = syncState?.takeIf {
+            it.epoch == epoch && it.version <= currentVersion
+        }?.version
+
+        val changed = if (sinceVersion != null) {
+            actions.filter { (entries[it.actionType]?.version ?: Long.MAX_VALUE) > sinceVersion }
+        } else {
+            actions
+        }
+
+        return changed to DashboardSyncState(epoch, currentVersion)
+    }
+}
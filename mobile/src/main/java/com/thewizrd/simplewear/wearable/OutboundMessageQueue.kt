@@ -0,0 +1,193 @@
+package com.thewizrd.simplewear.wearable
+
+import android.os.SystemClock
+import android.util.Log
+import com.google.android.gms.wearable.Wearable
+import com.thewizrd.shared_resources.appLib
+import com.thewizrd.shared_resources.helpers.InCallUIHelper
+import com.thewizrd.shared_resources.helpers.MediaHelper
+import com.thewizrd.shared_resources.helpers.WearableHelper
+import com.thewizrd.shared_resources.utils.Logger
+import kotlinx.coroutines.CompletableDeferred
+import kotlinx.coroutines.CoroutineScope
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.SupervisorJob
+import kotlinx.coroutines.channels.Channel
+import kotlinx.coroutines.launch
+import kotlinx.coroutines.tasks.await
+import kotlinx.coroutines.withTimeoutOrNull
+import java.util.concurrent.atomic.AtomicLong
+import kotlin.coroutines.cancellation.CancellationException
+
+/**
+ * Process-wide outbound message queue for the wearable nodes
+ *
+ * Messages are sent in order per node, while nodes are served in parallel.
+ * Messages on state paths, where only the latest payload matters, are held for a short window;
+ * a newer payload for the same node and path supersedes the pending one. Other messages are
+ * sent as soon as possible and don't wait behind a held message
+ */
+object OutboundMessageQueue {
+    private const val TAG = "OutboundMessageQueue"
+
+    private const val COALESCE_WINDOW = 50L
+    private const val STATS_LOG_INTERVAL = 60 * 1000L
+
+    private val COALESCABLE_PATHS = hashSetOf(
+        WearableHelper.BatteryPath,
+        WearableHelper.BluetoothPath,
+        WearableHelper.WifiPath,
+        MediaHelper.MediaPlayerAppInfoPath,
+        MediaHelper.MediaPlayerStatePath,
+        MediaHelper.MediaPlayerArtPath,
+        MediaHelper.MediaPlayerStateBridgePath,
+        MediaHelper.MediaVolumeStatusPath,
+        InCallUIHelper.CallStatePath,
+        InCallUIHelper.CallStateBridgePath,
+        InCallUIHelper.MuteMicStatusPath,
+        InCallUIHelper.SpeakerphoneStatusPath
+    )
+
+    data class Stats(
+        val sent: Long,
+        val coalesced: Long,
+        val dropped: Long
+    )
+
+    private class Entry(
+        val path: String,
+        val data: ByteArray?,
+        val coalesce: Boolean,
+        val enqueuedAt: Long
+    ) {
+        val callers = mutableListOf<CompletableDeferred<Boolean>>()
+    }
+
+    private class NodeQueue {
+        val entries = ArrayDeque<Entry>()
+
+        // Wakes the drain loop while it waits on a held message
+        val signal = Channel<Unit>(Channel.CONFLATED)
+    }
+
+    private val scope = CoroutineScope(SupervisorJob() + Dispatchers.IO)
+
+    // Guarded by itself
+    private val nodeQueues = HashMap<String, NodeQueue>()
+
+    private val sentCount = AtomicLong()
+    private val coalescedCount = AtomicLong()
+    private val droppedCount = AtomicLong()
+
+    // Guarded by nodeQueues
+    private var lastStatsLogTime = 0L
+
+    val stats: Stats
+        get() = Stats(sentCount.get(), coalescedCount.get(), droppedCount.get())
+
+    fun isCoalescable(path: String): Boolean = COALESCABLE_PATHS.contains(path)
+
+    /**
+     * Queues the message for the node and waits until it, or the message superseding it, is sent
+     *
+     * @param coalesce whether the message may be superseded by a newer message on the same path
+     * @return true if the message was delivered to the message client
+     */
+    suspend fun send(
+        nodeID: String,
+        path: String,
+        data: ByteArray?,
+        coalesce: Boolean = isCoalescable(path)
+    ): Boolean {
+        val result = CompletableDeferred<Boolean>()
+
+        synchronized(nodeQueues) {
+            val isIdle = !nodeQueues.containsKey(nodeID)
+            val queue = nodeQueues.getOrPut(nodeID) { NodeQueue() }
+
+            var enqueuedAt = SystemClock.elapsedRealtime()
+            val superseded = if (coalesce) {
+                queue.entries.firstOrNull { it.coalesce && it.path == path }
+            } else {
+                null
+            }
+
+            if (superseded != null) {
+                // Keep the window of the first pending payload so a burst can't delay it forever
+                queue.entries.remove(superseded)
+                enqueuedAt = superseded.enqueuedAt
+                coalescedCount.incrementAndGet()
+            }
+
+            queue.entries.addLast(Entry(path, data, coalesce, enqueuedAt).apply {
+                superseded?.let { callers.addAll(it.callers) }
+                callers.add(result)
+            })
+
+            if (isIdle) {
+                scope.launch { drain(nodeID, queue) }
+            } else {
+                queue.signal.trySend(Unit)
+            }
+        }
+
+        return result.await()
+    }
+
+    private suspend fun drain(nodeID: String, queue: NodeQueue) {
+        val messageClient = Wearable.getMessageClient(appLib.context)
+
+        while (true) {
+            var waitMillis = 0L
+
+            val entry = synchronized(nodeQueues) {
+                if (queue.entries.isEmpty()) {
+                    nodeQueues.remove(nodeID)
+                    logStats(nodeID)
+                    return
+                }
+
+                val now = SystemClock.elapsedRealtime()
+                val next = queue.entries.firstOrNull {
+                    !it.coalesce || it.enqueuedAt + COALESCE_WINDOW <= now
+                }
+
+                if (next != null) {
+                    queue.entries.remove(next)
+                } else {
+                    waitMillis = queue.entries.minOf { it.enqueuedAt } + COALESCE_WINDOW - now
+                }
+
+                next
+            }
+
+            if (entry == null) {
+                withTimeoutOrNull(waitMillis) { queue.signal.receive() }
+                continue
+            }
+
+            val isSent = try {
+                messageClient.sendMessage(nodeID, entry.path, entry.data).await()
+                sentCount.incrementAndGet()
+                true
+            } catch (e: Exception) {
+                if (e is CancellationException) throw e
+
+                Logger.writeLine(Log.ERROR, e)
+                droppedCount.incrementAndGet()
+                false
+            }
+
+            entry.callers.forEach { it.complete(isSent) }
+        }
+    }
+
+    private fun logStats(nodeID: String) {
+        val now = SystemClock.elapsedRealtime()
+
+        if (lastStatsLogTime == 0L || now - lastStatsLogTime >= STATS_LOG_INTERVAL) {
+            lastStatsLogTime = now
+            Logger.debug(TAG, "queue drained; node = $nodeID, stats = $stats")
+        }
+    }
+}
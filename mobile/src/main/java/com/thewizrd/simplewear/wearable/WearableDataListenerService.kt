@@ -4,38 +4,45 @@ import android.content.Intent
 import android.os.Build
 import androidx.core.util.Pair
 import androidx.localbroadcastmanager.content.LocalBroadcastManager
+import com.google.android.gms.wearable.ChannelClient
 import com.google.android.gms.wearable.DataEvent
 import com.google.android.gms.wearable.DataEventBuffer
 import com.google.android.gms.wearable.DataMapItem
 import com.google.android.gms.wearable.MessageEvent
 import com.google.android.gms.wearable.WearableListenerService
-import com.thewizrd.shared_resources.actions.Action
+import com.thewizrd.shared_resources.actions.ActionSerializer
 import com.thewizrd.shared_resources.actions.ActionStatus
 import com.thewizrd.shared_resources.actions.Actions
 import com.thewizrd.shared_resources.actions.AudioStreamState
 import com.thewizrd.shared_resources.actions.AudioStreamType
 import com.thewizrd.shared_resources.actions.TimedAction
 import com.thewizrd.shared_resources.actions.ValueActionState
+import com.thewizrd.shared_resources.data.AppCatalogSerializer
+import com.thewizrd.shared_resources.data.AppIconSerializer
 import com.thewizrd.shared_resources.helpers.AppState
 import com.thewizrd.shared_resources.helpers.GestureUIHelper
 import com.thewizrd.shared_resources.helpers.InCallUIHelper
 import com.thewizrd.shared_resources.helpers.MediaHelper
+import com.thewizrd.shared_resources.helpers.MessagePathRouter
 import com.thewizrd.shared_resources.helpers.WearableHelper
+import com.thewizrd.shared_resources.helpers.WearableRpcClient
+import com.thewizrd.shared_resources.helpers.WireProtocolHelper
 import com.thewizrd.shared_resources.utils.JSONParser
 import com.thewizrd.shared_resources.utils.bytesToBool
 import com.thewizrd.shared_resources.utils.bytesToInt
 import com.thewizrd.shared_resources.utils.bytesToString
-import com.thewizrd.shared_resources.utils.longToBytes
 import com.thewizrd.shared_resources.utils.stringToBytes
 import com.thewizrd.simplewear.MainActivity
 import com.thewizrd.simplewear.helpers.PhoneStatusHelper
 import com.thewizrd.simplewear.media.MediaAppControllerUtils
+import com.thewizrd.simplewear.media.MediaArtworkCache
 import com.thewizrd.simplewear.media.MediaControllerService
 import com.thewizrd.simplewear.preferences.Settings
 import com.thewizrd.simplewear.services.CallControllerService
 import com.thewizrd.simplewear.services.NotificationListener
 import kotlinx.coroutines.Dispatchers
 import kotlinx.coroutines.runBlocking
+import kotlin.coroutines.EmptyCoroutineContext
 
 class WearableDataListenerService : WearableListenerService() {
     companion object {
@@ -46,10 +53,12 @@ class WearableDataListenerService : WearableListenerService() {
     }
 
     private lateinit var mWearMgr: WearableManager
+    private lateinit var mRouter: MessagePathRouter<MessageEvent>
 
     override fun onCreate() {
         super.onCreate()
         mWearMgr = WearableManager(this)
+        mRouter = createMessageRouter()
     }
 
     override fun onDestroy() {
@@ -58,27 +67,57 @@ class WearableDataListenerService : WearableListenerService() {
     }
 
     override fun onMessageReceived(messageEvent: MessageEvent) {
-        runBlocking(Dispatchers.Default) {
-            val ctx = this@WearableDataListenerService
+        // Responses sent within the request context are framed with its correlation id
+        val requestContext = WearableRpcClient.getRequestContext(messageEvent)
+            ?: EmptyCoroutineContext
 
-            if (messageEvent.path == WearableHelper.StartActivityPath) {
+        runBlocking(Dispatchers.Default + requestContext) {
+            mRouter.dispatch(messageEvent.path, WearableRpcClient.unwrap(messageEvent))
+        }
+    }
+
+    override fun onChannelOpened(channel: ChannelClient.Channel) {
+        when (channel.path) {
+            GestureUIHelper.ScrollStreamPath -> {
+                mWearMgr.receiveScrollStream(channel)
+            }
+
+            else -> {
+                super.onChannelOpened(channel)
+            }
+        }
+    }
+
+    private fun createMessageRouter(): MessagePathRouter<MessageEvent> {
+        val ctx = this
+
+        return MessagePathRouter<MessageEvent>().apply {
+            on(WearableHelper.StartActivityPath) {
                 val startIntent = Intent(ctx, MainActivity::class.java)
                     .setFlags(Intent.FLAG_ACTIVITY_CLEAR_TOP or Intent.FLAG_ACTIVITY_NEW_TASK or Intent.FLAG_ACTIVITY_CLEAR_TASK)
                 startActivity(startIntent)
-            } else if (messageEvent.path.startsWith(WearableHelper.ActionsPath)) {
-                val jsonData = messageEvent.data.bytesToString()
-                val action = JSONParser.deserializer(jsonData, Action::class.java)
+            }
+
+            onPrefix(WearableHelper.ActionsPath) { messageEvent ->
+                val action = ActionSerializer.deserialize(messageEvent.data)
                 mWearMgr.performAction(messageEvent.sourceNodeId, action!!)
-            } else if (messageEvent.path.startsWith(WearableHelper.UpdatePath)) {
-                mWearMgr.sendStatusUpdate(messageEvent.sourceNodeId, null)
-                mWearMgr.sendActionsUpdate(messageEvent.sourceNodeId)
-            } else if (messageEvent.path == WearableHelper.AppStatePath) {
+            }
+
+            onPrefix(WearableHelper.UpdatePath) { messageEvent ->
+                mWearMgr.sendDashboardUpdate(
+                    messageEvent.sourceNodeId,
+                    ActionSerializer.decodeSyncState(messageEvent.data)
+                )
+            }
+
+            on(WearableHelper.AppStatePath) { messageEvent ->
                 val wearAppState = AppState.valueOf(messageEvent.data.bytesToString())
                 if (wearAppState == AppState.FOREGROUND) {
-                    mWearMgr.sendStatusUpdate(messageEvent.sourceNodeId, null)
-                    mWearMgr.sendActionsUpdate(messageEvent.sourceNodeId)
+                    mWearMgr.sendDashboardUpdate(messageEvent.sourceNodeId)
                 }
-            } else if (messageEvent.path.startsWith(MediaHelper.MusicPlayersPath)) {
+            }
+
+            onPrefix(MediaHelper.MusicPlayersPath, Dispatchers.IO) { messageEvent ->
                 if (NotificationListener.isEnabled(ctx)) {
                     mWearMgr.sendSupportedMusicPlayers(messageEvent.sourceNodeId)
                     mWearMgr.sendMessage(
@@ -91,66 +130,110 @@ class WearableDataListenerService : WearableListenerService() {
                         ActionStatus.PERMISSION_DENIED.name.stringToBytes()
                     )
                 }
-            } else if (messageEvent.path == MediaHelper.OpenMusicPlayerPath) {
+            }
+
+            on(MediaHelper.OpenMusicPlayerPath) { messageEvent ->
                 val jsonData = messageEvent.data.bytesToString()
                 val pair = JSONParser.deserializer(jsonData, Pair::class.java)
                 val pkgName = pair?.first.toString()
                 val activityName = pair?.second.toString()
                 mWearMgr.startMusicPlayer(messageEvent.sourceNodeId, pkgName, activityName, false)
-            } else if (messageEvent.path == MediaHelper.PlayCommandPath) {
+            }
+
+            on(MediaHelper.PlayCommandPath) { messageEvent ->
                 val jsonData = messageEvent.data.bytesToString()
                 val pair = JSONParser.deserializer(jsonData, Pair::class.java)
                 val pkgName = pair?.first.toString()
                 val activityName = pair?.second.toString()
                 mWearMgr.startMusicPlayer(messageEvent.sourceNodeId, pkgName, activityName, true)
-            } else if (messageEvent.path == WearableHelper.BtDiscoverPath) {
+            }
+
+            on(WearableHelper.BtDiscoverPath) { messageEvent ->
                 val deviceName = messageEvent.data.bytesToString()
                 LocalBroadcastManager.getInstance(ctx)
                     .sendBroadcast(
                         Intent(ACTION_GETCONNECTEDNODE)
                             .putExtra(EXTRA_NODEDEVICENAME, deviceName)
                     )
-            } else if (messageEvent.data != null && messageEvent.path == WearableHelper.AudioStatusPath) {
+            }
+
+            on(WearableHelper.AudioStatusPath) { messageEvent ->
+                if (messageEvent.data == null) return@on
+
                 mWearMgr.sendAudioModeStatus(
                     messageEvent.sourceNodeId,
                     AudioStreamType.valueOf(messageEvent.data.bytesToString())
                 )
-            } else if (messageEvent.path == WearableHelper.AudioVolumePath) {
+            }
+
+            on(WearableHelper.AudioVolumePath) { messageEvent ->
                 val jsonData = messageEvent.data.bytesToString()
                 val streamData = JSONParser.deserializer(jsonData, AudioStreamState::class.java)
                 streamData?.let {
                     mWearMgr.setStreamVolume(messageEvent.sourceNodeId, it)
                 }
-            } else if (messageEvent.path == WearableHelper.ValueStatusPath) {
+            }
+
+            on(WearableHelper.ValueStatusPath) { messageEvent ->
                 val actionType = Actions.valueOf(messageEvent.data.bytesToInt())
                 mWearMgr.sendValueStatus(messageEvent.sourceNodeId, actionType)
-            } else if (messageEvent.path == WearableHelper.ValueStatusSetPath) {
+            }
+
+            on(WearableHelper.ValueStatusSetPath) { messageEvent ->
                 val jsonData = messageEvent.data.bytesToString()
                 val valueData = JSONParser.deserializer(jsonData, ValueActionState::class.java)
                 valueData?.let {
                     mWearMgr.setActionValue(messageEvent.sourceNodeId, it)
                 }
-            } else if (messageEvent.path == WearableHelper.BrightnessModePath) {
+            }
+
+            on(WearableHelper.BrightnessModePath) { messageEvent ->
                 mWearMgr.toggleBrightnessMode(messageEvent.sourceNodeId)
-            } else if (messageEvent.path == GestureUIHelper.GestureStatusPath) {
+            }
+
+            on(GestureUIHelper.GestureStatusPath) { messageEvent ->
                 mWearMgr.sendGestureActionStatus(messageEvent.sourceNodeId)
-            } else if (messageEvent.path == WearableHelper.TimedActionsStatusPath) {
+            }
+
+            on(WearableHelper.TimedActionsStatusPath) { messageEvent ->
                 mWearMgr.sendTimedActionsStatus(messageEvent.sourceNodeId)
-            } else if (messageEvent.path.startsWith(WearableHelper.StatusPath)) {
+            }
+
+            onPrefix(WearableHelper.StatusPath) { messageEvent ->
                 mWearMgr.sendStatusUpdate(messageEvent.sourceNodeId, messageEvent.path)
-            } else if (messageEvent.path == WearableHelper.AppsPath) {
-                mWearMgr.sendApps(messageEvent.sourceNodeId)
-            } else if (messageEvent.path == WearableHelper.LaunchAppPath) {
+            }
+
+            on(WearableHelper.AppsPath, Dispatchers.IO) { messageEvent ->
+                mWearMgr.sendApps(
+                    messageEvent.sourceNodeId,
+                    AppCatalogSerializer.parseManifestPayload(messageEvent.data)
+                )
+            }
+
+            onPrefix(WearableHelper.AppIconsPath, Dispatchers.IO) { messageEvent ->
+                mWearMgr.sendAppIcons(
+                    messageEvent.sourceNodeId,
+                    messageEvent.path,
+                    AppIconSerializer.parseRequestPayload(messageEvent.data)
+                )
+            }
+
+            on(WearableHelper.LaunchAppPath) { messageEvent ->
                 val jsonData = messageEvent.data.bytesToString()
                 val pair = JSONParser.deserializer(jsonData, Pair::class.java)
                 val pkgName = pair?.first.toString()
                 val activityName = pair?.second.toString()
                 mWearMgr.launchApp(messageEvent.sourceNodeId, pkgName, activityName)
-            } else if (messageEvent.path == MediaHelper.MediaPlayerConnectPath) {
+            }
+
+            on(MediaHelper.MediaPlayerConnectPath) { messageEvent ->
                 if (NotificationListener.isEnabled(ctx)) {
-                    val isAutoLaunch =
-                        messageEvent.data.size == 1 && messageEvent.data.bytesToBool()
-                    val packageName = messageEvent.data.bytesToString()
+                    val (data, artworkSpec) =
+                        MediaHelper.parseMediaPlayerConnectPayload(messageEvent.data)
+                    MediaArtworkCache.setArtworkSpec(messageEvent.sourceNodeId, artworkSpec)
+
+                    val isAutoLaunch = data.size == 1 && data.bytesToBool()
+                    val packageName = data.bytesToString()
 
                     MediaControllerService.enqueueWork(
                         ctx, Intent(ctx, MediaControllerService::class.java)
@@ -173,7 +256,9 @@ class WearableDataListenerService : WearableListenerService() {
                         ActionStatus.PERMISSION_DENIED.name.stringToBytes()
                     )
                 }
-            } else if (messageEvent.path == MediaHelper.MediaPlayerDisconnectPath) {
+            }
+
+            on(MediaHelper.MediaPlayerDisconnectPath) {
                 MediaControllerService.enqueueWork(
                     ctx, Intent(ctx, MediaControllerService::class.java)
                         .setAction(MediaControllerService.ACTION_DISCONNECTCONTROLLER)
@@ -182,7 +267,9 @@ class WearableDataListenerService : WearableListenerService() {
                             !Settings.isBridgeMediaEnabled()
                         )
                 )
-            } else if (messageEvent.path == MediaHelper.MediaPlayerAutoLaunchPath) {
+            }
+
+            on(MediaHelper.MediaPlayerAutoLaunchPath) { messageEvent ->
                 if (NotificationListener.isEnabled(ctx)) {
                     val status = PhoneStatusHelper.isMusicActive(ctx, false)
 
@@ -211,8 +298,9 @@ class WearableDataListenerService : WearableListenerService() {
                     )
                 }
             }
+
             /* InCall Actions */
-            else if (messageEvent.path == InCallUIHelper.ConnectPath) {
+            on(InCallUIHelper.ConnectPath) { messageEvent ->
                 if (PhoneStatusHelper.callStatePermissionEnabled(ctx) &&
                     (Build.VERSION.SDK_INT < Build.VERSION_CODES.O || PhoneStatusHelper.companionDeviceAssociated(
                         ctx
@@ -233,7 +321,9 @@ class WearableDataListenerService : WearableListenerService() {
                         ActionStatus.PERMISSION_DENIED.name.stringToBytes()
                     )
                 }
-            } else if (messageEvent.path == InCallUIHelper.DisconnectPath) {
+            }
+
+            on(InCallUIHelper.DisconnectPath) {
                 CallControllerService.enqueueWork(
                     ctx, Intent(ctx, CallControllerService::class.java)
                         .setAction(CallControllerService.ACTION_DISCONNECTCONTROLLER)
@@ -242,23 +332,41 @@ class WearableDataListenerService : WearableListenerService() {
                             !Settings.isBridgeCallsEnabled()
                         )
                 )
-            } else if (messageEvent.path == WearableHelper.VersionPath) {
+            }
+
+            on(WearableHelper.VersionPath) { messageEvent ->
+                WireProtocolHelper.onVersionPayloadReceived(
+                    messageEvent.sourceNodeId,
+                    messageEvent.data
+                )
                 mWearMgr.sendMessage(
                     messageEvent.sourceNodeId, messageEvent.path,
-                    WearableHelper.getAppVersionCode().longToBytes()
+                    WireProtocolHelper.createVersionPayload()
                 )
-            } else if (messageEvent.path == GestureUIHelper.ScrollPath) {
+            }
+
+            on(GestureUIHelper.ScrollPath) { messageEvent ->
                 mWearMgr.performScroll(messageEvent.sourceNodeId, messageEvent.data)
-            } else if (messageEvent.path == GestureUIHelper.DPadPath && Build.VERSION.SDK_INT >= Build.VERSION_CODES.TIRAMISU) {
-                val byteArr = messageEvent.data
-                val idx = byteArr.indexOfFirst { it > 0 }
-
-                mWearMgr.performDPadAction(messageEvent.sourceNodeId, idx)
-            } else if (messageEvent.path == GestureUIHelper.DPadClickPath && Build.VERSION.SDK_INT >= Build.VERSION_CODES.TIRAMISU) {
-                mWearMgr.performDPadClick(messageEvent.sourceNodeId)
-            } else if (messageEvent.path == GestureUIHelper.KeyEventPath) {
+            }
+
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.TIRAMISU) {
+                on(GestureUIHelper.DPadPath) { messageEvent ->
+                    val byteArr = messageEvent.data
+                    val idx = byteArr.indexOfFirst { it > 0 }
+
+                    mWearMgr.performDPadAction(messageEvent.sourceNodeId, idx)
+                }
+
+                on(GestureUIHelper.DPadClickPath) { messageEvent ->
+                    mWearMgr.performDPadClick(messageEvent.sourceNodeId)
+                }
+            }
+
+            on(GestureUIHelper.KeyEventPath) { messageEvent ->
                 mWearMgr.performKeyEvent(messageEvent.sourceNodeId, messageEvent.data.bytesToInt())
-            } else if (messageEvent.path == WearableHelper.TimedActionDeletePath) {
+            }
+
+            on(WearableHelper.TimedActionDeletePath) { messageEvent ->
                 val action = Actions.valueOf(messageEvent.data.bytesToString())
 
                 val status = PhoneStatusHelper.removedScheduledTimedAction(ctx, action)
@@ -269,7 +377,9 @@ class WearableDataListenerService : WearableListenerService() {
                     status.name.stringToBytes()
                 )
                 mWearMgr.sendTimedActionsStatus(messageEvent.sourceNodeId)
-            } else if (messageEvent.path == WearableHelper.TimedActionAddPath) {
+            }
+
+            on(WearableHelper.TimedActionAddPath) { messageEvent ->
                 val jsonData = messageEvent.data.bytesToString()
                 val action = JSONParser.deserializer(jsonData, TimedAction::class.java)
 
@@ -283,7 +393,9 @@ class WearableDataListenerService : WearableListenerService() {
                     status.name.stringToBytes()
                 )
                 mWearMgr.sendTimedActionsStatus(messageEvent.sourceNodeId)
-            } else if (messageEvent.path == WearableHelper.TimedActionUpdatePath) {
+            }
+
+            on(WearableHelper.TimedActionUpdatePath) { messageEvent ->
                 val jsonData = messageEvent.data.bytesToString()
                 val action = JSONParser.deserializer(jsonData, TimedAction::class.java)
 
@@ -298,7 +410,6 @@ class WearableDataListenerService : WearableListenerService() {
                 )
                 mWearMgr.sendTimedActionsStatus(messageEvent.sourceNodeId)
             }
-            return@runBlocking
         }
     }
 
@@ -9,7 +9,7 @@ import android.content.Context
 import android.content.Intent
 import android.content.pm.ApplicationInfo
 import android.content.pm.PackageManager
-import android.graphics.Bitmap
+import android.content.pm.ResolveInfo
 import android.os.Build
 import android.os.Bundle
 import android.util.Log
@@ -20,17 +20,21 @@ import androidx.media.MediaBrowserServiceCompat
 import com.google.android.gms.wearable.CapabilityClient
 import com.google.android.gms.wearable.CapabilityClient.OnCapabilityChangedListener
 import com.google.android.gms.wearable.CapabilityInfo
+import com.google.android.gms.wearable.ChannelClient
 import com.google.android.gms.wearable.Node
 import com.google.android.gms.wearable.Wearable
 import com.google.gson.reflect.TypeToken
 import com.google.gson.stream.JsonWriter
 import com.thewizrd.shared_resources.actions.ACTION_PERFORMACTION
 import com.thewizrd.shared_resources.actions.Action
+import com.thewizrd.shared_resources.actions.ActionSerializer
 import com.thewizrd.shared_resources.actions.ActionStatus
 import com.thewizrd.shared_resources.actions.Actions
 import com.thewizrd.shared_resources.actions.AudioStreamState
 import com.thewizrd.shared_resources.actions.AudioStreamType
 import com.thewizrd.shared_resources.actions.BatteryStatus
+import com.thewizrd.shared_resources.actions.DashboardSnapshot
+import com.thewizrd.shared_resources.actions.DashboardSyncState
 import com.thewizrd.shared_resources.actions.DNDChoice
 import com.thewizrd.shared_resources.actions.EXTRA_ACTION_CALLINGPKG
 import com.thewizrd.shared_resources.actions.EXTRA_ACTION_DATA
@@ -46,24 +50,38 @@ import com.thewizrd.shared_resources.actions.ValueAction
 import com.thewizrd.shared_resources.actions.ValueActionState
 import com.thewizrd.shared_resources.actions.VolumeAction
 import com.thewizrd.shared_resources.actions.toRemoteAction
+import com.thewizrd.shared_resources.appLib
+import com.thewizrd.shared_resources.data.AppCatalogItem
+import com.thewizrd.shared_resources.data.AppCatalogKeys
+import com.thewizrd.shared_resources.data.AppCatalogSerializer
+import com.thewizrd.shared_resources.data.AppCatalogSerializer.serialize
+import com.thewizrd.shared_resources.data.AppIconSerializer.serializeIcon
 import com.thewizrd.shared_resources.data.AppItemData
 import com.thewizrd.shared_resources.data.AppItemSerializer.serialize
 import com.thewizrd.shared_resources.helpers.GestureUIHelper
 import com.thewizrd.shared_resources.helpers.MediaHelper
+import com.thewizrd.shared_resources.helpers.ScrollStream
+import com.thewizrd.shared_resources.helpers.ScrollStreamReader
 import com.thewizrd.shared_resources.helpers.WearSettingsHelper
 import com.thewizrd.shared_resources.helpers.WearableHelper
+import com.thewizrd.shared_resources.helpers.WearableRpcClient
+import com.thewizrd.shared_resources.helpers.WireProtocolHelper
+import com.thewizrd.shared_resources.media.MediaDataSerializer
 import com.thewizrd.shared_resources.media.MusicPlayersData
+import com.thewizrd.shared_resources.utils.ConflatedRateLimiter
 import com.thewizrd.shared_resources.utils.ContextUtils.dpToPx
-import com.thewizrd.shared_resources.utils.ImageUtils
-import com.thewizrd.shared_resources.utils.ImageUtils.toByteArray
+import com.thewizrd.shared_resources.utils.FramedStreamWriter
 import com.thewizrd.shared_resources.utils.JSONParser
 import com.thewizrd.shared_resources.utils.Logger
+import com.thewizrd.shared_resources.utils.associateFirstBy
 import com.thewizrd.shared_resources.utils.booleanToBytes
+import com.thewizrd.shared_resources.utils.mapConcurrently
 import com.thewizrd.shared_resources.utils.stringToBytes
 import com.thewizrd.shared_resources.wearsettings.PackageValidator
 import com.thewizrd.simplewear.helpers.AlarmStateManager
+import com.thewizrd.simplewear.helpers.AppIconCache
 import com.thewizrd.simplewear.helpers.PhoneStatusHelper
-import com.thewizrd.simplewear.helpers.ResolveInfoActivityInfoComparator
+import com.thewizrd.simplewear.helpers.ScrollGestureDispatcher
 import com.thewizrd.simplewear.helpers.dispatchScrollDown
 import com.thewizrd.simplewear.helpers.dispatchScrollLeft
 import com.thewizrd.simplewear.helpers.dispatchScrollRight
@@ -75,12 +93,12 @@ import com.thewizrd.simplewear.services.NotificationListener
 import com.thewizrd.simplewear.services.WearAccessibilityService
 import kotlinx.coroutines.CoroutineScope
 import kotlinx.coroutines.Dispatchers
-import kotlinx.coroutines.Job
 import kotlinx.coroutines.SupervisorJob
 import kotlinx.coroutines.async
+import kotlinx.coroutines.awaitAll
 import kotlinx.coroutines.cancel
+import kotlinx.coroutines.coroutineScope
 import kotlinx.coroutines.delay
-import kotlinx.coroutines.isActive
 import kotlinx.coroutines.launch
 import kotlinx.coroutines.suspendCancellableCoroutine
 import kotlinx.coroutines.tasks.await
@@ -88,8 +106,10 @@ import kotlinx.coroutines.withContext
 import java.io.BufferedWriter
 import java.io.OutputStreamWriter
 import java.nio.ByteBuffer
-import java.util.Collections
+import java.text.Collator
+import java.util.concurrent.atomic.AtomicBoolean
 import kotlin.coroutines.cancellation.CancellationException
+import kotlin.coroutines.coroutineContext
 import kotlin.coroutines.resume
 
 @RestrictTo(RestrictTo.Scope.LIBRARY_GROUP)
@@ -98,8 +118,27 @@ class WearableManager(private val mContext: Context) : OnCapabilityChangedListen
         init()
     }
 
+    companion object {
+        // Apps whose label or icon is loaded at once
+        private const val MAX_PARALLEL_LOADS = 4
+
+        // Continuous value changes (sliders, rotary input); only the latest one is applied and
+        // answered with a status, at a fixed rate. Shared by all managers and run in the app
+        // scope, so the final value is applied even if the listener service is destroyed
+        private val valueUpdates by lazy {
+            ConflatedRateLimiter<suspend () -> Unit>(appLib.appScope) { it.invoke() }
+        }
+    }
+
     private val scope = CoroutineScope(SupervisorJob() + Dispatchers.Default)
 
+    /**
+     * Launcher activity with its label loaded
+     *
+     * @param key app catalog key (see AppItemData.key)
+     */
+    private class LauncherApp(val key: String, val info: ResolveInfo, val label: String)
+
     private lateinit var mCapabilityClient: CapabilityClient
     private var mWearNodesWithApp: Collection<Node>? = null
 
@@ -122,6 +161,13 @@ class WearableManager(private val mContext: Context) : OnCapabilityChangedListen
         return !mWearNodesWithApp.isNullOrEmpty()
     }
 
+    suspend fun getWearNodesWithApp(): Collection<Node> {
+        if (mWearNodesWithApp == null) {
+            mWearNodesWithApp = findWearDevicesWithApp()
+        }
+        return mWearNodesWithApp ?: emptyList()
+    }
+
     override fun onCapabilityChanged(capabilityInfo: CapabilityInfo) {
         mWearNodesWithApp = capabilityInfo.nodes
         scope.launch { requestWearAppState() }
@@ -285,62 +331,63 @@ class WearableManager(private val mContext: Context) : OnCapabilityChangedListen
         val activeController =
             activeSessions.firstOrNull { it.playbackState?.isPlaybackStateActive() == true }
 
-        // Sort result
-        Collections.sort(
-            appInfos,
-            ApplicationInfo.DisplayNameComparator(mContext.packageManager)
-        )
-
-        val supportedPlayers = ArrayList<String>(appInfos.size)
-        val musicPlayers = mutableSetOf<AppItemData>()
-        var activePlayerKey: String? = null
-
-        suspend fun addPlayerInfo(appInfo: ApplicationInfo) {
-            val launchIntent =
-                mContext.packageManager.getLaunchIntentForPackage(appInfo.packageName)
-            if (launchIntent != null) {
+        // Icons are fetched by the watch as needed (see sendAppIcons)
+        val loadIcons = !WireProtocolHelper.isIconFetchSupported(nodeID)
+        val iconSize = mContext.dpToPx(24f).toInt()
+        val collator = Collator.getInstance()
+
+        // Resolve the launch activity and label of each player once; in parallel
+        val players = appInfos.distinctBy { it.packageName }
+            .mapConcurrently(MAX_PARALLEL_LOADS) { appInfo ->
+                val launchIntent =
+                    mContext.packageManager.getLaunchIntentForPackage(appInfo.packageName)
+                        ?: return@mapConcurrently null
                 val activityInfo = mContext.packageManager.resolveActivity(
                     launchIntent,
                     PackageManager.MATCH_DEFAULT_ONLY
+                )?.activityInfo ?: return@mapConcurrently null
+
+                Triple(
+                    appInfo,
+                    activityInfo,
+                    mContext.packageManager.getApplicationLabel(appInfo).toString()
                 )
-                    ?: return
-                val activityCmpName =
-                    ComponentName(appInfo.packageName, activityInfo.activityInfo.name)
-                val key =
-                    String.format("%s/%s", appInfo.packageName, activityInfo.activityInfo.name)
-                if (!supportedPlayers.contains(key)) {
-                    val label = mContext.packageManager.getApplicationLabel(appInfo).toString()
-                    var iconBmp: Bitmap? = null
-                    try {
-                        val iconDrwble = mContext.packageManager.getActivityIcon(activityCmpName)
-                        val size = mContext.dpToPx(24f).toInt()
-                        iconBmp = ImageUtils.bitmapFromDrawable(iconDrwble, size, size)
-                    } catch (ignored: PackageManager.NameNotFoundException) {
-                    }
+            }
+            .filterNotNull()
+            .sortedWith { a, b -> collator.compare(a.third, b.third) }
 
-                    musicPlayers.add(
-                        AppItemData(
-                            label = label,
-                            packageName = appInfo.packageName,
-                            activityName = activityInfo.activityInfo.name,
-                            iconBitmap = iconBmp?.toByteArray()
-                        )
-                    )
-                    supportedPlayers.add(key)
+        val musicPlayers = players.mapConcurrently(MAX_PARALLEL_LOADS) { player ->
+            val (appInfo, activityInfo, label) = player
 
-                    if (activePlayerKey == null && activeController != null && appInfo.packageName == activeController.packageName) {
-                        activePlayerKey = key
+            val icon = if (loadIcons) {
+                AppIconCache.getIcon(appInfo.packageName, activityInfo.name, iconSize) {
+                    try {
+                        mContext.packageManager.getActivityIcon(
+                            ComponentName(appInfo.packageName, activityInfo.name)
+                        )
+                    } catch (ignored: PackageManager.NameNotFoundException) {
+                        null
                     }
                 }
+            } else {
+                null
             }
+
+            AppItemData(
+                label = label,
+                packageName = appInfo.packageName,
+                activityName = activityInfo.name,
+                iconBitmap = icon
+            )
         }
 
-        for (info in appInfos) {
-            addPlayerInfo(info)
+        val activePlayerKey = activeController?.let { controller ->
+            musicPlayers.firstOrNull { it.packageName == controller.packageName }
+                ?.let { "${it.packageName}/${it.activityName}" }
         }
 
         val playersData = MusicPlayersData(
-            musicPlayers = musicPlayers,
+            musicPlayers = musicPlayers.toSet(),
             activePlayerKey = activePlayerKey
         )
 
@@ -351,17 +398,23 @@ class WearableManager(private val mContext: Context) : OnCapabilityChangedListen
                 val channel =
                     channelClient.openChannel(nodeID, MediaHelper.MusicPlayersPath).await()
                 val outputStream = channelClient.getOutputStream(channel).await()
-                outputStream.bufferedWriter().use { writer ->
-                    writer.write(
-                        "data: ${
-                            JSONParser.serializer(
-                                playersData,
-                                MusicPlayersData::class.java
-                            )
-                        }"
-                    )
-                    writer.newLine()
-                    writer.flush()
+                if (WireProtocolHelper.isFramedChannelSupported(nodeID)) {
+                    outputStream.buffered().use {
+                        MediaDataSerializer.serialize(playersData, FramedStreamWriter(it))
+                    }
+                } else {
+                    outputStream.bufferedWriter().use { writer ->
+                        writer.write(
+                            "data: ${
+                                JSONParser.serializer(
+                                    playersData,
+                                    MusicPlayersData::class.java
+                                )
+                            }"
+                        )
+                        writer.newLine()
+                        writer.flush()
+                    }
                 }
                 channelClient.close(channel)
             }
@@ -370,41 +423,88 @@ class WearableManager(private val mContext: Context) : OnCapabilityChangedListen
         }
     }
 
-    suspend fun sendApps(nodeID: String) {
+    /**
+     * Sends the launcher apps to the node
+     *
+     * @param manifest catalog entries of the node; only changed entries are sent. If null, or
+     * if the node doesn't support framed streams, the full list is sent
+     */
+    suspend fun sendApps(nodeID: String, manifest: Map<String, Long>? = null) {
         val channelClient = Wearable.getChannelClient(mContext)
         val mainIntent = Intent(Intent.ACTION_MAIN).addCategory(Intent.CATEGORY_LAUNCHER)
 
         val infos = mContext.packageManager.queryIntentActivities(mainIntent, 0)
-        val appItems = ArrayList<AppItemData>(infos.size)
+            .associateFirstBy {
+                AppCatalogKeys.getAppKey(it.activityInfo.packageName, it.activityInfo.name)
+            }
+
+        // Labels are loaded once per app (in parallel) and reused for sorting and hashing
+        val collator = Collator.getInstance()
+        val availableApps = infos.entries.toList()
+            .mapConcurrently(MAX_PARALLEL_LOADS) { (key, info) ->
+                val label = info.activityInfo.loadLabel(mContext.packageManager).toString()
+                LauncherApp(key, info, label)
+            }
+            .sortedWith { a, b -> collator.compare(a.label, b.label) }
 
-        // Sort result
-        infos.sortWith(ResolveInfoActivityInfoComparator(mContext.packageManager))
+        // Deltas are only written as framed streams
+        if (manifest == null || !WireProtocolHelper.isFramedChannelSupported(nodeID)) {
+            sendAllApps(nodeID, availableApps)
+            return
+        }
+
+        val loadIcons = isLoadAppIcons(nodeID)
+        val iconSize = mContext.dpToPx(24f).toInt()
 
-        val availableApps = ArrayList<String>(infos.size)
+        val changedApps = availableApps
+            .mapConcurrently(MAX_PARALLEL_LOADS) { app ->
+                app to getAppHash(app, loadIcons, iconSize)
+            }
+            .filter { (app, hash) -> manifest[app.key] != hash }
 
-        for (info in infos) {
-            val key = String.format("%s/%s", info.activityInfo.packageName, info.activityInfo.name)
-            if (!availableApps.contains(key)) {
-                val label = info.activityInfo.loadLabel(mContext.packageManager)
-                var iconBmp: Bitmap? = null
+        val removedApps = manifest.keys.filterNot { infos.containsKey(it) }
 
-                if (Settings.isLoadAppIcons()) {
-                    runCatching {
-                        val iconDrwble = info.activityInfo.loadIcon(mContext.packageManager)
-                        val size = mContext.dpToPx(24f).toInt()
-                        iconBmp = ImageUtils.bitmapFromDrawable(iconDrwble, size, size)
+        try {
+            withContext(Dispatchers.IO) {
+                val channel = channelClient.openChannel(nodeID, WearableHelper.AppsPath).await()
+                val outputStream = channelClient.getOutputStream(channel).await()
+                outputStream.use {
+                    val writer = FramedStreamWriter(it.buffered())
+                    AppCatalogSerializer.beginDelta(writer, manifest.isEmpty(), removedApps)
+
+                    // Icons are only rendered for changed entries; a page at a time
+                    changedApps.chunked(AppCatalogSerializer.PAGE_SIZE).forEach { page ->
+                        page.mapConcurrently(MAX_PARALLEL_LOADS) { (app, hash) ->
+                            AppCatalogItem(createAppItem(app, loadIcons, iconSize), hash)
+                        }.forEach { item ->
+                            item.serialize(writer)
+                        }
+                        writer.flush()
                     }
-                }
 
-                appItems.add(
-                    AppItemData(
-                        label.toString(),
-                        info.activityInfo.packageName,
-                        info.activityInfo.name,
-                        iconBmp?.toByteArray()
-                    )
-                )
+                    AppCatalogSerializer.endDelta(writer)
+                }
+                channelClient.close(channel)
             }
+        } catch (e: Exception) {
+            Logger.writeLine(Log.ERROR, e)
+        }
+
+        Logger.writeLine(
+            Log.DEBUG,
+            "sendApps: %d apps; %d changed, %d removed",
+            availableApps.size, changedApps.size, removedApps.size
+        )
+    }
+
+    private suspend fun sendAllApps(nodeID: String, apps: List<LauncherApp>) {
+        val channelClient = Wearable.getChannelClient(mContext)
+
+        val loadIcons = isLoadAppIcons(nodeID)
+        val iconSize = mContext.dpToPx(24f).toInt()
+
+        val appItems = apps.mapConcurrently(MAX_PARALLEL_LOADS) {
+            createAppItem(it, loadIcons, iconSize)
         }
 
         try {
@@ -412,9 +512,13 @@ class WearableManager(private val mContext: Context) : OnCapabilityChangedListen
                 val channel = channelClient.openChannel(nodeID, WearableHelper.AppsPath).await()
                 val outputStream = channelClient.getOutputStream(channel).await()
                 outputStream.use {
-                    val writer = JsonWriter(BufferedWriter(OutputStreamWriter(it)))
-                    appItems.serialize(writer)
-                    writer.flush()
+                    if (WireProtocolHelper.isFramedChannelSupported(nodeID)) {
+                        appItems.serialize(FramedStreamWriter(it.buffered()))
+                    } else {
+                        val writer = JsonWriter(BufferedWriter(OutputStreamWriter(it)))
+                        appItems.serialize(writer)
+                        writer.flush()
+                    }
                 }
                 channelClient.close(channel)
             }
@@ -423,6 +527,103 @@ class WearableManager(private val mContext: Context) : OnCapabilityChangedListen
         }
     }
 
+    /**
+     * Sends the requested app icons to the node; each icon is flushed as soon as it is rendered
+     *
+     * @param path request path; the icons are sent over a channel on the same path
+     */
+    suspend fun sendAppIcons(nodeID: String, path: String, items: List<AppItemData>) {
+        if (items.isEmpty()) return
+
+        val channelClient = Wearable.getChannelClient(mContext)
+        val iconSize = mContext.dpToPx(24f).toInt()
+
+        try {
+            withContext(Dispatchers.IO) {
+                val channel = channelClient.openChannel(nodeID, path).await()
+                val outputStream = channelClient.getOutputStream(channel).await()
+                outputStream.buffered().use {
+                    val writer = FramedStreamWriter(it)
+                    writer.writeHeader()
+
+                    for (item in items) {
+                        val packageName = item.packageName ?: continue
+                        val activityName = item.activityName ?: continue
+
+                        val icon = AppIconCache.getIcon(packageName, activityName, iconSize) {
+                            try {
+                                mContext.packageManager.getActivityIcon(
+                                    ComponentName(packageName, activityName)
+                                )
+                            } catch (ignored: PackageManager.NameNotFoundException) {
+                                null
+                            }
+                        } ?: continue
+
+                        item.copy(iconBitmap = icon).serializeIcon(writer)
+                        writer.flush()
+                    }
+
+                    writer.writeEnd()
+                }
+                channelClient.close(channel)
+            }
+        } catch (e: Exception) {
+            Logger.writeLine(Log.ERROR, e)
+        }
+    }
+
+    /**
+     * Whether icons are sent with the app list; watches which fetch icons as needed
+     * get the list without them
+     */
+    private fun isLoadAppIcons(nodeID: String): Boolean {
+        return Settings.isLoadAppIcons() && !WireProtocolHelper.isIconFetchSupported(nodeID)
+    }
+
+    private suspend fun createAppItem(
+        app: LauncherApp,
+        loadIcons: Boolean,
+        iconSize: Int
+    ): AppItemData {
+        val info = app.info
+
+        val icon = if (loadIcons) {
+            AppIconCache.getIcon(info.activityInfo.packageName, info.activityInfo.name, iconSize) {
+                info.activityInfo.loadIcon(mContext.packageManager)
+            }
+        } else {
+            null
+        }
+
+        return AppItemData(
+            app.label,
+            info.activityInfo.packageName,
+            info.activityInfo.name,
+            icon
+        )
+    }
+
+    /**
+     * Identifies the version of the app entry without rendering its icon;
+     * changes when the app is updated or the icon settings change
+     */
+    private fun getAppHash(app: LauncherApp, loadIcons: Boolean, iconSize: Int): Long {
+        val info = app.info
+        val lastUpdateTime = runCatching {
+            mContext.packageManager.getPackageInfo(info.activityInfo.packageName, 0).lastUpdateTime
+        }.getOrDefault(0L)
+
+        return AppCatalogKeys.getAppHash(
+            info.activityInfo.packageName,
+            info.activityInfo.name,
+            app.label,
+            lastUpdateTime,
+            loadIcons,
+            iconSize
+        )
+    }
+
     suspend fun launchApp(nodeID: String?, pkgName: String, activityName: String?) {
         if (!pkgName.isNullOrBlank() && !activityName.isNullOrBlank()) {
             val appIntent = Intent().apply {
@@ -499,69 +700,61 @@ class WearableManager(private val mContext: Context) : OnCapabilityChangedListen
         )
     }
 
-    private var mValueJob: Job? = null
-    suspend fun setStreamVolume(nodeID: String?, streamState: AudioStreamState) {
-        mValueJob?.cancel()
-        mValueJob = scope.launch {
-            if (!isActive) return@launch
+    /**
+     * Value change from the watch
+     *
+     * @param statusPath path on which a failure status is sent
+     */
+    private class ValueUpdate(
+        val nodeID: String?,
+        val valueData: ValueActionState,
+        val statusPath: String
+    )
+
+    fun setStreamVolume(nodeID: String?, streamState: AudioStreamState) {
+        submitValueUpdate(ValueUpdate(nodeID, streamState, WearableHelper.AudioVolumePath))
+    }
 
-            val status = PhoneStatusHelper.setStreamVolume(
-                mContext,
-                streamState.currentVolume,
-                streamState.streamType
-            )
-            if (status != ActionStatus.SUCCESS) {
-                sendMessage(nodeID, WearableHelper.AudioVolumePath, status.name.stringToBytes())
-            } else {
-                sendAudioModeStatus(nodeID, streamState.streamType)
-            }
-        }
+    fun setActionValue(nodeID: String?, valueData: ValueActionState) {
+        submitValueUpdate(ValueUpdate(nodeID, valueData, WearableHelper.ValueStatusSetPath))
     }
 
-    suspend fun setActionValue(nodeID: String?, valueData: ValueActionState) {
-        mValueJob?.cancel()
-        mValueJob = scope.launch {
-            when (valueData.actionType) {
-                Actions.VOLUME -> {
-                    if (valueData is AudioStreamState) {
-                        if (!isActive) return@launch
+    private fun submitValueUpdate(update: ValueUpdate) {
+        valueUpdates.submit { applyValueUpdate(update) }
+    }
 
-                        val status = PhoneStatusHelper.setStreamVolume(
-                            mContext,
-                            valueData.currentVolume,
-                            valueData.streamType
-                        )
-                        if (status != ActionStatus.SUCCESS) {
-                            sendMessage(
-                                nodeID,
-                                WearableHelper.ValueStatusSetPath,
-                                status.name.stringToBytes()
-                            )
-                        } else {
-                            sendAudioModeStatus(nodeID, valueData.streamType)
-                        }
-                    }
-                }
-                Actions.BRIGHTNESS -> {
-                    if (!isActive) return@launch
+    private suspend fun applyValueUpdate(update: ValueUpdate) {
+        val nodeID = update.nodeID
+        val valueData = update.valueData
 
-                    val status = PhoneStatusHelper.setBrightnessLevel(
+        when (valueData.actionType) {
+            Actions.VOLUME -> {
+                if (valueData is AudioStreamState) {
+                    val status = PhoneStatusHelper.setStreamVolume(
                         mContext,
-                        valueData.currentValue
+                        valueData.currentVolume,
+                        valueData.streamType
                     )
                     if (status != ActionStatus.SUCCESS) {
-                        sendMessage(
-                            nodeID,
-                            WearableHelper.ValueStatusSetPath,
-                            status.name.stringToBytes()
-                        )
+                        sendMessage(nodeID, update.statusPath, status.name.stringToBytes())
                     } else {
-                        sendValueStatus(nodeID, valueData.actionType)
+                        sendAudioModeStatus(nodeID, valueData.streamType)
                     }
                 }
-
-                else -> {}
             }
+            Actions.BRIGHTNESS -> {
+                val status = PhoneStatusHelper.setBrightnessLevel(
+                    mContext,
+                    valueData.currentValue
+                )
+                if (status != ActionStatus.SUCCESS) {
+                    sendMessage(nodeID, update.statusPath, status.name.stringToBytes())
+                } else {
+                    sendValueStatus(nodeID, valueData.actionType)
+                }
+            }
+
+            else -> {}
         }
     }
 
@@ -612,6 +805,50 @@ class WearableManager(private val mContext: Context) : OnCapabilityChangedListen
         }
     }
 
+    /**
+     * Sends the dashboard state (status + actions) to the node
+     *
+     * Uses a single snapshot message if supported by the node; otherwise falls back to
+     * individual status and action messages
+     *
+     * @param syncState sync state last applied by the node; if valid, only the actions changed
+     * since then are sent
+     */
+    suspend fun sendDashboardUpdate(nodeID: String, syncState: DashboardSyncState? = null) {
+        if (WireProtocolHelper.isDashboardSnapshotSupported(nodeID)) {
+            sendDashboardSnapshot(nodeID, syncState)
+        } else {
+            sendStatusUpdate(nodeID, null)
+            sendActionsUpdate(nodeID)
+        }
+    }
+
+    suspend fun sendDashboardSnapshot(nodeID: String, syncState: DashboardSyncState? = null) {
+        val actions = Actions.entries.mapNotNull { getActionState(it) }
+
+        val snapshot = if (WireProtocolHelper.isDashboardDeltaSupported(nodeID)) {
+            val (changedActions, currentSyncState) =
+                DashboardStateTracker.getChanges(actions, syncState)
+
+            DashboardSnapshot(
+                batteryStatus = PhoneStatusHelper.getBatteryLevel(mContext),
+                actions = changedActions,
+                syncState = currentSyncState
+            )
+        } else {
+            DashboardSnapshot(
+                batteryStatus = PhoneStatusHelper.getBatteryLevel(mContext),
+                actions = actions
+            )
+        }
+
+        sendMessage(
+            nodeID,
+            WearableHelper.DashboardSnapshotPath,
+            ActionSerializer.encodeSnapshot(snapshot)
+        )
+    }
+
     fun sendActionsUpdate(nodeID: String?) {
         scope.launch {
             for (act in Actions.entries) {
@@ -621,87 +858,59 @@ class WearableManager(private val mContext: Context) : OnCapabilityChangedListen
     }
 
     suspend fun sendActionsUpdate(nodeID: String?, act: Actions?) {
-        val action: Action
-        when (act) {
+        getActionState(act)?.let { action ->
+            // Stamp the state so it isn't skipped by a later delta if this message is lost
+            DashboardStateTracker.update(action)
+            sendActionMessage(nodeID, action)
+        }
+    }
+
+    private fun getActionState(act: Actions?): Action? {
+        return when (act) {
             Actions.WIFI -> {
-                action = ToggleAction(act, PhoneStatusHelper.isWifiEnabled(mContext))
-                sendMessage(nodeID, WearableHelper.ActionsPath, JSONParser.serializer(action, Action::class.java).stringToBytes())
+                ToggleAction(act, PhoneStatusHelper.isWifiEnabled(mContext))
             }
             Actions.BLUETOOTH -> {
-                action = ToggleAction(act, PhoneStatusHelper.isBluetoothEnabled(mContext))
-                sendMessage(nodeID, WearableHelper.ActionsPath, JSONParser.serializer(action, Action::class.java).stringToBytes())
+                ToggleAction(act, PhoneStatusHelper.isBluetoothEnabled(mContext))
             }
             Actions.MOBILEDATA -> {
-                action = ToggleAction(act, PhoneStatusHelper.isMobileDataEnabled(mContext))
-                sendMessage(nodeID, WearableHelper.ActionsPath, JSONParser.serializer(action, Action::class.java).stringToBytes())
+                ToggleAction(act, PhoneStatusHelper.isMobileDataEnabled(mContext))
             }
             Actions.LOCATION -> {
-                action = if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.P) {
+                if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.P) {
                     ToggleAction(act, PhoneStatusHelper.isLocationEnabled(mContext))
                 } else {
                     MultiChoiceAction(act, PhoneStatusHelper.getLocationState(mContext).value)
                 }
-                sendMessage(nodeID, WearableHelper.ActionsPath, JSONParser.serializer(action, Action::class.java).stringToBytes())
             }
             Actions.TORCH -> {
-                action = ToggleAction(act, PhoneStatusHelper.isTorchEnabled(mContext))
-                sendMessage(
-                    nodeID,
-                    WearableHelper.ActionsPath,
-                    JSONParser.serializer(action, Action::class.java).stringToBytes()
-                )
-            }
-            Actions.LOCKSCREEN, Actions.VOLUME, Actions.BRIGHTNESS -> {
+                ToggleAction(act, PhoneStatusHelper.isTorchEnabled(mContext))
             }
             Actions.DONOTDISTURB -> {
-                action = if (Build.VERSION.SDK_INT < Build.VERSION_CODES.P) {
+                if (Build.VERSION.SDK_INT < Build.VERSION_CODES.P) {
                     MultiChoiceAction(act, PhoneStatusHelper.getDNDState(mContext).value)
                 } else {
                     ToggleAction(act, PhoneStatusHelper.getDNDState(mContext) != DNDChoice.OFF)
                 }
-                sendMessage(
-                    nodeID,
-                    WearableHelper.ActionsPath,
-                    JSONParser.serializer(action, Action::class.java).stringToBytes()
-                )
             }
             Actions.RINGER -> {
-                action = MultiChoiceAction(act, PhoneStatusHelper.getRingerState(mContext).value)
-                sendMessage(
-                    nodeID,
-                    WearableHelper.ActionsPath,
-                    JSONParser.serializer(action, Action::class.java).stringToBytes()
-                )
+                MultiChoiceAction(act, PhoneStatusHelper.getRingerState(mContext).value)
             }
 
             Actions.HOTSPOT -> {
-                action = ToggleAction(act, PhoneStatusHelper.isWifiApEnabled(mContext))
-                sendMessage(
-                    nodeID,
-                    WearableHelper.ActionsPath,
-                    JSONParser.serializer(action, Action::class.java).stringToBytes()
-                )
+                ToggleAction(act, PhoneStatusHelper.isWifiApEnabled(mContext))
             }
 
             Actions.NFC -> {
-                action = ToggleAction(act, PhoneStatusHelper.isNfcEnabled(mContext))
-                sendMessage(
-                    nodeID,
-                    WearableHelper.ActionsPath,
-                    JSONParser.serializer(action, Action::class.java).stringToBytes()
-                )
+                ToggleAction(act, PhoneStatusHelper.isNfcEnabled(mContext))
             }
 
             Actions.BATTERYSAVER -> {
-                action = ToggleAction(act, PhoneStatusHelper.isBatterySaverEnabled(mContext))
-                sendMessage(
-                    nodeID,
-                    WearableHelper.ActionsPath,
-                    JSONParser.serializer(action, Action::class.java).stringToBytes()
-                )
+                ToggleAction(act, PhoneStatusHelper.isBatterySaverEnabled(mContext))
             }
 
-            else -> {}
+            // LOCKSCREEN, VOLUME, BRIGHTNESS, etc. have no state to sync
+            else -> null
         }
     }
 
@@ -748,11 +957,7 @@ class WearableManager(private val mContext: Context) : OnCapabilityChangedListen
                 } else {
                     tA.setActionSuccessful(PhoneStatusHelper.setWifiEnabled(mContext, tA.isEnabled))
                 }
-                sendMessage(
-                    nodeID,
-                    WearableHelper.ActionsPath,
-                    JSONParser.serializer(tA, Action::class.java).stringToBytes()
-                )
+                sendActionMessage(nodeID, tA)
             }
             Actions.BLUETOOTH -> {
                 tA = action as ToggleAction
@@ -778,11 +983,7 @@ class WearableManager(private val mContext: Context) : OnCapabilityChangedListen
                         )
                     )
                 }
-                sendMessage(
-                    nodeID,
-                    WearableHelper.ActionsPath,
-                    JSONParser.serializer(tA, Action::class.java).stringToBytes()
-                )
+                sendActionMessage(nodeID, tA)
             }
             Actions.MOBILEDATA -> {
                 tA = action as ToggleAction
@@ -798,11 +999,7 @@ class WearableManager(private val mContext: Context) : OnCapabilityChangedListen
                     tA.setActionSuccessful(PhoneStatusHelper.openMobileDataSettings(mContext))
                     tA.isEnabled = PhoneStatusHelper.isMobileDataEnabled(mContext)
                 }
-                sendMessage(
-                    nodeID,
-                    WearableHelper.ActionsPath,
-                    JSONParser.serializer(tA, Action::class.java).stringToBytes()
-                )
+                sendActionMessage(nodeID, tA)
             }
             Actions.LOCATION -> {
                 if (action is MultiChoiceAction) {
@@ -819,11 +1016,7 @@ class WearableManager(private val mContext: Context) : OnCapabilityChangedListen
                         mA.setActionSuccessful(PhoneStatusHelper.openLocationSettings(mContext))
                         mA.choice = PhoneStatusHelper.getLocationState(mContext).value
                     }
-                    sendMessage(
-                        nodeID,
-                        WearableHelper.ActionsPath,
-                        JSONParser.serializer(mA, Action::class.java).stringToBytes()
-                    )
+                    sendActionMessage(nodeID, mA)
                 } else if (action is ToggleAction) {
                     tA = action
                     if (WearSettingsHelper.isWearSettingsInstalled()) {
@@ -838,17 +1031,13 @@ class WearableManager(private val mContext: Context) : OnCapabilityChangedListen
                         tA.setActionSuccessful(PhoneStatusHelper.openLocationSettings(mContext))
                         tA.isEnabled = PhoneStatusHelper.isLocationEnabled(mContext)
                     }
-                    sendMessage(
-                        nodeID,
-                        WearableHelper.ActionsPath,
-                        JSONParser.serializer(tA, Action::class.java).stringToBytes()
-                    )
+                    sendActionMessage(nodeID, tA)
                 }
             }
             Actions.TORCH -> {
                 tA = action as ToggleAction
                 tA.setActionSuccessful(PhoneStatusHelper.setTorchEnabled(mContext, tA.isEnabled))
-                sendMessage(nodeID, WearableHelper.ActionsPath, JSONParser.serializer(tA, Action::class.java).stringToBytes())
+                sendActionMessage(nodeID, tA)
             }
             Actions.LOCKSCREEN -> {
                 nA = action as NormalAction
@@ -864,7 +1053,7 @@ class WearableManager(private val mContext: Context) : OnCapabilityChangedListen
                 } else {
                     nA.setActionSuccessful(status)
                 }
-                sendMessage(nodeID, WearableHelper.ActionsPath, JSONParser.serializer(nA, Action::class.java).stringToBytes())
+                sendActionMessage(nodeID, nA)
             }
             Actions.VOLUME -> {
                 vA = action as ValueAction
@@ -878,7 +1067,7 @@ class WearableManager(private val mContext: Context) : OnCapabilityChangedListen
                 } else {
                     vA.setActionSuccessful(PhoneStatusHelper.setVolume(mContext, vA.direction))
                 }
-                sendMessage(nodeID, WearableHelper.ActionsPath, JSONParser.serializer(vA, Action::class.java).stringToBytes())
+                sendActionMessage(nodeID, vA)
             }
             Actions.DONOTDISTURB -> {
                 if (action is MultiChoiceAction) {
@@ -910,7 +1099,7 @@ class WearableManager(private val mContext: Context) : OnCapabilityChangedListen
                             )
                         )
                     }
-                    sendMessage(nodeID, WearableHelper.ActionsPath, JSONParser.serializer(mA, Action::class.java).stringToBytes())
+                    sendActionMessage(nodeID, mA)
                 } else if (action is ToggleAction) {
                     tA = action
                     if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.VANILLA_ICE_CREAM && !PhoneStatusHelper.companionDeviceAssociated(
@@ -936,11 +1125,7 @@ class WearableManager(private val mContext: Context) : OnCapabilityChangedListen
                             )
                         )
                     }
-                    sendMessage(
-                        nodeID,
-                        WearableHelper.ActionsPath,
-                        JSONParser.serializer(tA, Action::class.java).stringToBytes()
-                    )
+                    sendActionMessage(nodeID, tA)
                 }
             }
             Actions.RINGER -> {
@@ -951,20 +1136,12 @@ class WearableManager(private val mContext: Context) : OnCapabilityChangedListen
                         RingerChoice.valueOf(mA.choice)
                     )
                 )
-                sendMessage(
-                    nodeID,
-                    WearableHelper.ActionsPath,
-                    JSONParser.serializer(mA, Action::class.java).stringToBytes()
-                )
+                sendActionMessage(nodeID, mA)
             }
             Actions.BRIGHTNESS -> {
                 vA = action as ValueAction
                 vA.setActionSuccessful(PhoneStatusHelper.setBrightnessLevel(mContext, vA.direction))
-                sendMessage(
-                    nodeID,
-                    WearableHelper.ActionsPath,
-                    JSONParser.serializer(vA, Action::class.java).stringToBytes()
-                )
+                sendActionMessage(nodeID, vA)
                 scope.launch {
                     sendValueStatus(nodeID, vA.actionType)
                 }
@@ -1002,21 +1179,13 @@ class WearableManager(private val mContext: Context) : OnCapabilityChangedListen
                         )
                     }
                 }
-                sendMessage(
-                    nodeID,
-                    WearableHelper.ActionsPath,
-                    JSONParser.serializer(tA, Action::class.java).stringToBytes()
-                )
+                sendActionMessage(nodeID, tA)
             }
 
             Actions.SLEEPTIMER -> {
                 nA = action as NormalAction
                 nA.setActionSuccessful(PhoneStatusHelper.sendPauseMusicCommand(mContext))
-                sendMessage(
-                    nodeID,
-                    WearableHelper.ActionsPath,
-                    JSONParser.serializer(nA, Action::class.java).stringToBytes()
-                )
+                sendActionMessage(nodeID, nA)
             }
 
             Actions.TIMEDACTION -> {
@@ -1033,11 +1202,7 @@ class WearableManager(private val mContext: Context) : OnCapabilityChangedListen
                         )
                     )
                 }
-                sendMessage(
-                    nodeID,
-                    WearableHelper.ActionsPath,
-                    JSONParser.serializer(timedAction, Action::class.java).stringToBytes()
-                )
+                sendActionMessage(nodeID, timedAction)
             }
 
             Actions.NFC -> {
@@ -1054,11 +1219,7 @@ class WearableManager(private val mContext: Context) : OnCapabilityChangedListen
                 } else {
                     tA.setActionSuccessful(PhoneStatusHelper.setNfcEnabled(mContext, tA.isEnabled))
                 }
-                sendMessage(
-                    nodeID,
-                    WearableHelper.ActionsPath,
-                    JSONParser.serializer(tA, Action::class.java).stringToBytes()
-                )
+                sendActionMessage(nodeID, tA)
             }
 
             Actions.BATTERYSAVER -> {
@@ -1080,11 +1241,7 @@ class WearableManager(private val mContext: Context) : OnCapabilityChangedListen
                         )
                     )
                 }
-                sendMessage(
-                    nodeID,
-                    WearableHelper.ActionsPath,
-                    JSONParser.serializer(tA, Action::class.java).stringToBytes()
-                )
+                sendActionMessage(nodeID, tA)
             }
 
             else -> {
@@ -1132,6 +1289,56 @@ class WearableManager(private val mContext: Context) : OnCapabilityChangedListen
         }
     }
 
+    /**
+     * Dispatches the scroll gesture streamed by the watch for the duration of a touch
+     * (see [ScrollStream])
+     */
+    fun receiveScrollStream(channel: ChannelClient.Channel) {
+        val channelClient = Wearable.getChannelClient(mContext)
+
+        // Runs in the app scope; the listener service (and this manager's scope) may be
+        // destroyed while the touch is still streamed
+        appLib.appScope.launch(Dispatchers.Default) {
+            val svc = WearAccessibilityService.getInstance() ?: run {
+                channelClient.close(channel)
+                sendGestureActionStatus(channel.nodeId)
+                return@launch
+            }
+
+            try {
+                channelClient.getInputStream(channel).await().use { inputStream ->
+                    val reader = ScrollStreamReader(inputStream.buffered())
+                    val (width, height) = withContext(Dispatchers.IO) {
+                        reader.readHeader()
+                    } ?: return@use
+
+                    val dispatcher = ScrollGestureDispatcher(svc, width, height)
+                    val streamEnded = AtomicBoolean(false)
+
+                    coroutineScope {
+                        launch {
+                            dispatcher.dispatchFrames { streamEnded.get() }
+                        }
+
+                        withContext(Dispatchers.IO) {
+                            try {
+                                // Deltas are merged and dispatched with the next frame
+                                while (reader.readDelta(dispatcher::addDelta)) continue
+                            } finally {
+                                streamEnded.set(true)
+                            }
+                        }
+                    }
+                }
+            } catch (e: Exception) {
+                if (e is CancellationException) throw e
+                Logger.writeLine(Log.ERROR, e)
+            } finally {
+                channelClient.close(channel)
+            }
+        }
+    }
+
     @RequiresApi(Build.VERSION_CODES.TIRAMISU)
     suspend fun performDPadAction(nodeID: String?, dPadIndex: Int) {
         WearAccessibilityService.getInstance()?.let { svc ->
@@ -1199,32 +1406,60 @@ class WearableManager(private val mContext: Context) : OnCapabilityChangedListen
         }
     }
 
-    suspend fun sendMessage(nodeID: String?, path: String, data: ByteArray?) {
+    private suspend fun sendActionMessage(nodeID: String?, action: Action) {
+        // Encode lazily; nodes may differ in the wire codec they support
+        val jsonData by lazy { ActionSerializer.serialize(action, false) }
+        val binaryData by lazy { ActionSerializer.serialize(action, true) }
+
+        fun getPayload(id: String): ByteArray {
+            return if (WireProtocolHelper.isBinaryActionsSupported(id)) binaryData else jsonData
+        }
+
+        if (nodeID != null) {
+            sendMessage(nodeID, WearableHelper.ActionsPath, getPayload(nodeID))
+        } else {
+            if (mWearNodesWithApp == null) {
+                mWearNodesWithApp = findWearDevicesWithApp()
+            }
+
+            mWearNodesWithApp?.let { nodes ->
+                coroutineScope {
+                    nodes.map { node ->
+                        async {
+                            sendMessage(node.id, WearableHelper.ActionsPath, getPayload(node.id))
+                        }
+                    }.awaitAll()
+                }
+            }
+        }
+    }
+
+    /**
+     * @return true if the message was delivered to the message client (for every node
+     * with the app if [nodeID] is null)
+     */
+    suspend fun sendMessage(nodeID: String?, path: String, data: ByteArray?): Boolean {
+        val payload = WearableRpcClient.createResponse(coroutineContext, nodeID, path, data)
+
         if (nodeID == null) {
             if (mWearNodesWithApp == null) {
                 // Create requests if nodes exist with app support
                 mWearNodesWithApp = findWearDevicesWithApp()
-                if (mWearNodesWithApp == null || mWearNodesWithApp!!.isEmpty()) return
+                if (mWearNodesWithApp == null || mWearNodesWithApp!!.isEmpty()) return false
             }
         }
-        if (nodeID != null) {
-            try {
-                Wearable.getMessageClient(mContext)
-                    .sendMessage(nodeID, path, data)
-                    .await()
-            } catch (e: Exception) {
-                Logger.writeLine(Log.ERROR, e)
-            }
+        return if (nodeID != null) {
+            // Correlated responses answer a specific request; never supersede them
+            OutboundMessageQueue.send(
+                nodeID, path, payload,
+                coalesce = payload === data && OutboundMessageQueue.isCoalescable(path)
+            )
         } else {
-            for (node in mWearNodesWithApp!!) {
-                try {
-                    Wearable.getMessageClient(mContext)
-                        .sendMessage(node.id, path, data)
-                        .await()
-                } catch (e: Exception) {
-                    Logger.writeLine(Log.ERROR, e)
-                }
-            }
+            coroutineScope {
+                mWearNodesWithApp!!.map { node ->
+                    async { OutboundMessageQueue.send(node.id, path, data) }
+                }.awaitAll()
+            }.let { results -> results.isNotEmpty() && results.all { it } }
         }
     }
 
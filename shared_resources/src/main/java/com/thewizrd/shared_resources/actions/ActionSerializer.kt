@@ -0,0 +1,273 @@
+package com.thewizrd.shared_resources.actions
+
+import android.util.Log
+import com.thewizrd.shared_resources.utils.JSONParser
+import com.thewizrd.shared_resources.utils.Logger
+import com.thewizrd.shared_resources.utils.bytesToString
+import com.thewizrd.shared_resources.utils.stringToBytes
+import java.io.ByteArrayInputStream
+import java.io.ByteArrayOutputStream
+import java.io.DataInputStream
+import java.io.DataOutputStream
+import java.nio.ByteBuffer
+
+/**
+ * Compact binary wire format for [Action] messages sent over [com.thewizrd.shared_resources.helpers.WearableHelper.ActionsPath]
+ *
+ * Layout: [MAGIC][VERSION] followed by an encoded action record:
+ * [subtype][actionType][actionStatus][flags][subtype payload]
+ *
+ * JSON payloads always begin with '{', so the leading magic byte is enough to tell both formats apart
+ */
+object ActionSerializer {
+    const val VERSION = 1
+
+    private const val MAGIC: Byte = 0xA5.toByte()
+
+    private const val TYPE_NORMAL = 0
+    private const val TYPE_TOGGLE = 1
+    private const val TYPE_VALUE = 2
+    private const val TYPE_MULTICHOICE = 3
+    private const val TYPE_VOLUME = 4
+    private const val TYPE_TIMED = 5
+
+    private const val FLAG_SUCCESSFUL = 0x1
+
+    /* Snapshot format versions */
+    private const val SNAPSHOT_VERSION_FULL = 1
+    private const val SNAPSHOT_VERSION_SYNC = 2
+
+    private const val FLAG_HAS_BATTERY = 0x1
+
+    fun isBinaryAction(data: ByteArray?): Boolean {
+        return data != null && data.size >= 2 && data[0] == MAGIC
+    }
+
+    /**
+     * Serializes the action in the binary format if supported by the receiver; JSON otherwise
+     */
+    fun serialize(action: Action, useBinary: Boolean): ByteArray {
+        return if (useBinary) {
+            encode(action)
+        } else {
+            JSONParser.serializer(action, Action::class.java).stringToBytes()
+        }
+    }
+
+    /**
+     * Deserializes an action from either the binary or the legacy JSON format
+     */
+    fun deserialize(data: ByteArray?): Action? {
+        if (data == null || data.isEmpty()) return null
+
+        return if (isBinaryAction(data)) {
+            decode(data)
+        } else {
+            JSONParser.deserializer(data.bytesToString(), Action::class.java)
+        }
+    }
+
+    fun encode(action: Action): ByteArray {
+        val bytesOut = ByteArrayOutputStream(16)
+
+        DataOutputStream(bytesOut).use { out ->
+            out.writeByte(MAGIC.toInt())
+            out.writeByte(VERSION)
+            writeAction(out, action)
+        }
+
+        return bytesOut.toByteArray()
+    }
+
+    fun decode(data: ByteArray): Action? {
+        return try {
+            DataInputStream(ByteArrayInputStream(data)).use { input ->
+                if (input.readByte() != MAGIC) return null
+
+                val version = input.readUnsignedByte()
+                if (version > VERSION) {
+                    Logger.writeLine(Log.WARN, "ActionSerializer: unsupported version $version")
+                    return null
+                }
+
+                readAction(input)
+            }
+        } catch (e: Exception) {
+            Logger.writeLine(Log.ERROR, e)
+            null
+        }
+    }
+
+    /**
+     * Layout: [MAGIC][version][flags][sync epoch (v2)][sync version (v2)][battery level][is charging][count][action records...]
+     *
+     * The sync state is only written if present; receivers which don't support
+     * [SNAPSHOT_VERSION_SYNC] should not be sent a snapshot with a sync state
+     */
+    fun encodeSnapshot(snapshot: DashboardSnapshot): ByteArray {
+        val bytesOut = ByteArrayOutputStream(24 + snapshot.actions.size * 6)
+
+        DataOutputStream(bytesOut).use { out ->
+            out.writeByte(MAGIC.toInt())
+            out.writeByte(if (snapshot.syncState != null) SNAPSHOT_VERSION_SYNC else SNAPSHOT_VERSION_FULL)
+
+            var flags = 0
+            if (snapshot.batteryStatus != null) flags = flags or FLAG_HAS_BATTERY
+            out.writeByte(flags)
+
+            snapshot.syncState?.let {
+                out.writeLong(it.epoch)
+                out.writeLong(it.version)
+            }
+
+            out.writeByte(snapshot.batteryStatus?.batteryLevel ?: 0)
+            out.writeBoolean(snapshot.batteryStatus?.isCharging ?: false)
+
+            out.writeByte(snapshot.actions.size)
+            snapshot.actions.forEach {
+                writeAction(out, it)
+            }
+        }
+
+        return bytesOut.toByteArray()
+    }
+
+    fun decodeSnapshot(data: ByteArray): DashboardSnapshot? {
+        return try {
+            DataInputStream(ByteArrayInputStream(data)).use { input ->
+                if (input.readByte() != MAGIC) return null
+
+                val version = input.readUnsignedByte()
+                if (version > SNAPSHOT_VERSION_SYNC) {
+                    Logger.writeLine(Log.WARN, "ActionSerializer: unsupported snapshot version $version")
+                    return null
+                }
+
+                val flags = input.readUnsignedByte()
+                val syncState = if (version >= SNAPSHOT_VERSION_SYNC) {
+                    DashboardSyncState(epoch = input.readLong(), version = input.readLong())
+                } else {
+                    null
+                }
+                val batteryLevel = input.readUnsignedByte()
+                val isCharging = input.readBoolean()
+
+                val count = input.readUnsignedByte()
+                val actions = ArrayList<Action>(count)
+                repeat(count) {
+                    actions.add(readAction(input))
+                }
+
+                DashboardSnapshot(
+                    batteryStatus = if ((flags and FLAG_HAS_BATTERY) != 0) {
+                        BatteryStatus(batteryLevel, isCharging)
+                    } else {
+                        null
+                    },
+                    actions = actions,
+                    syncState = syncState
+                )
+            }
+        } catch (e: Exception) {
+            Logger.writeLine(Log.ERROR, e)
+            null
+        }
+    }
+
+    /**
+     * Layout: [epoch (long)][version (long)]
+     */
+    fun encodeSyncState(syncState: DashboardSyncState): ByteArray {
+        return ByteBuffer.allocate(Long.SIZE_BYTES * 2)
+            .putLong(syncState.epoch)
+            .putLong(syncState.version)
+            .array()
+    }
+
+    fun decodeSyncState(data: ByteArray?): DashboardSyncState? {
+        if (data == null || data.size < Long.SIZE_BYTES * 2) return null
+
+        val buf = ByteBuffer.wrap(data)
+        return DashboardSyncState(epoch = buf.getLong(), version = buf.getLong())
+    }
+
+    /**
+     * Writes an action record without the [MAGIC]/[VERSION] header; for formats which embed
+     * actions (e.g. snapshots and caches)
+     */
+    fun writeAction(out: DataOutputStream, action: Action) {
+        val type = when (action) {
+            is VolumeAction -> TYPE_VOLUME
+            is ValueAction -> TYPE_VALUE
+            is ToggleAction -> TYPE_TOGGLE
+            is MultiChoiceAction -> TYPE_MULTICHOICE
+            is TimedAction -> TYPE_TIMED
+            else -> TYPE_NORMAL
+        }
+
+        out.writeByte(type)
+        out.writeByte(action.actionType.value)
+        out.writeByte(action.actionStatus.value)
+        out.writeByte(if (action.isActionSuccessful) FLAG_SUCCESSFUL else 0)
+
+        when (action) {
+            is VolumeAction -> {
+                out.writeByte(action.direction.ordinal)
+                out.writeByte(action.streamType?.value ?: -1)
+            }
+
+            is ValueAction -> {
+                out.writeByte(action.direction.ordinal)
+            }
+
+            is ToggleAction -> {
+                out.writeBoolean(action.isEnabled)
+            }
+
+            is MultiChoiceAction -> {
+                out.writeInt(action.value)
+            }
+
+            is TimedAction -> {
+                out.writeLong(action.timeInMillis)
+                writeAction(out, action.action)
+            }
+        }
+    }
+
+    fun readAction(input: DataInputStream): Action {
+        val type = input.readUnsignedByte()
+        val actionType = Actions.valueOf(input.readUnsignedByte())
+        val actionStatus = ActionStatus.valueOf(input.readUnsignedByte())
+        val flags = input.readUnsignedByte()
+
+        val action = when (type) {
+            TYPE_TOGGLE -> ToggleAction(actionType, input.readBoolean())
+            TYPE_VALUE -> ValueAction(actionType, ValueDirection.entries[input.readUnsignedByte()])
+            TYPE_MULTICHOICE -> MultiChoiceAction(actionType).apply {
+                // Bypass choice bounds; number of states may differ between devices
+                value = input.readInt()
+            }
+
+            TYPE_VOLUME -> {
+                val direction = ValueDirection.entries[input.readUnsignedByte()]
+                val streamType = input.readByte().toInt().takeIf { it >= 0 }?.let {
+                    AudioStreamType.valueOf(it)
+                }
+                VolumeAction(direction, streamType)
+            }
+
+            TYPE_TIMED -> {
+                val timeInMillis = input.readLong()
+                TimedAction(timeInMillis, readAction(input))
+            }
+
+            else -> NormalAction(actionType)
+        }
+
+        action.setActionSuccessful(actionStatus)
+        action.isActionSuccessful = (flags and FLAG_SUCCESSFUL) != 0
+
+        return action
+    }
+}
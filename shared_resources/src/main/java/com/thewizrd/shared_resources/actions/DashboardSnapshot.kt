@@ -0,0 +1,31 @@
+package com.thewizrd.shared_resources.actions
+
+/**
+ * Dashboard state sent in a single message over [com.thewizrd.shared_resources.helpers.WearableHelper.DashboardSnapshotPath]
+ *
+ * @param syncState version of the state included; if set, [actions] may only contain
+ * the actions changed since the version last applied by the receiver
+ */
+class DashboardSnapshot(
+    val batteryStatus: BatteryStatus?,
+    val actions: List<Action>,
+    val syncState: DashboardSyncState? = null
+) {
+    override fun equals(other: Any?): Boolean {
+        if (this === other) return true
+        if (other !is DashboardSnapshot) return false
+
+        if (batteryStatus != other.batteryStatus) return false
+        if (actions != other.actions) return false
+        if (syncState != other.syncState) return false
+
+        return true
+    }
+
+    override fun hashCode(): Int {
+        var result = batteryStatus?.hashCode() ?: 0
+        result = 31 * result + actions.hashCode()
+        result = 31 * result + (syncState?.hashCode() ?: 0)
+        return result
+    }
+}
@@ -0,0 +1,13 @@
+package com.thewizrd.shared_resources.actions
+
+/**
+ * Dashboard state version last applied by the watch
+ *
+ * @param epoch identifies the phone process which assigned the version; versions from
+ * a different epoch are not comparable
+ * @param version highest action state version included in the applied snapshot
+ */
+data class DashboardSyncState(
+    val epoch: Long,
+    val version: Long
+)
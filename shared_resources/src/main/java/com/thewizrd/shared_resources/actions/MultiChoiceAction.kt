@@ -3,7 +3,7 @@ package com.thewizrd.shared_resources.actions
 import android.os.Build
 
 class MultiChoiceAction : Action {
-    private var value = 0
+    internal var value = 0
 
     constructor(action: Actions) : super(action)
     constructor(action: Actions, choice: Int) : super(action) {
@@ -0,0 +1,29 @@
+package com.thewizrd.shared_resources.data
+
+/**
+ * App list entry as kept in the watch's app catalog
+ *
+ * @param hash identifies the version of the entry; computed by the phone
+ */
+data class AppCatalogItem(
+    val item: AppItemData,
+    val hash: Long
+) {
+    val key: String
+        get() = item.key
+}
+
+/**
+ * Change to the app catalog, as read from the phone's response
+ */
+sealed interface AppCatalogChange {
+    /**
+     * Entries removed from the catalog; all entries if [reset]
+     */
+    data class Removed(val reset: Boolean, val keys: Set<String>) : AppCatalogChange
+
+    /**
+     * Entry added to or changed in the catalog
+     */
+    data class Updated(val item: AppCatalogItem) : AppCatalogChange
+}
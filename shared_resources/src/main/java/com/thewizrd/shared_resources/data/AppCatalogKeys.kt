@@ -0,0 +1,60 @@
+package com.thewizrd.shared_resources.data
+
+import com.thewizrd.shared_resources.utils.HashUtils
+
+/**
+ * Keys and hashes identifying installed apps; used by the phone when enumerating apps for the
+ * app catalog (see AppCatalogSerializer) and when caching their icons
+ */
+object AppCatalogKeys {
+    // Separates the package name from the key hash in icon keys
+    private const val PACKAGE_SEPARATOR = '@'
+
+    /**
+     * Catalog key of the launcher activity (see [AppItemData.key])
+     */
+    fun getAppKey(packageName: String?, activityName: String?): String {
+        return packageName + '|' + activityName
+    }
+
+    /**
+     * Identifies the version of the app entry without rendering its icon;
+     * changes when the app is updated or the icon settings change
+     */
+    fun getAppHash(
+        packageName: String?,
+        activityName: String?,
+        label: String?,
+        lastUpdateTime: Long,
+        loadIcons: Boolean,
+        iconSize: Int
+    ): Long {
+        val identity = packageName + '|' + activityName + '|' + label + '|' +
+                lastUpdateTime + '|' + loadIcons + '|' + iconSize
+
+        return HashUtils.fnv1a(identity)
+    }
+
+    /**
+     * Identifies the rendered icon of the activity; starts with [getIconKeyPrefix]
+     */
+    fun getIconKey(
+        packageName: String,
+        activityName: String?,
+        versionCode: Long,
+        densityDpi: Int,
+        sizePx: Int
+    ): String {
+        val key = packageName + '|' + activityName + '|' + versionCode + '|' +
+                densityDpi + '|' + sizePx
+
+        return getIconKeyPrefix(packageName) + HashUtils.fnv1a(key).toULong().toString(16)
+    }
+
+    /**
+     * Prefix of the icon keys of the package
+     */
+    fun getIconKeyPrefix(packageName: String): String {
+        return packageName + PACKAGE_SEPARATOR
+    }
+}
@@ -0,0 +1,141 @@
+package com.thewizrd.shared_resources.data
+
+import com.thewizrd.shared_resources.data.AppItemSerializer.writeTo
+import com.thewizrd.shared_resources.utils.FramedStreamReader
+import com.thewizrd.shared_resources.utils.FramedStreamWriter
+import com.thewizrd.shared_resources.utils.readString
+import com.thewizrd.shared_resources.utils.records
+import com.thewizrd.shared_resources.utils.writeString
+import kotlinx.coroutines.flow.Flow
+import kotlinx.coroutines.flow.flow
+import java.nio.ByteBuffer
+
+/**
+ * Incremental app list sync
+ *
+ * The watch requests the app list with a manifest of its catalog:
+ * payload = [count (int)]{[key length (short)][key (utf-8)][hash (long)]}
+ *
+ * The phone answers over a framed channel stream (see FramedStream) with only the entries
+ * which changed:
+ * [delta header: reset, removed keys] followed by [catalog item: hash, item]...
+ *
+ * Items are flushed in pages of [PAGE_SIZE], so the watch can show them before the whole list
+ * is received
+ */
+object AppCatalogSerializer {
+    const val PAGE_SIZE = 20
+
+    /* Framed record types (see FramedStream) */
+    private const val RECORD_DELTA_HEADER = 2
+    private const val RECORD_CATALOG_ITEM = 3
+
+    // Stay below the message size limit; larger catalogs are re-synced in full
+    private const val MAX_MANIFEST_SIZE = 80 * 1024
+
+    fun createManifestPayload(items: Collection<AppCatalogItem>): ByteArray {
+        val keys = items.map { it.key.toByteArray(Charsets.UTF_8) }
+        val size = Int.SIZE_BYTES + keys.sumOf { Short.SIZE_BYTES + it.size + Long.SIZE_BYTES }
+
+        if (size > MAX_MANIFEST_SIZE) {
+            return createManifestPayload(emptyList())
+        }
+
+        val buf = ByteBuffer.allocate(size)
+        buf.putInt(items.size)
+
+        items.forEachIndexed { index, item ->
+            buf.putShort(keys[index].size.toShort())
+            buf.put(keys[index])
+            buf.putLong(item.hash)
+        }
+
+        return buf.array()
+    }
+
+    /**
+     * @return the catalog entries of the watch or null if the watch requested the full list
+     */
+    fun parseManifestPayload(data: ByteArray?): Map<String, Long>? {
+        if (data == null || data.size < Int.SIZE_BYTES) {
+            return null
+        }
+
+        val buf = ByteBuffer.wrap(data)
+        val count = buf.getInt()
+        val manifest = HashMap<String, Long>(count)
+
+        repeat(count) {
+            val key = ByteArray(buf.getShort().toInt())
+            buf.get(key)
+            manifest[String(key, Charsets.UTF_8)] = buf.getLong()
+        }
+
+        return manifest
+    }
+
+    /**
+     * Writes the delta header; followed by the changed items and [endDelta]
+     *
+     * @param reset whether the watch should drop its catalog before applying the delta
+     */
+    fun beginDelta(writer: FramedStreamWriter, reset: Boolean, removed: Collection<String>) {
+        writer.writeHeader()
+        writer.writeRecord(RECORD_DELTA_HEADER) { out ->
+            out.writeBoolean(reset)
+            out.writeInt(removed.size)
+            removed.forEach { out.writeString(it) }
+        }
+    }
+
+    fun AppCatalogItem.serialize(writer: FramedStreamWriter) {
+        writer.writeRecord(RECORD_CATALOG_ITEM) { out ->
+            out.writeLong(hash)
+            item.writeTo(out)
+        }
+    }
+
+    fun endDelta(writer: FramedStreamWriter) {
+        writer.writeEnd()
+    }
+
+    /**
+     * Reads a delta written with [beginDelta]; a full app list is read as a reset.
+     * Changes are emitted as they are read, so collect on an IO dispatcher (e.g. with flowOn)
+     */
+    fun deserializeDelta(reader: FramedStreamReader): Flow<AppCatalogChange> = flow {
+        var hasHeader = false
+
+        reader.records().collect { record ->
+            val input = record.payload
+
+            when (record.type) {
+                RECORD_DELTA_HEADER -> {
+                    val reset = input.readBoolean()
+                    val removed = HashSet<String>()
+                    repeat(input.readInt()) {
+                        input.readString()?.let { removed.add(it) }
+                    }
+
+                    hasHeader = true
+                    emit(AppCatalogChange.Removed(reset, removed))
+                }
+                RECORD_CATALOG_ITEM -> {
+                    val hash = input.readLong()
+                    val item = AppCatalogItem(AppItemSerializer.readItem(input), hash)
+                    emit(AppCatalogChange.Updated(item))
+                }
+                AppItemSerializer.RECORD_APP_ITEM -> {
+                    // Full app list (no manifest was sent); replaces the catalog
+                    if (!hasHeader) {
+                        hasHeader = true
+                        emit(AppCatalogChange.Removed(true, emptySet()))
+                    }
+
+                    val item = AppCatalogItem(AppItemSerializer.readItem(input), 0L)
+                    emit(AppCatalogChange.Updated(item))
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package com.thewizrd.shared_resources.data
+
+import com.thewizrd.shared_resources.data.AppItemSerializer.writeTo
+import com.thewizrd.shared_resources.utils.FramedStreamReader
+import com.thewizrd.shared_resources.utils.FramedStreamWriter
+import com.thewizrd.shared_resources.utils.readString
+import com.thewizrd.shared_resources.utils.records
+import com.thewizrd.shared_resources.utils.writeString
+import kotlinx.coroutines.flow.Flow
+import kotlinx.coroutines.flow.filter
+import kotlinx.coroutines.flow.map
+import java.io.ByteArrayInputStream
+import java.io.ByteArrayOutputStream
+import java.io.DataInputStream
+import java.io.DataOutputStream
+
+/**
+ * On-demand app icons
+ *
+ * App lists are sent without icons; the watch requests the icons of the entries it shows:
+ * payload = [count (int)]{[package name][activity name]}
+ *
+ * The phone answers over a channel on the request path with a framed stream (see FramedStream)
+ * of app item records holding only the package name, activity name and icon
+ */
+object AppIconSerializer {
+    // Entries per request; keeps the payload well within the message size limit
+    const val MAX_REQUEST_SIZE = 50
+
+    fun createRequestPayload(items: Collection<AppItemData>): ByteArray {
+        val buffer = ByteArrayOutputStream()
+
+        DataOutputStream(buffer).use { out ->
+            out.writeInt(items.size)
+            items.forEach {
+                out.writeString(it.packageName)
+                out.writeString(it.activityName)
+            }
+        }
+
+        return buffer.toByteArray()
+    }
+
+    /**
+     * @return the requested entries (without label or icon)
+     */
+    fun parseRequestPayload(data: ByteArray?): List<AppItemData> {
+        if (data == null || data.size < Int.SIZE_BYTES) return emptyList()
+
+        return runCatching {
+            DataInputStream(ByteArrayInputStream(data)).use { input ->
+                List(input.readInt()) {
+                    AppItemData(
+                        label = null,
+                        packageName = input.readString(),
+                        activityName = input.readString(),
+                        iconBitmap = null
+                    )
+                }
+            }
+        }.getOrDefault(emptyList())
+    }
+
+    fun AppItemData.serializeIcon(writer: FramedStreamWriter) {
+        writer.writeRecord(AppItemSerializer.RECORD_APP_ITEM) {
+            copy(label = null).writeTo(it)
+        }
+    }
+
+    /**
+     * Emits the icons as they are read; collect on an IO dispatcher (e.g. with flowOn)
+     */
+    fun deserialize(reader: FramedStreamReader): Flow<AppItemData> {
+        return reader.records()
+            .filter { it.type == AppItemSerializer.RECORD_APP_ITEM }
+            .map { AppItemSerializer.readItem(it.payload) }
+    }
+}
@@ -9,7 +9,7 @@ data class AppItemData(
     @SerializedName(WearableHelper.KEY_ACTIVITYNAME) val activityName: String?,
     @SerializedName(WearableHelper.KEY_ICON) val iconBitmap: ByteArray?
 ) {
-    val key = "${packageName}|${activityName}"
+    val key = AppCatalogKeys.getAppKey(packageName, activityName)
 
     override fun equals(other: Any?): Boolean {
         if (this === other) return true
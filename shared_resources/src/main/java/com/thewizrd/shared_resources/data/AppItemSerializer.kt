@@ -6,8 +6,19 @@ import com.google.gson.stream.JsonReader
 import com.google.gson.stream.JsonToken
 import com.google.gson.stream.JsonWriter
 import com.thewizrd.shared_resources.helpers.WearableHelper
+import com.thewizrd.shared_resources.utils.FramedStreamReader
+import com.thewizrd.shared_resources.utils.FramedStreamWriter
+import com.thewizrd.shared_resources.utils.readBlob
+import com.thewizrd.shared_resources.utils.readString
+import com.thewizrd.shared_resources.utils.writeBlob
+import com.thewizrd.shared_resources.utils.writeString
+import java.io.DataInputStream
+import java.io.DataOutputStream
 
 object AppItemSerializer {
+    /* Framed record types (see FramedStream) */
+    internal const val RECORD_APP_ITEM = 1
+
     fun AppItemData.serialize(writer: JsonWriter) {
         writer.beginObject()
 
@@ -93,4 +104,46 @@ object AppItemSerializer {
 
         return items
     }
-}
\ No newline at end of file
+
+    fun AppItemData.writeTo(out: DataOutputStream) {
+        out.writeString(label)
+        out.writeString(packageName)
+        out.writeString(activityName)
+        out.writeBlob(iconBitmap)
+    }
+
+    fun readItem(input: DataInputStream): AppItemData {
+        return AppItemData(
+            label = input.readString(),
+            packageName = input.readString(),
+            activityName = input.readString(),
+            iconBitmap = input.readBlob()
+        )
+    }
+
+    fun Iterable<AppItemData>.serialize(writer: FramedStreamWriter) {
+        writer.writeHeader()
+
+        this.forEach { item ->
+            writer.writeRecord(RECORD_APP_ITEM) { item.writeTo(it) }
+        }
+
+        writer.writeEnd()
+    }
+
+    fun deserialize(reader: FramedStreamReader): List<AppItemData> {
+        val items = ArrayList<AppItemData>()
+
+        reader.readHeader()
+
+        while (true) {
+            val record = reader.readRecord() ?: break
+
+            if (record.type == RECORD_APP_ITEM) {
+                items.add(readItem(record.payload))
+            }
+        }
+
+        return items
+    }
+}
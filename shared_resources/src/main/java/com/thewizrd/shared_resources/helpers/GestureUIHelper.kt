@@ -3,6 +3,7 @@ package com.thewizrd.shared_resources.helpers
 object GestureUIHelper {
     const val GestureStatusPath = "/status/gestures"
     const val ScrollPath = "/gesture/scroll"
+    const val ScrollStreamPath = "/gesture/scroll/stream"
     const val DPadPath = "/gesture/dpad"
     const val DPadClickPath = "/gesture/dpad/click"
     const val KeyEventPath = "/gesture/keyEvent"
@@ -1,6 +1,11 @@
 package com.thewizrd.shared_resources.helpers
 
+import android.content.Context
 import android.content.Intent
+import com.thewizrd.shared_resources.media.MediaArtworkSpec
+import com.thewizrd.shared_resources.media.MediaMetaData
+import com.thewizrd.shared_resources.utils.HashUtils
+import java.nio.ByteBuffer
 
 object MediaHelper {
     const val MusicPlayersPath = "/music-players"
@@ -69,6 +74,123 @@ object MediaHelper {
     // For Activity Launcher
     const val URI_PARAM_MEDIAPLAYER = "media_player"
 
+    // Byte budget for artwork sent to the watch
+    private const val MAX_ARTWORK_BYTES = 48 * 1024
+
+    private val ARTWORK_SPEC_MAGIC =
+        byteArrayOf(0xA7.toByte(), 'A'.code.toByte(), 'R'.code.toByte(), 'T'.code.toByte())
+    private val ARTWORK_SPEC_SIZE = ARTWORK_SPEC_MAGIC.size + Int.SIZE_BYTES * 2
+
+    private val ARTWORK_TRACK_MAGIC =
+        byteArrayOf(0xA7.toByte(), 'T'.code.toByte(), 'R'.code.toByte(), 'K'.code.toByte())
+    private val ARTWORK_TRACK_HEADER_SIZE = ARTWORK_TRACK_MAGIC.size + 1
+
+    fun getMediaArtworkSpec(context: Context): MediaArtworkSpec {
+        val displayMetrics = context.resources.displayMetrics
+
+        return MediaArtworkSpec(
+            sizePx = minOf(displayMetrics.widthPixels, displayMetrics.heightPixels),
+            maxBytes = MAX_ARTWORK_BYTES
+        )
+    }
+
+    /**
+     * Creates the [MediaPlayerConnectPath] payload; the artwork spec is appended
+     * as [ARTWORK_SPEC_MAGIC][size (int)][max bytes (int)] if the node supports it
+     */
+    fun createMediaPlayerConnectPayload(
+        nodeID: String,
+        data: ByteArray?,
+        artworkSpec: MediaArtworkSpec
+    ): ByteArray? {
+        if (!WireProtocolHelper.isMediaArtworkSpecSupported(nodeID)) return data
+
+        return ByteBuffer.allocate((data?.size ?: 0) + ARTWORK_SPEC_SIZE)
+            .apply { data?.let { put(it) } }
+            .put(ARTWORK_SPEC_MAGIC)
+            .putInt(artworkSpec.sizePx)
+            .putInt(artworkSpec.maxBytes)
+            .array()
+    }
+
+    /**
+     * Splits a [MediaPlayerConnectPath] payload into the original payload and the artwork spec
+     *
+     * @return the original payload and the artwork spec or null if not present
+     */
+    fun parseMediaPlayerConnectPayload(data: ByteArray): Pair<ByteArray, MediaArtworkSpec?> {
+        val specOffset = data.size - ARTWORK_SPEC_SIZE
+        if (specOffset < 0) return data to null
+
+        for (i in ARTWORK_SPEC_MAGIC.indices) {
+            if (data[specOffset + i] != ARTWORK_SPEC_MAGIC[i]) return data to null
+        }
+
+        val buf = ByteBuffer.wrap(data, specOffset + ARTWORK_SPEC_MAGIC.size, Int.SIZE_BYTES * 2)
+        val artworkSpec = MediaArtworkSpec(sizePx = buf.getInt(), maxBytes = buf.getInt())
+
+        return data.copyOfRange(0, specOffset) to artworkSpec
+    }
+
+    /**
+     * Identifies the track of the given metadata or null if there is no track
+     */
+    fun getTrackKey(mediaMetaData: MediaMetaData?): String? {
+        if (mediaMetaData == null || (mediaMetaData.title == null && mediaMetaData.artist == null)) {
+            return null
+        }
+
+        val identity =
+            "${mediaMetaData.title}|${mediaMetaData.artist}|${mediaMetaData.positionState.durationMs}"
+
+        return HashUtils.sha1Hex(identity.toByteArray())
+    }
+
+    /**
+     * Creates the [MediaPlayerArtPath] payload; the key of the track the artwork belongs to
+     * (see [getTrackKey]) is prepended as [ARTWORK_TRACK_MAGIC][key length (byte)][key]
+     * if the node supports it
+     */
+    fun createMediaPlayerArtPayload(
+        nodeID: String,
+        trackKey: String?,
+        artwork: ByteArray?
+    ): ByteArray? {
+        if (trackKey == null || !WireProtocolHelper.isArtworkTrackKeySupported(nodeID)) {
+            return artwork
+        }
+
+        val key = trackKey.toByteArray(Charsets.UTF_8)
+
+        return ByteBuffer.allocate(ARTWORK_TRACK_HEADER_SIZE + key.size + (artwork?.size ?: 0))
+            .put(ARTWORK_TRACK_MAGIC)
+            .put(key.size.toByte())
+            .put(key)
+            .apply { artwork?.let { put(it) } }
+            .array()
+    }
+
+    /**
+     * Splits a [MediaPlayerArtPath] payload into the track key and the artwork
+     *
+     * @return the track key or null if not present, and the artwork
+     */
+    fun parseMediaPlayerArtPayload(data: ByteArray): Pair<String?, ByteArray> {
+        if (data.size < ARTWORK_TRACK_HEADER_SIZE) return null to data
+
+        for (i in ARTWORK_TRACK_MAGIC.indices) {
+            if (data[i] != ARTWORK_TRACK_MAGIC[i]) return null to data
+        }
+
+        val keySize = data[ARTWORK_TRACK_MAGIC.size].toInt() and 0xFF
+        val artworkOffset = ARTWORK_TRACK_HEADER_SIZE + keySize
+        if (data.size < artworkOffset) return null to data
+
+        val trackKey = String(data, ARTWORK_TRACK_HEADER_SIZE, keySize, Charsets.UTF_8)
+
+        return trackKey to data.copyOfRange(artworkOffset, data.size)
+    }
+
     fun createRemoteActivityIntent(packageName: String, activityName: String): Intent {
         return Intent(Intent.ACTION_VIEW)
             .addCategory(Intent.CATEGORY_DEFAULT)
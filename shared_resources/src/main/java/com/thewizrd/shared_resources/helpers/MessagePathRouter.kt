@@ -0,0 +1,116 @@
+package com.thewizrd.shared_resources.helpers
+
+import kotlinx.coroutines.CoroutineDispatcher
+import kotlinx.coroutines.CoroutineScope
+import kotlinx.coroutines.CoroutineStart
+import kotlinx.coroutines.launch
+import kotlinx.coroutines.withContext
+
+/**
+ * Routes message paths to their registered handlers
+ *
+ * Exact paths are resolved through a hash table; prefix paths through a trie, where the
+ * longest matching prefix wins. Exact routes always take precedence over prefix routes,
+ * so registration order does not matter.
+ *
+ * Routes should be registered before dispatching; registration is not thread-safe
+ *
+ * @param defaultDispatcher dispatcher used for routes which don't specify one;
+ * if null, handlers run in the caller's context
+ */
+class MessagePathRouter<T>(
+    private val defaultDispatcher: CoroutineDispatcher? = null
+) {
+    class Route<T> internal constructor(
+        val dispatcher: CoroutineDispatcher?,
+        val handler: suspend (T) -> Unit
+    )
+
+    private class TrieNode<T> {
+        val children = HashMap<Char, TrieNode<T>>(4)
+        var route: Route<T>? = null
+    }
+
+    private val exactRoutes = HashMap<String, Route<T>>()
+    private val prefixRoot = TrieNode<T>()
+
+    /**
+     * Registers a handler for messages with the given path
+     */
+    fun on(
+        path: String,
+        dispatcher: CoroutineDispatcher? = null,
+        handler: suspend (T) -> Unit
+    ): MessagePathRouter<T> {
+        exactRoutes[path] = Route(dispatcher ?: defaultDispatcher, handler)
+        return this
+    }
+
+    /**
+     * Registers a handler for messages with a path starting with the given prefix
+     */
+    fun onPrefix(
+        prefix: String,
+        dispatcher: CoroutineDispatcher? = null,
+        handler: suspend (T) -> Unit
+    ): MessagePathRouter<T> {
+        var node = prefixRoot
+        for (c in prefix) {
+            node = node.children.getOrPut(c) { TrieNode() }
+        }
+        node.route = Route(dispatcher ?: defaultDispatcher, handler)
+        return this
+    }
+
+    fun findRoute(path: String): Route<T>? {
+        exactRoutes[path]?.let { return it }
+
+        var node = prefixRoot
+        var match = node.route
+        for (c in path) {
+            node = node.children[c] ?: break
+            node.route?.let { match = it }
+        }
+
+        return match
+    }
+
+    /**
+     * Dispatches the event to the handler registered for the path
+     *
+     * @return true if a handler was found for the path
+     */
+    suspend fun dispatch(path: String, event: T): Boolean {
+        val route = findRoute(path) ?: return false
+
+        val dispatcher = route.dispatcher
+        if (dispatcher != null) {
+            withContext(dispatcher) { route.handler(event) }
+        } else {
+            route.handler(event)
+        }
+
+        return true
+    }
+
+    /**
+     * Dispatches the event to the handler registered for the path without blocking the caller
+     *
+     * Handlers without a dispatcher start immediately in the caller's thread and only continue
+     * in the given scope once they suspend
+     *
+     * @return true if a handler was found for the path
+     */
+    fun dispatch(scope: CoroutineScope, path: String, event: T): Boolean {
+        val route = findRoute(path) ?: return false
+
+        val dispatcher = route.dispatcher
+        if (dispatcher != null) {
+            scope.launch(dispatcher) { route.handler(event) }
+        } else {
+            scope.launch(start = CoroutineStart.UNDISPATCHED) { route.handler(event) }
+        }
+
+        return true
+    }
+}
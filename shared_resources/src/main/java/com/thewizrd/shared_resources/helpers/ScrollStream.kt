@@ -0,0 +1,67 @@
+package com.thewizrd.shared_resources.helpers
+
+import java.io.BufferedOutputStream
+import java.io.DataInputStream
+import java.io.DataOutputStream
+import java.io.EOFException
+import java.io.InputStream
+import java.io.OutputStream
+
+/**
+ * Binary format for scroll gestures streamed on [GestureUIHelper.ScrollStreamPath]
+ *
+ * Layout: [screen width (float)][screen height (float)] followed by fixed-size delta records:
+ * [dX (float)][dY (float)]
+ *
+ * The watch keeps the stream open for the duration of a touch; the touch ends with the stream
+ */
+object ScrollStream {
+    const val RECORD_SIZE = Float.SIZE_BYTES * 2
+}
+
+class ScrollStreamWriter(output: OutputStream) {
+    private val out = DataOutputStream(BufferedOutputStream(output, ScrollStream.RECORD_SIZE * 16))
+
+    fun writeHeader(screenWidth: Float, screenHeight: Float) {
+        out.writeFloat(screenWidth)
+        out.writeFloat(screenHeight)
+        out.flush()
+    }
+
+    fun writeDelta(dX: Float, dY: Float) {
+        out.writeFloat(dX)
+        out.writeFloat(dY)
+        out.flush()
+    }
+}
+
+class ScrollStreamReader(input: InputStream) {
+    private val input = DataInputStream(input)
+
+    /**
+     * Reads the stream header
+     *
+     * @return the screen size of the watch (width, height) or null if the stream ended
+     */
+    fun readHeader(): Pair<Float, Float>? {
+        return try {
+            input.readFloat() to input.readFloat()
+        } catch (e: EOFException) {
+            null
+        }
+    }
+
+    /**
+     * Reads the next delta record; blocks until one is available
+     *
+     * @return false if the stream ended
+     */
+    fun readDelta(onDelta: (dX: Float, dY: Float) -> Unit): Boolean {
+        return try {
+            onDelta(input.readFloat(), input.readFloat())
+            true
+        } catch (e: EOFException) {
+            false
+        }
+    }
+}
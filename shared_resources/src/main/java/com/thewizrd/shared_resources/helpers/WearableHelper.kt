@@ -39,6 +39,7 @@ object WearableHelper {
     const val BluetoothPath = "/status/bt"
     const val WifiPath = "/status/wifi"
     const val UpdatePath = "/update/all"
+    const val DashboardSnapshotPath = "/dashboard/snapshot"
     const val AudioStatusPath = "/status/audio"
     const val AudioVolumePath = "/status/audio/volume"
     const val BtDiscoverPath = "/bluetooth/discoverable"
@@ -46,6 +47,7 @@ object WearableHelper {
     const val AppsPath = "/apps"
     const val AppsIconSettingsPath = "/apps/settings/icon"
     const val LaunchAppPath = "/apps/start-activity"
+    const val AppIconsPath = "/app-icons"
     const val ValueStatusPath = "/status/valueaction"
     const val ValueStatusSetPath = "/status/valueaction/setvalue"
     const val BrightnessModePath = "/status/brightness/mode"
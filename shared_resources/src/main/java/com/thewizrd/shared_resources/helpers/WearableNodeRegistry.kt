@@ -0,0 +1,133 @@
+package com.thewizrd.shared_resources.helpers
+
+import android.util.Log
+import com.google.android.gms.wearable.CapabilityClient
+import com.google.android.gms.wearable.CapabilityInfo
+import com.google.android.gms.wearable.Node
+import com.google.android.gms.wearable.Wearable
+import com.thewizrd.shared_resources.appLib
+import com.thewizrd.shared_resources.utils.Logger
+import kotlinx.coroutines.sync.Mutex
+import kotlinx.coroutines.sync.withLock
+import kotlinx.coroutines.tasks.await
+import java.util.concurrent.atomic.AtomicInteger
+
+/**
+ * Process-wide cache of the phone node with the companion app and of the connected nodes
+ *
+ * Lookups only go to Play Services on first use or after the cache is invalidated; the
+ * registry keeps itself up to date through capability change events
+ */
+object WearableNodeRegistry : CapabilityClient.OnCapabilityChangedListener {
+    private const val TAG = "WearableNodeRegistry"
+
+    private val lock = Mutex()
+
+    @Volatile
+    private var isRegistered = false
+
+    @Volatile
+    private var capableNodes: Collection<Node>? = null
+
+    @Volatile
+    private var connectedNodes: List<Node>? = null
+
+    // Bumped on every change; lookups started before a change aren't cached
+    private val generation = AtomicInteger()
+
+    /**
+     * Returns the best phone node with the app installed or null if none is found
+     */
+    suspend fun getPhoneNode(): Node? {
+        return WearableHelper.pickBestNodeId(getCapableNodes())
+    }
+
+    suspend fun getCapableNodes(): Collection<Node> {
+        capableNodes?.let { return it }
+
+        return lock.withLock {
+            capableNodes ?: run {
+                ensureRegistered()
+
+                val startGeneration = generation.get()
+
+                runCatching {
+                    Wearable.getCapabilityClient(appLib.context)
+                        .getCapability(
+                            WearableHelper.CAPABILITY_PHONE_APP,
+                            CapabilityClient.FILTER_ALL
+                        )
+                        .await()
+                        .nodes
+                }.onSuccess {
+                    if (isRegistered && startGeneration == generation.get()) {
+                        capableNodes = it
+                    }
+                }.onFailure {
+                    Logger.writeLine(Log.ERROR, it)
+                }.getOrDefault(emptySet())
+            }
+        }
+    }
+
+    suspend fun getConnectedNodes(): List<Node> {
+        connectedNodes?.let { return it }
+
+        return lock.withLock {
+            connectedNodes ?: run {
+                ensureRegistered()
+
+                val startGeneration = generation.get()
+
+                runCatching {
+                    Wearable.getNodeClient(appLib.context)
+                        .connectedNodes
+                        .await()
+                }.onSuccess {
+                    if (isRegistered && startGeneration == generation.get()) {
+                        connectedNodes = it
+                    }
+                }.onFailure {
+                    Logger.writeLine(Log.ERROR, it)
+                }.getOrDefault(emptyList())
+            }
+        }
+    }
+
+    /**
+     * Drops the cached nodes; e.g. when a message fails because the node is no longer connected
+     */
+    fun invalidate() {
+        generation.incrementAndGet()
+        capableNodes = null
+        connectedNodes = null
+    }
+
+    override fun onCapabilityChanged(capabilityInfo: CapabilityInfo) {
+        if (capabilityInfo.name != WearableHelper.CAPABILITY_PHONE_APP) return
+
+        // The app may have been installed or updated on these nodes; negotiate their protocol again
+        (capableNodes.orEmpty() + capabilityInfo.nodes).forEach {
+            WireProtocolHelper.resetNode(it.id)
+        }
+
+        // Capable nodes change as the phone (dis)connects, so the connected set is stale as well
+        generation.incrementAndGet()
+        capableNodes = capabilityInfo.nodes
+        connectedNodes = null
+    }
+
+    private suspend fun ensureRegistered() {
+        if (isRegistered) return
+
+        runCatching {
+            Wearable.getCapabilityClient(appLib.context)
+                .addListener(this, WearableHelper.CAPABILITY_PHONE_APP)
+                .await()
+            isRegistered = true
+        }.onFailure {
+            // Nothing is cached until we're notified of changes
+            Logger.writeLine(Log.ERROR, it, "%s: unable to register listener", TAG)
+        }
+    }
+}
@@ -0,0 +1,287 @@
+package com.thewizrd.shared_resources.helpers
+
+import android.util.Log
+import com.google.android.gms.wearable.MessageClient
+import com.google.android.gms.wearable.MessageEvent
+import com.google.android.gms.wearable.Wearable
+import com.thewizrd.shared_resources.appLib
+import com.thewizrd.shared_resources.utils.Logger
+import kotlinx.coroutines.CompletableDeferred
+import kotlinx.coroutines.CoroutineScope
+import kotlinx.coroutines.CoroutineStart
+import kotlinx.coroutines.Deferred
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.SupervisorJob
+import kotlinx.coroutines.async
+import kotlinx.coroutines.sync.Mutex
+import kotlinx.coroutines.sync.withLock
+import kotlinx.coroutines.tasks.await
+import kotlinx.coroutines.withTimeoutOrNull
+import java.nio.ByteBuffer
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.CopyOnWriteArrayList
+import java.util.concurrent.atomic.AtomicInteger
+import kotlin.coroutines.AbstractCoroutineContextElement
+import kotlin.coroutines.CoroutineContext
+
+/**
+ * Request/response layer over [MessageClient]
+ *
+ * All pending calls share a single, process-wide message listener which is registered on first use.
+ * Requests to nodes supporting the RPC protocol carry a correlation id in the payload:
+ * [RPC_MAGIC][correlation id (int)][payload]; the receiver echoes the header in its response
+ * (see [RequestContext]), so concurrent requests can't resolve each other.
+ *
+ * Identical requests in flight (same node, path and payload) share a single call.
+ */
+object WearableRpcClient : MessageClient.OnMessageReceivedListener {
+    private const val TAG = "WearableRpcClient"
+
+    const val DEFAULT_TIMEOUT = 5000L
+
+    private val RPC_MAGIC = byteArrayOf(0xA6.toByte(), 'R'.code.toByte(), 'P'.code.toByte(), 'C'.code.toByte())
+    private val HEADER_SIZE = RPC_MAGIC.size + Int.SIZE_BYTES
+
+    private class PendingCall(
+        val correlationId: Int?,
+        val responsePath: String?,
+        val matcher: ((MessageEvent) -> Boolean)?
+    ) {
+        val response = CompletableDeferred<MessageEvent>()
+
+        fun matches(event: MessageEvent, eventCorrelationId: Int?): Boolean {
+            if (responsePath != null && event.path != responsePath) return false
+
+            // Correlated responses only resolve their own call
+            if (eventCorrelationId != null) return eventCorrelationId == correlationId
+
+            return matcher?.invoke(event) ?: true
+        }
+    }
+
+    private class RequestKey(val nodeID: String, val path: String, val data: ByteArray?) {
+        override fun equals(other: Any?): Boolean {
+            if (this === other) return true
+            if (other !is RequestKey) return false
+
+            if (nodeID != other.nodeID) return false
+            if (path != other.path) return false
+            if (!data.contentEquals(other.data)) return false
+
+            return true
+        }
+
+        override fun hashCode(): Int {
+            var result = nodeID.hashCode()
+            result = 31 * result + path.hashCode()
+            result = 31 * result + data.contentHashCode()
+            return result
+        }
+    }
+
+    /**
+     * Identifies the request being handled by the receiver; responses sent to the requesting
+     * node on the request path should be framed with [createResponse]
+     */
+    class RequestContext(
+        val nodeID: String,
+        val path: String,
+        val correlationId: Int
+    ) : AbstractCoroutineContextElement(RequestContext) {
+        companion object Key : CoroutineContext.Key<RequestContext>
+    }
+
+    private class UnwrappedMessageEvent(
+        private val event: MessageEvent,
+        private val payload: ByteArray
+    ) : MessageEvent by event {
+        override fun getData(): ByteArray = payload
+    }
+
+    private val scope = CoroutineScope(SupervisorJob() + Dispatchers.Default)
+
+    private val nextCorrelationId = AtomicInteger()
+    private val pendingCalls = CopyOnWriteArrayList<PendingCall>()
+    private val inFlightCalls = ConcurrentHashMap<Any, Deferred<MessageEvent?>>()
+
+    private val registrationLock = Mutex()
+
+    @Volatile
+    private var isRegistered = false
+
+    /**
+     * Sends a request and awaits the response sent back on the same path
+     *
+     * @return the response payload or null if no response was received in time
+     * @throws Exception if the request could not be sent
+     */
+    suspend fun request(
+        nodeID: String,
+        path: String,
+        data: ByteArray? = null,
+        timeoutMillis: Long = DEFAULT_TIMEOUT
+    ): ByteArray? {
+        return deduplicate(RequestKey(nodeID, path, data)) {
+            val correlationId = if (WireProtocolHelper.isRpcSupported(nodeID)) {
+                nextCorrelationId.incrementAndGet()
+            } else {
+                null
+            }
+
+            execute(PendingCall(correlationId, path, null), timeoutMillis) {
+                Wearable.getMessageClient(appLib.context)
+                    .sendMessage(
+                        nodeID,
+                        path,
+                        correlationId?.let { frame(it, data) } ?: data
+                    )
+                    .await()
+            }
+        }?.data
+    }
+
+    /**
+     * Invokes [send] and awaits the first message accepted by [matcher]
+     *
+     * Used for responses which aren't correlated to the request, such as state updates
+     *
+     * @param key identifies identical calls; calls with an equal key share a single call
+     * @return the matching message or null if none was received in time
+     * @throws Exception thrown by [send]
+     */
+    suspend fun awaitMessage(
+        key: Any? = null,
+        timeoutMillis: Long = DEFAULT_TIMEOUT,
+        matcher: (MessageEvent) -> Boolean,
+        send: suspend () -> Unit
+    ): MessageEvent? {
+        val call = suspend {
+            execute(PendingCall(null, null, matcher), timeoutMillis, send)
+        }
+
+        return if (key != null) deduplicate(key, call) else call()
+    }
+
+    override fun onMessageReceived(messageEvent: MessageEvent) {
+        if (pendingCalls.isEmpty()) return
+
+        val correlationId = getCorrelationId(messageEvent.data)
+        val event = unwrap(messageEvent)
+
+        pendingCalls.forEach { call ->
+            if (call.matches(event, correlationId)) {
+                call.response.complete(event)
+            }
+        }
+    }
+
+    private suspend fun execute(
+        call: PendingCall,
+        timeoutMillis: Long,
+        send: suspend () -> Unit
+    ): MessageEvent? {
+        ensureRegistered()
+
+        pendingCalls.add(call)
+        try {
+            send()
+            return withTimeoutOrNull(timeoutMillis) {
+                call.response.await()
+            }
+        } finally {
+            pendingCalls.remove(call)
+        }
+    }
+
+    private suspend fun deduplicate(
+        key: Any,
+        call: suspend () -> MessageEvent?
+    ): MessageEvent? {
+        val deferred = inFlightCalls.computeIfAbsent(key) {
+            scope.async(start = CoroutineStart.LAZY) { call() }
+        }
+        deferred.invokeOnCompletion {
+            inFlightCalls.remove(key, deferred)
+        }
+
+        return deferred.await()
+    }
+
+    private suspend fun ensureRegistered() {
+        if (isRegistered) return
+
+        registrationLock.withLock {
+            if (!isRegistered) {
+                try {
+                    Wearable.getMessageClient(appLib.context)
+                        .addListener(this)
+                        .await()
+                    isRegistered = true
+                } catch (e: Exception) {
+                    Logger.writeLine(Log.ERROR, e, "%s: unable to register listener", TAG)
+                    throw e
+                }
+            }
+        }
+    }
+
+    private fun isFramed(data: ByteArray?): Boolean {
+        if (data == null || data.size < HEADER_SIZE) return false
+
+        for (i in RPC_MAGIC.indices) {
+            if (data[i] != RPC_MAGIC[i]) return false
+        }
+
+        return true
+    }
+
+    fun frame(correlationId: Int, payload: ByteArray?): ByteArray {
+        return ByteBuffer.allocate(HEADER_SIZE + (payload?.size ?: 0))
+            .put(RPC_MAGIC)
+            .putInt(correlationId)
+            .apply { payload?.let { put(it) } }
+            .array()
+    }
+
+    fun getCorrelationId(data: ByteArray?): Int? {
+        if (!isFramed(data)) return null
+        return ByteBuffer.wrap(data!!, RPC_MAGIC.size, Int.SIZE_BYTES).getInt()
+    }
+
+    /**
+     * Returns the message with the RPC header removed from the payload, if present
+     */
+    fun unwrap(messageEvent: MessageEvent): MessageEvent {
+        val data = messageEvent.data
+        if (!isFramed(data)) return messageEvent
+
+        return UnwrappedMessageEvent(messageEvent, data.copyOfRange(HEADER_SIZE, data.size))
+    }
+
+    /**
+     * Returns the request context for the message if it's a correlated request
+     */
+    fun getRequestContext(messageEvent: MessageEvent): RequestContext? {
+        return getCorrelationId(messageEvent.data)?.let {
+            RequestContext(messageEvent.sourceNodeId, messageEvent.path, it)
+        }
+    }
+
+    /**
+     * Frames the response if it answers the request in the given context
+     */
+    fun createResponse(
+        context: CoroutineContext,
+        nodeID: String?,
+        path: String,
+        data: ByteArray?
+    ): ByteArray? {
+        val request = context[RequestContext]
+
+        return if (request != null && request.nodeID == nodeID && request.path == path) {
+            frame(request.correlationId, data)
+        } else {
+            data
+        }
+    }
+}
@@ -0,0 +1,131 @@
+package com.thewizrd.shared_resources.helpers
+
+import com.thewizrd.shared_resources.utils.intToBytes
+import com.thewizrd.shared_resources.utils.longToBytes
+import java.nio.ByteBuffer
+import java.util.concurrent.ConcurrentHashMap
+
+/**
+ * Tracks the wire protocol versions supported by remote nodes
+ *
+ * Protocol versions are exchanged through [WearableHelper.VersionPath]:
+ * payload = [app version code (long)][protocol version (int)]
+ *
+ * Older clients only send/read the version code, so remote nodes are treated as
+ * legacy (JSON only) until they report otherwise
+ */
+object WireProtocolHelper {
+    /* Legacy: JSON messages only */
+    private const val PROTOCOL_LEGACY = 0
+
+    /* Binary action messages on ActionsPath */
+    private const val PROTOCOL_BINARY_ACTIONS = 1
+
+    /* Dashboard snapshot message on DashboardSnapshotPath */
+    private const val PROTOCOL_DASHBOARD_SNAPSHOT = 2
+
+    /* Delta dashboard snapshots with sync state */
+    private const val PROTOCOL_DASHBOARD_DELTA = 3
+
+    /* Correlated request/response payloads (see WearableRpcClient) */
+    private const val PROTOCOL_RPC = 4
+
+    /* Artwork spec appended to MediaPlayerConnectPath payloads (see MediaHelper) */
+    private const val PROTOCOL_MEDIA_ARTWORK_SPEC = 5
+
+    /* App catalog manifest on AppsPath; delta app list (see AppCatalogSerializer) */
+    private const val PROTOCOL_APP_CATALOG = 6
+
+    /* Framed binary ChannelClient streams (see FramedStream) */
+    private const val PROTOCOL_FRAMED_CHANNEL = 7
+
+    /* App lists without icons; icons fetched on demand on AppIconsPath (see AppIconSerializer) */
+    private const val PROTOCOL_ICON_FETCH = 8
+
+    /* Scroll gestures streamed on ScrollStreamPath (see ScrollStream) */
+    private const val PROTOCOL_GESTURE_STREAM = 9
+
+    /* Track key prepended to MediaPlayerArtPath payloads (see MediaHelper) */
+    private const val PROTOCOL_ARTWORK_TRACK_KEY = 10
+
+    const val PROTOCOL_VERSION = PROTOCOL_ARTWORK_TRACK_KEY
+
+    private val peerProtocolVersions = ConcurrentHashMap<String, Int>()
+
+    fun createVersionPayload(): ByteArray {
+        return WearableHelper.getAppVersionCode().longToBytes() + PROTOCOL_VERSION.intToBytes()
+    }
+
+    /**
+     * Records the protocol version reported by the remote node
+     *
+     * @return the app version code of the remote node or null if not provided
+     */
+    fun onVersionPayloadReceived(nodeID: String, data: ByteArray?): Long? {
+        if (data == null || data.size < Long.SIZE_BYTES) {
+            return null
+        }
+
+        val buf = ByteBuffer.wrap(data)
+        val versionCode = buf.getLong()
+        val protocolVersion =
+            if (buf.remaining() >= Int.SIZE_BYTES) buf.getInt() else PROTOCOL_LEGACY
+
+        peerProtocolVersions[nodeID] = protocolVersion
+
+        return versionCode
+    }
+
+    fun isNegotiated(nodeID: String): Boolean {
+        return peerProtocolVersions.containsKey(nodeID)
+    }
+
+    fun isBinaryActionsSupported(nodeID: String?): Boolean {
+        return getProtocolVersion(nodeID) >= PROTOCOL_BINARY_ACTIONS
+    }
+
+    fun isDashboardSnapshotSupported(nodeID: String?): Boolean {
+        return getProtocolVersion(nodeID) >= PROTOCOL_DASHBOARD_SNAPSHOT
+    }
+
+    fun isDashboardDeltaSupported(nodeID: String?): Boolean {
+        return getProtocolVersion(nodeID) >= PROTOCOL_DASHBOARD_DELTA
+    }
+
+    fun isRpcSupported(nodeID: String?): Boolean {
+        return getProtocolVersion(nodeID) >= PROTOCOL_RPC
+    }
+
+    fun isMediaArtworkSpecSupported(nodeID: String?): Boolean {
+        return getProtocolVersion(nodeID) >= PROTOCOL_MEDIA_ARTWORK_SPEC
+    }
+
+    fun isAppCatalogSupported(nodeID: String?): Boolean {
+        return getProtocolVersion(nodeID) >= PROTOCOL_APP_CATALOG
+    }
+
+    fun isFramedChannelSupported(nodeID: String?): Boolean {
+        return getProtocolVersion(nodeID) >= PROTOCOL_FRAMED_CHANNEL
+    }
+
+    fun isIconFetchSupported(nodeID: String?): Boolean {
+        return getProtocolVersion(nodeID) >= PROTOCOL_ICON_FETCH
+    }
+
+    fun isGestureStreamSupported(nodeID: String?): Boolean {
+        return getProtocolVersion(nodeID) >= PROTOCOL_GESTURE_STREAM
+    }
+
+    fun isArtworkTrackKeySupported(nodeID: String?): Boolean {
+        return getProtocolVersion(nodeID) >= PROTOCOL_ARTWORK_TRACK_KEY
+    }
+
+    fun resetNode(nodeID: String) {
+        peerProtocolVersions.remove(nodeID)
+    }
+
+    private fun getProtocolVersion(nodeID: String?): Int {
+        if (nodeID == null) return PROTOCOL_LEGACY
+        return peerProtocolVersions[nodeID] ?: PROTOCOL_LEGACY
+    }
+}
@@ -0,0 +1,13 @@
+package com.thewizrd.shared_resources.media
+
+/**
+ * Artwork requirements of the watch, reported when connecting to the media player
+ *
+ * @param sizePx size of the square the artwork is scaled to fit in; the smaller dimension of
+ * the display, so the artwork fits the display either way
+ * @param maxBytes byte budget for the encoded artwork
+ */
+data class MediaArtworkSpec(
+    val sizePx: Int,
+    val maxBytes: Int
+)
@@ -0,0 +1,127 @@
+package com.thewizrd.shared_resources.media
+
+import com.thewizrd.shared_resources.data.AppItemData
+import com.thewizrd.shared_resources.data.AppItemSerializer
+import com.thewizrd.shared_resources.data.AppItemSerializer.writeTo
+import com.thewizrd.shared_resources.utils.FramedRecord
+import com.thewizrd.shared_resources.utils.FramedStreamReader
+import com.thewizrd.shared_resources.utils.FramedStreamWriter
+import com.thewizrd.shared_resources.utils.readBlob
+import com.thewizrd.shared_resources.utils.readString
+import com.thewizrd.shared_resources.utils.records
+import com.thewizrd.shared_resources.utils.writeBlob
+import com.thewizrd.shared_resources.utils.writeString
+import kotlinx.coroutines.flow.Flow
+import kotlinx.coroutines.flow.mapNotNull
+
+/**
+ * Framed channel stream format (see FramedStream) for media data sent over ChannelClient
+ *
+ * Each stream holds one container record ([MusicPlayersData], [QueueItems], [BrowseMediaItems]
+ * or [CustomControls]) without its items, followed by a record per item ([AppItemData],
+ * [QueueItem], [MediaItem] or [ActionItem]). A stream without a container record stands for null
+ */
+object MediaDataSerializer {
+    private const val RECORD_MUSIC_PLAYERS = 1
+    private const val RECORD_MUSIC_PLAYER = 2
+    private const val RECORD_QUEUE = 3
+    private const val RECORD_QUEUE_ITEM = 4
+    private const val RECORD_BROWSE = 5
+    private const val RECORD_MEDIA_ITEM = 6
+    private const val RECORD_CUSTOM_CONTROLS = 7
+    private const val RECORD_ACTION_ITEM = 8
+
+    /**
+     * Splits the data into its container (without items) followed by its items;
+     * the order in which they are written to and read from the stream
+     */
+    fun flatten(data: Any?): List<Any> {
+        return when (data) {
+            is MusicPlayersData -> listOf(data.copy(musicPlayers = emptySet())) + data.musicPlayers
+            is QueueItems -> listOf(data.copy(queueItems = emptyList())) + data.queueItems
+            is BrowseMediaItems -> listOf(data.copy(mediaItems = emptyList())) + data.mediaItems
+            is CustomControls -> listOf(CustomControls()) + data.actions
+            null -> emptyList()
+            else -> throw IllegalArgumentException("unsupported type: ${data.javaClass.name}")
+        }
+    }
+
+    fun serialize(data: Any?, writer: FramedStreamWriter) {
+        writer.writeHeader()
+
+        flatten(data).forEach { element ->
+            when (element) {
+                is MusicPlayersData -> writer.writeRecord(RECORD_MUSIC_PLAYERS) {
+                    it.writeString(element.activePlayerKey)
+                }
+                is AppItemData -> writer.writeRecord(RECORD_MUSIC_PLAYER) {
+                    element.writeTo(it)
+                }
+                is QueueItems -> writer.writeRecord(RECORD_QUEUE) {
+                    it.writeLong(element.activeQueueItemId)
+                }
+                is QueueItem -> writer.writeRecord(RECORD_QUEUE_ITEM) { out ->
+                    out.writeLong(element.queueId)
+                    out.writeString(element.title)
+                    out.writeString(element.subTitle)
+                    out.writeBlob(element.icon)
+                }
+                is BrowseMediaItems -> writer.writeRecord(RECORD_BROWSE) {
+                    it.writeBoolean(element.isRoot)
+                }
+                is MediaItem -> writer.writeRecord(RECORD_MEDIA_ITEM) { out ->
+                    out.writeString(element.mediaId)
+                    out.writeString(element.title)
+                    out.writeString(element.subTitle)
+                    out.writeBlob(element.icon)
+                }
+                is CustomControls -> writer.writeRecord(RECORD_CUSTOM_CONTROLS) {}
+                is ActionItem -> writer.writeRecord(RECORD_ACTION_ITEM) { out ->
+                    out.writeString(element.action)
+                    out.writeString(element.title)
+                    out.writeBlob(element.icon)
+                }
+            }
+        }
+
+        writer.writeEnd()
+    }
+
+    /**
+     * Emits the container and then each item of the stream as they are read;
+     * in the same order as [flatten]
+     */
+    fun deserialize(reader: FramedStreamReader): Flow<Any> {
+        return reader.records().mapNotNull { decodeRecord(it) }
+    }
+
+    private fun decodeRecord(record: FramedRecord): Any? {
+        val input = record.payload
+
+        return when (record.type) {
+            RECORD_MUSIC_PLAYERS -> MusicPlayersData(activePlayerKey = input.readString())
+            RECORD_MUSIC_PLAYER -> AppItemSerializer.readItem(input)
+            RECORD_QUEUE -> QueueItems(activeQueueItemId = input.readLong())
+            RECORD_QUEUE_ITEM -> QueueItem(
+                queueId = input.readLong(),
+                title = input.readString() ?: "",
+                subTitle = input.readString(),
+                icon = input.readBlob()
+            )
+            RECORD_BROWSE -> BrowseMediaItems(isRoot = input.readBoolean())
+            RECORD_MEDIA_ITEM -> MediaItem(
+                mediaId = input.readString() ?: "",
+                title = input.readString() ?: "",
+                subTitle = input.readString(),
+                icon = input.readBlob()
+            )
+            RECORD_CUSTOM_CONTROLS -> CustomControls()
+            RECORD_ACTION_ITEM -> ActionItem(
+                action = input.readString() ?: "",
+                title = input.readString() ?: "",
+                icon = input.readBlob()
+            )
+            else -> null
+        }
+    }
+}
@@ -2,6 +2,11 @@
 
 package com.thewizrd.shared_resources.utils
 
+import kotlinx.coroutines.async
+import kotlinx.coroutines.awaitAll
+import kotlinx.coroutines.coroutineScope
+import kotlinx.coroutines.sync.Semaphore
+import kotlinx.coroutines.sync.withPermit
 import java.util.Objects
 
 fun sequenceEqual(iterable1: Iterable<*>?, iterable2: Iterable<*>?): Boolean {
@@ -37,4 +42,36 @@ fun sequenceEqual(iterator1: Iterator<*>?, iterator2: Iterator<*>?): Boolean {
         }
     }
     return iterator2?.hasNext() != true
-}
\ No newline at end of file
+}
+
+/**
+ * Maps each key to the first element with that key; keeps the order of the elements
+ */
+inline fun <T, K> Iterable<T>.associateFirstBy(keySelector: (T) -> K): LinkedHashMap<K, T> {
+    val result = LinkedHashMap<K, T>()
+    for (element in this) {
+        val key = keySelector(element)
+        if (!result.containsKey(key)) {
+            result[key] = element
+        }
+    }
+    return result
+}
+
+/**
+ * Maps the elements with at most [parallelism] transforms running at once; keeps the order
+ * of the elements. Transforms run in the caller's context, so blocking work should be called
+ * from a multi-threaded dispatcher (e.g. Dispatchers.IO)
+ */
+suspend fun <T, R> Collection<T>.mapConcurrently(
+    parallelism: Int,
+    transform: suspend (T) -> R
+): List<R> = coroutineScope {
+    val semaphore = Semaphore(parallelism)
+
+    map { element ->
+        async {
+            semaphore.withPermit { transform(element) }
+        }
+    }.awaitAll()
+}
@@ -0,0 +1,49 @@
+package com.thewizrd.shared_resources.utils
+
+import android.util.Log
+import kotlinx.coroutines.CoroutineScope
+import kotlinx.coroutines.channels.Channel
+import kotlinx.coroutines.delay
+import kotlinx.coroutines.launch
+import kotlin.coroutines.cancellation.CancellationException
+
+/**
+ * Handles the latest submitted value at most once per interval
+ *
+ * Meant for continuous controls (e.g. volume and brightness sliders, rotary input): values
+ * submitted while a value is handled or within the interval after it replace each other, so
+ * only the last one is handled. The final value is never dropped
+ *
+ * @param action handles a value; runs in [scope]
+ */
+class ConflatedRateLimiter<T>(
+    scope: CoroutineScope,
+    private val intervalMs: Long = DEFAULT_INTERVAL_MS,
+    private val action: suspend (T) -> Unit
+) {
+    companion object {
+        const val DEFAULT_INTERVAL_MS = 100L
+    }
+
+    private val values = Channel<T>(Channel.CONFLATED)
+
+    init {
+        scope.launch {
+            for (value in values) {
+                try {
+                    action(value)
+                } catch (e: CancellationException) {
+                    throw e
+                } catch (e: Exception) {
+                    Logger.writeLine(Log.ERROR, e)
+                }
+
+                delay(intervalMs)
+            }
+        }
+    }
+
+    fun submit(value: T) {
+        values.trySend(value)
+    }
+}
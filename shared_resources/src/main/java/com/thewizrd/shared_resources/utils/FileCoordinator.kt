@@ -0,0 +1,72 @@
+package com.thewizrd.shared_resources.utils
+
+import androidx.annotation.WorkerThread
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.withContext
+import java.io.File
+import java.util.concurrent.locks.ReentrantReadWriteLock
+import kotlin.concurrent.read
+import kotlin.concurrent.write
+
+/**
+ * Coordinates access to files within the process
+ *
+ * Every file has a read/write lock: reads of a file run concurrently, writes are exclusive.
+ * Locks are kept in a registry keyed by the file path only while they are in use
+ */
+object FileCoordinator {
+    private class FileLock {
+        val lock = ReentrantReadWriteLock()
+        var users = 0
+    }
+
+    private val locks = HashMap<String, FileLock>()
+
+    @WorkerThread
+    fun <T> read(file: File, block: () -> T): T {
+        val key = getKey(file)
+        val fileLock = acquire(key)
+
+        return try {
+            fileLock.lock.read(block)
+        } finally {
+            release(key, fileLock)
+        }
+    }
+
+    @WorkerThread
+    fun <T> write(file: File, block: () -> T): T {
+        val key = getKey(file)
+        val fileLock = acquire(key)
+
+        return try {
+            fileLock.lock.write(block)
+        } finally {
+            release(key, fileLock)
+        }
+    }
+
+    suspend fun <T> readAsync(file: File, block: () -> T): T = withContext(Dispatchers.IO) {
+        read(file, block)
+    }
+
+    suspend fun <T> writeAsync(file: File, block: () -> T): T = withContext(Dispatchers.IO) {
+        write(file, block)
+    }
+
+    private fun getKey(file: File): String = file.absolutePath
+
+    private fun acquire(key: String): FileLock {
+        return synchronized(locks) {
+            locks.getOrPut(key) { FileLock() }.also { it.users++ }
+        }
+    }
+
+    private fun release(key: String, fileLock: FileLock) {
+        synchronized(locks) {
+            if (--fileLock.users == 0) {
+                locks.remove(key)
+            }
+        }
+    }
+}
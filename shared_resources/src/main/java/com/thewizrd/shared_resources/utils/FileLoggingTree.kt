@@ -4,23 +4,72 @@ import android.annotation.SuppressLint
 import android.content.Context
 import android.util.Log
 import com.thewizrd.shared_resources.BuildConfig
-import com.thewizrd.shared_resources.appLib
 import com.thewizrd.shared_resources.utils.Logger.DEBUG_MODE_ENABLED
-import kotlinx.coroutines.Dispatchers
-import kotlinx.coroutines.launch
 import timber.log.Timber
 import java.io.File
 import java.io.FileOutputStream
-import java.time.LocalDateTime
+import java.io.IOException
+import java.io.OutputStreamWriter
+import java.io.Writer
+import java.time.Instant
+import java.time.LocalDate
 import java.time.ZoneOffset
 import java.time.format.DateTimeFormatter
 import java.util.Locale
+import java.util.concurrent.ConcurrentLinkedQueue
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicInteger
+import java.util.concurrent.locks.LockSupport
 
+/**
+ * Writes log lines to a daily file (Logger.yyyy-MM-dd.log) in the app's external files directory
+ *
+ * Lines are queued in a bounded buffer and written by a single background thread which keeps
+ * the current file open, so logging doesn't block the caller on disk I/O. The thread only wakes
+ * up when lines are queued. When the buffer is
+ * full the oldest lines are dropped and a marker with the dropped count is written in their
+ * place. Files larger than [MAX_FILE_SIZE] are rotated (Logger.yyyy-MM-dd.1.log, ...)
+ */
 @SuppressLint("LogNotTimber")
 class FileLoggingTree(private val context: Context) : Timber.Tree() {
     companion object {
         private val TAG = FileLoggingTree::class.java.simpleName
-        private var ranCleanup = false
+
+        private const val LOG_NAME_PREFIX = "Logger"
+        private const val LOG_NAME_FORMAT = "$LOG_NAME_PREFIX.%s.log"
+        private const val LOG_BACKUP_NAME_FORMAT = "$LOG_NAME_PREFIX.%s.%d.log"
+
+        // Only keep a weeks worth of logs
+        private const val DAYS_TO_KEEP = 7L
+
+        private const val BUFFER_CAPACITY = 1024
+        private const val MAX_FILE_SIZE = 2L * 1024 * 1024 // 2MB
+        private const val MAX_BACKUP_FILES = 3
+        private val RETRY_INTERVAL_NANOS = TimeUnit.MILLISECONDS.toNanos(500)
+
+        private val DATE_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd", Locale.ROOT)
+        private val TIMESTAMP_FORMATTER =
+            DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss:SSS", Locale.ROOT)
+                .withZone(ZoneOffset.UTC)
+    }
+
+    private class LogEntry(
+        val timeMillis: Long,
+        val priority: Int,
+        val tag: String?,
+        val message: String,
+        val t: Throwable?
+    )
+
+    private val buffer = LogRingBuffer<LogEntry>(BUFFER_CAPACITY)
+
+    @Volatile
+    private var isClosed = false
+
+    private val writerThread = Thread({ runWriter() }, TAG).apply {
+        isDaemon = true
+        priority = Thread.MIN_PRIORITY
+        start()
     }
 
     override fun isLoggable(tag: String?, priority: Int): Boolean {
@@ -32,92 +81,209 @@ class FileLoggingTree(private val context: Context) : Timber.Tree() {
     }
 
     override fun log(priority: Int, tag: String?, message: String, t: Throwable?) {
+        if (isClosed) return
+
+        val wasEmpty = buffer.offer(LogEntry(System.currentTimeMillis(), priority, tag, message, t))
+        if (wasEmpty) {
+            LockSupport.unpark(writerThread)
+        }
+    }
+
+    /**
+     * Writes the queued lines and stops the writer; lines logged afterwards are ignored
+     */
+    fun close() {
+        isClosed = true
+        LockSupport.unpark(writerThread)
+    }
+
+    private fun runWriter() {
+        val directory = File(context.getExternalFilesDir(null).toString() + "/logs")
+        val logFile = LogFile(directory)
+
+        cleanupLogs(directory)
+
+        while (true) {
+            val closing = isClosed
+            // Set if the queued lines couldn't be written; retried after an interval
+            var isFlushPending = false
+
+            try {
+                val dropped = buffer.takeDroppedCount()
+                if (dropped > 0) {
+                    logFile.write(
+                        System.currentTimeMillis(), Log.WARN, TAG,
+                        "Dropped $dropped log lines", null
+                    )
+                }
+
+                while (true) {
+                    val entry = buffer.poll() ?: break
+                    logFile.write(
+                        entry.timeMillis, entry.priority, entry.tag, entry.message, entry.t
+                    )
+                }
+
+                logFile.flush()
+            } catch (e: Exception) {
+                Log.e(TAG, "Error while logging into file : $e")
+                logFile.close()
+                isFlushPending = !buffer.isEmpty()
+            }
+
+            if (closing) break
+
+            if (isFlushPending) {
+                LockSupport.parkNanos(this, RETRY_INTERVAL_NANOS)
+            } else {
+                // Idle until log() queues a line into the empty buffer
+                LockSupport.park(this)
+            }
+        }
+
+        logFile.close()
+    }
+
+    private fun cleanupLogs(directory: File) {
         try {
-            val directory = File(context.getExternalFilesDir(null).toString() + "/logs")
+            val today = LocalDate.now(ZoneOffset.UTC)
 
-            if (!directory.exists()) {
-                directory.mkdir()
+            // Date stamps of the last 7 days
+            val dateStampsToKeep = (0 until DAYS_TO_KEEP).mapTo(HashSet()) {
+                today.minusDays(it).format(DATE_FORMATTER)
             }
 
-            val today = LocalDateTime.now(ZoneOffset.UTC)
+            // List all log files not in the above list
+            val logs = directory.listFiles { _, name ->
+                name.startsWith(LOG_NAME_PREFIX) &&
+                        !dateStampsToKeep.contains(name.split('.').getOrNull(1))
+            }
+
+            // Delete all log files in the array above
+            logs?.forEach { it.delete() }
+        } catch (e: Exception) {
+            Log.e(TAG, "Error cleaning up log files : $e")
+        }
+    }
+
+    /**
+     * Current log file; only used by the writer thread
+     */
+    private class LogFile(private val directory: File) {
+        private var writer: Writer? = null
+        private var logDate: LocalDate? = null
+        private var fileSize = 0L
 
-            val dateTimeStamp = today.format(DateTimeFormatter.ofPattern("yyyy-MM-dd", Locale.ROOT))
-            val logTimeStamp =
-                today.format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss:SSS", Locale.ROOT))
+        fun write(timeMillis: Long, priority: Int, tag: String?, message: String, t: Throwable?) {
+            val instant = Instant.ofEpochMilli(timeMillis)
+            val writer = getWriter(instant.atOffset(ZoneOffset.UTC).toLocalDate())
 
-            val logNameFormat = "Logger.%s.log"
-            val fileName = String.format(Locale.ROOT, logNameFormat, dateTimeStamp)
+            val priorityTAG = when (priority) {
+                Log.VERBOSE -> "VERBOSE"
+                Log.DEBUG -> "DEBUG"
+                Log.INFO -> "INFO"
+                Log.WARN -> "WARN"
+                Log.ERROR -> "ERROR"
+                Log.ASSERT -> "ASSERT"
+                else -> "DEBUG"
+            }
 
-            val file = File(directory.path + File.separator + fileName)
+            val line = buildString {
+                TIMESTAMP_FORMATTER.formatTo(instant, this)
+                append('|').append(priorityTAG).append('|')
+                if (tag != null) append(tag).append('|')
+                append(message).append('\n')
+                if (t != null) append(t.toString()).append('\n')
+            }
+
+            writer.write(line)
+            // Log lines are mostly ASCII
+            fileSize += line.length
+        }
+
+        fun flush() {
+            writer?.flush()
+        }
+
+        fun close() {
+            try {
+                writer?.close()
+            } catch (ignored: IOException) {
+            }
+            writer = null
+            logDate = null
+        }
 
-            if (!file.exists())
-                file.createNewFile()
+        private fun getWriter(date: LocalDate): Writer {
+            if (date != logDate || fileSize >= MAX_FILE_SIZE) {
+                close()
 
-            if (file.exists()) {
-                val fileOutputStream = FileOutputStream(file, true)
+                val stamp = date.format(DATE_FORMATTER)
 
-                val priorityTAG = when (priority) {
-                    Log.VERBOSE -> "VERBOSE"
-                    Log.DEBUG -> "DEBUG"
-                    Log.INFO -> "INFO"
-                    Log.WARN -> "WARN"
-                    Log.ERROR -> "ERROR"
-                    Log.ASSERT -> "ASSERT"
-                    else -> "DEBUG"
+                if (!directory.exists()) {
+                    directory.mkdir()
                 }
 
-                if (t != null) {
-                    fileOutputStream.write("$logTimeStamp|$priorityTAG|${if (tag == null) "" else "$tag|"}$message\n$t\n".toByteArray())
-                } else {
-                    fileOutputStream.write("$logTimeStamp|$priorityTAG|${if (tag == null) "" else "$tag|"}$message\n".toByteArray())
+                val file = File(directory, String.format(Locale.ROOT, LOG_NAME_FORMAT, stamp))
+                if (file.length() >= MAX_FILE_SIZE) {
+                    rotate(file, stamp)
                 }
 
-                fileOutputStream.close()
+                writer = OutputStreamWriter(FileOutputStream(file, true), Charsets.UTF_8)
+                    .buffered()
+                logDate = date
+                fileSize = file.length()
             }
 
-            // Cleanup old logs if they exist
-            if (!ranCleanup) {
-                appLib.appScope.launch(Dispatchers.IO) {
-                    try {
-                        // Only keep a weeks worth of logs
-                        val daysToKeep = 7
-
-                        // Get todays date
-                        val todayLocal = today.toLocalDate()
-
-                        // Create a list of the last 7 day's dates
-                        val dateStampsToKeep: MutableList<String> = ArrayList()
-                        for (i in 0 until daysToKeep) {
-                            val date = todayLocal.minusDays(i.toLong())
-                            val dateStamp =
-                                date.format(DateTimeFormatter.ofPattern("yyyy-MM-dd", Locale.ROOT))
-
-                            dateStampsToKeep.add(
-                                String.format(
-                                    Locale.ROOT,
-                                    logNameFormat,
-                                    dateStamp
-                                )
-                            )
-                        }
-
-                        // List all log files not in the above list
-                        val logs = directory.listFiles { dir, name ->
-                            name.startsWith("Logger") && !dateStampsToKeep.contains(name)
-                        }
-
-                        // Delete all log files in the array above
-                        for (logToDel in logs) {
-                            logToDel.delete()
-                        }
-                    } catch (e: Exception) {
-                        Log.e(TAG, "Error cleaning up log files : $e")
-                    }
-                }
-                ranCleanup = true
+            return writer!!
+        }
+
+        /**
+         * Shifts Logger.date.log -> Logger.date.1.log -> ... dropping the oldest file
+         */
+        private fun rotate(file: File, stamp: String) {
+            fun backupFile(index: Int) = File(
+                directory,
+                String.format(Locale.ROOT, LOG_BACKUP_NAME_FORMAT, stamp, index)
+            )
+
+            backupFile(MAX_BACKUP_FILES).delete()
+            for (i in MAX_BACKUP_FILES - 1 downTo 1) {
+                backupFile(i).takeIf { it.exists() }?.renameTo(backupFile(i + 1))
             }
-        } catch (e: Exception) {
-            Log.e(TAG, "Error while logging into file : $e")
+            file.renameTo(backupFile(1))
         }
     }
-}
\ No newline at end of file
+}
+
+/**
+ * Bounded multi-producer queue which drops the oldest element when full; lock-free
+ */
+private class LogRingBuffer<T : Any>(private val capacity: Int) {
+    private val queue = ConcurrentLinkedQueue<T>()
+    private val size = AtomicInteger(0)
+    private val droppedCount = AtomicInteger(0)
+
+    /**
+     * @return true if the buffer was empty
+     */
+    fun offer(element: T): Boolean {
+        queue.offer(element)
+        val newSize = size.incrementAndGet()
+
+        if (newSize > capacity && queue.poll() != null) {
+            size.decrementAndGet()
+            droppedCount.incrementAndGet()
+        }
+
+        return newSize == 1
+    }
+
+    fun poll(): T? {
+        return queue.poll()?.also { size.decrementAndGet() }
+    }
+
+    fun isEmpty(): Boolean = queue.isEmpty()
+
+    fun takeDroppedCount(): Int = droppedCount.getAndSet(0)
+}
@@ -3,18 +3,13 @@ package com.thewizrd.shared_resources.utils
 import android.content.Context
 import android.net.Uri
 import android.util.Log
-import androidx.annotation.WorkerThread
 import androidx.core.util.AtomicFile
 import androidx.core.util.ObjectsCompat
 import kotlinx.coroutines.Dispatchers
-import kotlinx.coroutines.delay
-import kotlinx.coroutines.supervisorScope
 import kotlinx.coroutines.withContext
 import java.io.BufferedReader
 import java.io.Closeable
 import java.io.File
-import java.io.FileInputStream
-import java.io.FileNotFoundException
 import java.io.FileOutputStream
 import java.io.IOException
 import java.io.InputStream
@@ -52,15 +47,9 @@ object FileUtils {
         return false
     }
 
-    suspend fun readFile(file: File): String? = withContext(Dispatchers.IO) {
+    suspend fun readFile(file: File): String? = FileCoordinator.readAsync(file) {
         val mFile = AtomicFile(file)
 
-        while (isFileLocked(file)) {
-            supervisorScope {
-                delay(100)
-            }
-        }
-
         var reader: BufferedReader? = null
         var data: String? = null
 
@@ -86,15 +75,9 @@ object FileUtils {
         data
     }
 
-    suspend fun writeToFile(data: String?, file: File) = withContext(Dispatchers.IO) {
+    suspend fun writeToFile(data: String?, file: File) = FileCoordinator.writeAsync(file) {
         val mFile = AtomicFile(file)
 
-        while (isFileLocked(file)) {
-            supervisorScope {
-                delay(100)
-            }
-        }
-
         var outputStream: FileOutputStream? = null
         var writer: OutputStreamWriter? = null
 
@@ -121,13 +104,9 @@ object FileUtils {
             val files = directory.listFiles()
             if (files != null) {
                 for (file in files) {
-                    while (isFileLocked(file)) {
-                        supervisorScope {
-                            delay(100)
-                        }
+                    FileCoordinator.write(file) {
+                        file.delete()
                     }
-
-                    file.delete()
                 }
             }
 
@@ -136,32 +115,6 @@ object FileUtils {
 
         success
     }
-
-    @JvmStatic
-    @WorkerThread
-    fun isFileLocked(file: File): Boolean {
-        if (!file.exists())
-            return false
-
-        var stream: FileInputStream? = null
-
-        try {
-            stream = FileInputStream(file)
-        } catch (fex: FileNotFoundException) {
-            return false
-        } catch (e: IOException) {
-            //the file is unavailable because it is:
-            //still being written to
-            //or being processed by another thread
-            //or does not exist (has already been processed)
-            return true
-        } finally {
-            stream?.closeQuietly()
-        }
-
-        //file is not locked
-        return false
-    }
 }
 
 fun Closeable.closeQuietly() {
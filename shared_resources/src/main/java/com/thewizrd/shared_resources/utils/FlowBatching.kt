@@ -0,0 +1,67 @@
+package com.thewizrd.shared_resources.utils
+
+import kotlinx.coroutines.ExperimentalCoroutinesApi
+import kotlinx.coroutines.FlowPreview
+import kotlinx.coroutines.coroutineScope
+import kotlinx.coroutines.flow.Flow
+import kotlinx.coroutines.flow.produceIn
+import kotlinx.coroutines.selects.onTimeout
+import kotlinx.coroutines.selects.select
+
+private const val DEFAULT_BATCH_SIZE = 20
+private const val DEFAULT_BATCH_INTERVAL_MS = 250L
+
+/**
+ * Collects the flow in batches, so a consumer that updates UI state with the accumulated items
+ * does so once per batch instead of once per item
+ *
+ * The first element is handed to [action] right away. After that, a batch is handed over once
+ * it holds [maxSize] elements or [intervalMs] has passed since the previous batch, even if the
+ * flow stalls; the remaining elements are handed over when the flow completes
+ */
+@OptIn(FlowPreview::class, ExperimentalCoroutinesApi::class)
+suspend fun <T> Flow<T>.collectBatched(
+    maxSize: Int = DEFAULT_BATCH_SIZE,
+    intervalMs: Long = DEFAULT_BATCH_INTERVAL_MS,
+    action: suspend (List<T>) -> Unit
+) = coroutineScope<Unit> {
+    val elements = produceIn(this)
+
+    var batch = ArrayList<T>(maxSize)
+    var lastFlushTime = 0L
+    var isFirstBatch = true
+
+    while (true) {
+        val elapsedMs = (System.nanoTime() - lastFlushTime) / 1_000_000
+
+        val isClosed = select {
+            elements.onReceiveCatching { result ->
+                if (result.isClosed) {
+                    result.exceptionOrNull()?.let { throw it }
+                    true
+                } else {
+                    batch.add(result.getOrThrow())
+                    false
+                }
+            }
+            if (batch.isNotEmpty()) {
+                onTimeout((intervalMs - elapsedMs).coerceAtLeast(0)) { false }
+            }
+        }
+
+        if (isClosed) break
+
+        val isDue = (System.nanoTime() - lastFlushTime) / 1_000_000 >= intervalMs
+        if (batch.isNotEmpty() && (isFirstBatch || batch.size >= maxSize || isDue)) {
+            val flushed = batch
+            batch = ArrayList(maxSize)
+            lastFlushTime = System.nanoTime()
+            isFirstBatch = false
+            action(flushed)
+        }
+    }
+
+    if (batch.isNotEmpty()) {
+        action(batch)
+    }
+}
@@ -0,0 +1,147 @@
+package com.thewizrd.shared_resources.utils
+
+import kotlinx.coroutines.flow.Flow
+import kotlinx.coroutines.flow.flow
+import java.io.BufferedInputStream
+import java.io.ByteArrayInputStream
+import java.io.ByteArrayOutputStream
+import java.io.DataInputStream
+import java.io.DataOutputStream
+import java.io.EOFException
+import java.io.InputStream
+import java.io.OutputStream
+
+/**
+ * Length-prefixed binary format for ChannelClient streams
+ *
+ * Layout: [MAGIC][VERSION] followed by records:
+ * [record type (byte)][payload length (int)][payload]
+ *
+ * The stream ends with a record of type [RECORD_END]. Blobs (e.g. icons) are written as raw
+ * bytes; unknown record types are skipped. Legacy streams begin with JSON or "data: ", so the
+ * leading magic byte is enough to tell the formats apart
+ */
+object FramedStream {
+    const val VERSION = 1
+
+    const val RECORD_END = 0
+
+    internal const val MAGIC: Byte = 0xA9.toByte()
+
+    /**
+     * Checks whether the stream begins with a framed header; the stream position is kept
+     */
+    fun isFramed(input: BufferedInputStream): Boolean {
+        input.mark(1)
+        val first = input.read()
+        input.reset()
+        return first == (MAGIC.toInt() and 0xFF)
+    }
+}
+
+class FramedStreamWriter(output: OutputStream) {
+    private val out = DataOutputStream(output)
+    private val buffer = ByteArrayOutputStream()
+
+    fun writeHeader() {
+        out.writeByte(FramedStream.MAGIC.toInt())
+        out.writeByte(FramedStream.VERSION)
+    }
+
+    fun writeRecord(type: Int, writePayload: (DataOutputStream) -> Unit) {
+        buffer.reset()
+        DataOutputStream(buffer).run {
+            writePayload(this)
+            flush()
+        }
+
+        out.writeByte(type)
+        out.writeInt(buffer.size())
+        buffer.writeTo(out)
+    }
+
+    fun writeEnd() {
+        out.writeByte(FramedStream.RECORD_END)
+        out.writeInt(0)
+        out.flush()
+    }
+
+    fun flush() {
+        out.flush()
+    }
+}
+
+class FramedRecord(val type: Int, val payload: DataInputStream)
+
+class FramedStreamReader(input: InputStream) {
+    private val input = DataInputStream(input)
+
+    /**
+     * Reads the stream header
+     *
+     * @return the format version of the stream
+     */
+    fun readHeader(): Int {
+        if (input.readByte() != FramedStream.MAGIC) {
+            throw IllegalStateException("stream is not framed")
+        }
+
+        return input.readUnsignedByte()
+    }
+
+    /**
+     * Reads the next record; only the record itself is kept in memory
+     *
+     * @return the record or null if the end of the stream is reached
+     */
+    fun readRecord(): FramedRecord? {
+        val type = try {
+            input.readUnsignedByte()
+        } catch (e: EOFException) {
+            return null
+        }
+
+        val payload = ByteArray(input.readInt())
+        input.readFully(payload)
+
+        if (type == FramedStream.RECORD_END) return null
+
+        return FramedRecord(type, DataInputStream(ByteArrayInputStream(payload)))
+    }
+}
+
+/**
+ * Emits the records of the stream as they are read; the header is read on collection.
+ * Reads are blocking, so collect on an IO dispatcher (e.g. with flowOn)
+ */
+fun FramedStreamReader.records(): Flow<FramedRecord> = flow {
+    readHeader()
+
+    while (true) {
+        emit(readRecord() ?: break)
+    }
+}
+
+fun DataOutputStream.writeString(value: String?) {
+    writeBlob(value?.toByteArray(Charsets.UTF_8))
+}
+
+fun DataInputStream.readString(): String? {
+    return readBlob()?.let { String(it, Charsets.UTF_8) }
+}
+
+fun DataOutputStream.writeBlob(value: ByteArray?) {
+    if (value == null) {
+        writeInt(-1)
+    } else {
+        writeInt(value.size)
+        write(value)
+    }
+}
+
+fun DataInputStream.readBlob(): ByteArray? {
+    val length = readInt()
+    if (length < 0) return null
+
+    return ByteArray(length).also { readFully(it) }
+}
@@ -0,0 +1,55 @@
+package com.thewizrd.shared_resources.utils
+
+import java.security.MessageDigest
+
+/**
+ * Hashes used to key caches and versions
+ *
+ * FNV-1a (64-bit) is used where a cheap, non-cryptographic hash is enough (e.g. to detect
+ * changed content); SHA-1 where the hash is also used as a name (e.g. file names, resource versions)
+ */
+object HashUtils {
+    const val FNV_OFFSET_BASIS = -0x340d631b7bdddcdbL
+    private const val FNV_PRIME = 0x100000001b3L
+
+    private val HEX_DIGITS = "0123456789abcdef".toCharArray()
+
+    /**
+     * Mixes [value] into the FNV-1a [hash]; start from [FNV_OFFSET_BASIS]
+     */
+    fun fnv1a(hash: Long, value: Long): Long {
+        return (hash xor value) * FNV_PRIME
+    }
+
+    fun fnv1a(data: ByteArray): Long {
+        var hash = FNV_OFFSET_BASIS
+        data.forEach {
+            hash = fnv1a(hash, it.toLong() and 0xFF)
+        }
+        return hash
+    }
+
+    fun fnv1a(data: CharSequence): Long {
+        var hash = FNV_OFFSET_BASIS
+        data.forEach {
+            hash = fnv1a(hash, it.code.toLong())
+        }
+        return hash
+    }
+
+    /**
+     * @return the SHA-1 digest of [data] as a lowercase hex string
+     */
+    fun sha1Hex(data: ByteArray): String {
+        val digest = MessageDigest.getInstance("SHA-1").digest(data)
+        val chars = CharArray(digest.size * 2)
+
+        digest.forEachIndexed { index, byte ->
+            val value = byte.toInt() and 0xFF
+            chars[index * 2] = HEX_DIGITS[value ushr 4]
+            chars[index * 2 + 1] = HEX_DIGITS[value and 0x0F]
+        }
+
+        return String(chars)
+    }
+}
@@ -93,15 +93,7 @@ object JSONParser {
         return `object`
     }
 
-    fun <T> deserializer(file: File, type: Type?): T? {
-        while (FileUtils.isFileLocked(file)) {
-            try {
-                Thread.sleep(100)
-            } catch (e: InterruptedException) {
-                e.printStackTrace()
-            }
-        }
-
+    fun <T> deserializer(file: File, type: Type?): T? = FileCoordinator.read(file) {
         var `object`: T? = null
         var stream: FileInputStream? = null
         var sReader: InputStreamReader? = null
@@ -130,19 +122,10 @@ object JSONParser {
             }
         }
 
-        return `object`
+        `object`
     }
 
-    fun serializer(`object`: Any, file: File) {
-        // Wait for file to be free
-        while (FileUtils.isFileLocked(file)) {
-            try {
-                Thread.sleep(100)
-            } catch (e: InterruptedException) {
-                e.printStackTrace()
-            }
-        }
-
+    fun serializer(`object`: Any, file: File) = FileCoordinator.write(file) {
         val mFile = AtomicFile(file)
         var stream: FileOutputStream? = null
         var writer: JsonWriter? = null
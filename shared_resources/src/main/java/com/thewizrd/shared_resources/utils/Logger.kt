@@ -38,6 +38,7 @@ object Logger {
             Timber.forest().forEach {
                 if (it is FileLoggingTree) {
                     Timber.uproot(it)
+                    it.close()
                 }
             }
         }
@@ -50,7 +51,11 @@ object Logger {
 
     @JvmStatic
     fun shutdown() {
+        val trees = Timber.forest()
         Timber.uprootAll()
+        trees.forEach {
+            if (it is FileLoggingTree) it.close()
+        }
     }
 
     @JvmStatic
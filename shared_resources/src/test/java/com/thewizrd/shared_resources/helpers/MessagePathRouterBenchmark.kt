@@ -0,0 +1,214 @@
+package com.thewizrd.shared_resources.helpers
+
+import kotlinx.coroutines.runBlocking
+import org.junit.Assert.assertEquals
+import org.junit.Test
+
+/**
+ * Compares path dispatch latency of [MessagePathRouter] against the if/else chain previously
+ * used by the phone's WearableDataListenerService
+ */
+class MessagePathRouterBenchmark {
+    companion object {
+        private const val WARMUP_ITERATIONS = 200_000
+        private const val ITERATIONS = 2_000_000
+    }
+
+    private val prefixPaths = listOf(
+        WearableHelper.ActionsPath,
+        WearableHelper.UpdatePath,
+        MediaHelper.MusicPlayersPath,
+        WearableHelper.StatusPath
+    )
+
+    private val exactPaths = listOf(
+        WearableHelper.StartActivityPath,
+        WearableHelper.AppStatePath,
+        MediaHelper.OpenMusicPlayerPath,
+        MediaHelper.PlayCommandPath,
+        WearableHelper.BtDiscoverPath,
+        WearableHelper.AudioStatusPath,
+        WearableHelper.AudioVolumePath,
+        WearableHelper.ValueStatusPath,
+        WearableHelper.ValueStatusSetPath,
+        WearableHelper.BrightnessModePath,
+        GestureUIHelper.GestureStatusPath,
+        WearableHelper.TimedActionsStatusPath,
+        WearableHelper.AppsPath,
+        WearableHelper.LaunchAppPath,
+        MediaHelper.MediaPlayerConnectPath,
+        MediaHelper.MediaPlayerDisconnectPath,
+        MediaHelper.MediaPlayerAutoLaunchPath,
+        InCallUIHelper.ConnectPath,
+        InCallUIHelper.DisconnectPath,
+        WearableHelper.VersionPath,
+        GestureUIHelper.ScrollPath,
+        GestureUIHelper.DPadPath,
+        GestureUIHelper.DPadClickPath,
+        GestureUIHelper.KeyEventPath,
+        WearableHelper.TimedActionDeletePath,
+        WearableHelper.TimedActionAddPath,
+        WearableHelper.TimedActionUpdatePath
+    )
+
+    private val samplePaths = (exactPaths + prefixPaths + listOf(
+        WearableHelper.WifiPath,
+        WearableHelper.BatteryPath,
+        "/unknown/path"
+    )).toTypedArray()
+
+    private var lastRoute = -1
+
+    private fun chainDispatch(path: String) {
+        lastRoute = if (path == WearableHelper.StartActivityPath) {
+            0
+        } else if (path.startsWith(WearableHelper.ActionsPath)) {
+            1
+        } else if (path.startsWith(WearableHelper.UpdatePath)) {
+            2
+        } else if (path == WearableHelper.AppStatePath) {
+            3
+        } else if (path.startsWith(MediaHelper.MusicPlayersPath)) {
+            4
+        } else if (path == MediaHelper.OpenMusicPlayerPath) {
+            5
+        } else if (path == MediaHelper.PlayCommandPath) {
+            6
+        } else if (path == WearableHelper.BtDiscoverPath) {
+            7
+        } else if (path == WearableHelper.AudioStatusPath) {
+            8
+        } else if (path == WearableHelper.AudioVolumePath) {
+            9
+        } else if (path == WearableHelper.ValueStatusPath) {
+            10
+        } else if (path == WearableHelper.ValueStatusSetPath) {
+            11
+        } else if (path == WearableHelper.BrightnessModePath) {
+            12
+        } else if (path == GestureUIHelper.GestureStatusPath) {
+            13
+        } else if (path == WearableHelper.TimedActionsStatusPath) {
+            14
+        } else if (path.startsWith(WearableHelper.StatusPath)) {
+            15
+        } else if (path == WearableHelper.AppsPath) {
+            16
+        } else if (path == WearableHelper.LaunchAppPath) {
+            17
+        } else if (path == MediaHelper.MediaPlayerConnectPath) {
+            18
+        } else if (path == MediaHelper.MediaPlayerDisconnectPath) {
+            19
+        } else if (path == MediaHelper.MediaPlayerAutoLaunchPath) {
+            20
+        } else if (path == InCallUIHelper.ConnectPath) {
+            21
+        } else if (path == InCallUIHelper.DisconnectPath) {
+            22
+        } else if (path == WearableHelper.VersionPath) {
+            23
+        } else if (path == GestureUIHelper.ScrollPath) {
+            24
+        } else if (path == GestureUIHelper.DPadPath) {
+            25
+        } else if (path == GestureUIHelper.DPadClickPath) {
+            26
+        } else if (path == GestureUIHelper.KeyEventPath) {
+            27
+        } else if (path == WearableHelper.TimedActionDeletePath) {
+            28
+        } else if (path == WearableHelper.TimedActionAddPath) {
+            29
+        } else if (path == WearableHelper.TimedActionUpdatePath) {
+            30
+        } else {
+            -1
+        }
+    }
+
+    private fun createRouter(): MessagePathRouter<String> {
+        val ids = mapOf(
+            WearableHelper.StartActivityPath to 0,
+            WearableHelper.AppStatePath to 3,
+            MediaHelper.OpenMusicPlayerPath to 5,
+            MediaHelper.PlayCommandPath to 6,
+            WearableHelper.BtDiscoverPath to 7,
+            WearableHelper.AudioStatusPath to 8,
+            WearableHelper.AudioVolumePath to 9,
+            WearableHelper.ValueStatusPath to 10,
+            WearableHelper.ValueStatusSetPath to 11,
+            WearableHelper.BrightnessModePath to 12,
+            GestureUIHelper.GestureStatusPath to 13,
+            WearableHelper.TimedActionsStatusPath to 14,
+            WearableHelper.AppsPath to 16,
+            WearableHelper.LaunchAppPath to 17,
+            MediaHelper.MediaPlayerConnectPath to 18,
+            MediaHelper.MediaPlayerDisconnectPath to 19,
+            MediaHelper.MediaPlayerAutoLaunchPath to 20,
+            InCallUIHelper.ConnectPath to 21,
+            InCallUIHelper.DisconnectPath to 22,
+            WearableHelper.VersionPath to 23,
+            GestureUIHelper.ScrollPath to 24,
+            GestureUIHelper.DPadPath to 25,
+            GestureUIHelper.DPadClickPath to 26,
+            GestureUIHelper.KeyEventPath to 27,
+            WearableHelper.TimedActionDeletePath to 28,
+            WearableHelper.TimedActionAddPath to 29,
+            WearableHelper.TimedActionUpdatePath to 30
+        )
+
+        return MessagePathRouter<String>().apply {
+            ids.forEach { (path, id) ->
+                on(path) { lastRoute = id }
+            }
+
+            onPrefix(WearableHelper.ActionsPath) { lastRoute = 1 }
+            onPrefix(WearableHelper.UpdatePath) { lastRoute = 2 }
+            onPrefix(MediaHelper.MusicPlayersPath) { lastRoute = 4 }
+            onPrefix(WearableHelper.StatusPath) { lastRoute = 15 }
+        }
+    }
+
+    @Test
+    fun routerMatchesChain() = runBlocking {
+        val router = createRouter()
+
+        samplePaths.forEach { path ->
+            chainDispatch(path)
+            val expected = lastRoute
+
+            lastRoute = -1
+            router.dispatch(path, path)
+
+            assertEquals(path, expected, lastRoute)
+        }
+    }
+
+    @Test
+    fun dispatchLatency() = runBlocking {
+        val router = createRouter()
+
+        repeat(WARMUP_ITERATIONS) {
+            val path = samplePaths[it % samplePaths.size]
+            chainDispatch(path)
+            router.dispatch(path, path)
+        }
+
+        var start = System.nanoTime()
+        for (i in 0 until ITERATIONS) {
+            chainDispatch(samplePaths[i % samplePaths.size])
+        }
+        val chainNanos = System.nanoTime() - start
+
+        start = System.nanoTime()
+        for (i in 0 until ITERATIONS) {
+            val path = samplePaths[i % samplePaths.size]
+            router.dispatch(path, path)
+        }
+        val routerNanos = System.nanoTime() - start
+
+        println("if/else chain: %.1f ns/op".format(chainNanos.toDouble() / ITERATIONS))
+        println("MessagePathRouter: %.1f ns/op".format(routerNanos.toDouble() / ITERATIONS))
+    }
+}
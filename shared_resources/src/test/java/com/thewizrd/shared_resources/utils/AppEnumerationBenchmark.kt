@@ -0,0 +1,205 @@
+package com.thewizrd.shared_resources.utils
+
+import com.thewizrd.shared_resources.data.AppCatalogKeys
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.runBlocking
+import org.junit.Assert.assertEquals
+import org.junit.Test
+import java.util.concurrent.locks.LockSupport
+
+/**
+ * Measures the helpers used by the phone's WearableManager and AppIconCache to enumerate apps
+ * (AppCatalogKeys, associateFirstBy, mapConcurrently) over synthetic app lists, against the
+ * previous String.format keys and list based dedup
+ */
+class AppEnumerationBenchmark {
+    companion object {
+        private const val APP_COUNT = 1_000
+        private const val DUPLICATE_EVERY = 10
+        private const val ITERATIONS = 20
+        private const val PARALLELISM = 4
+
+        private const val ICON_SIZE = 72
+        private const val DENSITY_DPI = 320
+
+        // Simulated cost of loading a label through PackageManager (binder call)
+        private const val LABEL_LOAD_NANOS = 200_000L
+    }
+
+    private class SyntheticApp(
+        val packageName: String,
+        val activityName: String,
+        val label: String,
+        val lastUpdateTime: Long
+    )
+
+    /**
+     * Launcher activities as returned by PackageManager; some components are listed twice
+     */
+    private fun createApps(count: Int): List<SyntheticApp> {
+        val apps = ArrayList<SyntheticApp>(count + count / DUPLICATE_EVERY)
+
+        for (i in 0 until count) {
+            val app = SyntheticApp(
+                "com.example.app$i",
+                "com.example.app$i.MainActivity",
+                "App $i",
+                1_700_000_000_000L + i
+            )
+            apps.add(app)
+
+            if (i % DUPLICATE_EVERY == 0) {
+                apps.add(SyntheticApp(app.packageName, app.activityName, app.label, app.lastUpdateTime))
+            }
+        }
+
+        return apps
+    }
+
+    private fun legacyDedup(apps: List<SyntheticApp>): List<String> {
+        val keys = ArrayList<String>()
+
+        for (app in apps) {
+            val key = String.format("%s|%s", app.packageName, app.activityName)
+            if (!keys.contains(key)) {
+                keys.add(key)
+            }
+        }
+
+        return keys
+    }
+
+    private fun hashedDedup(apps: List<SyntheticApp>): List<String> {
+        return apps.associateFirstBy {
+            AppCatalogKeys.getAppKey(it.packageName, it.activityName)
+        }.keys.toList()
+    }
+
+    private fun legacyAppHash(app: SyntheticApp): Long {
+        return HashUtils.fnv1a(
+            String.format(
+                "%s|%s|%s|%d|%b|%d",
+                app.packageName, app.activityName, app.label, app.lastUpdateTime, true, ICON_SIZE
+            )
+        )
+    }
+
+    private fun appHash(app: SyntheticApp): Long {
+        return AppCatalogKeys.getAppHash(
+            app.packageName, app.activityName, app.label, app.lastUpdateTime, true, ICON_SIZE
+        )
+    }
+
+    private fun legacyIconKey(app: SyntheticApp): String {
+        val key = String.format(
+            "%s|%s|%d|%d|%d",
+            app.packageName, app.activityName, app.lastUpdateTime, DENSITY_DPI, ICON_SIZE
+        )
+        return "${app.packageName}@${HashUtils.fnv1a(key).toULong().toString(16)}"
+    }
+
+    private fun iconKey(app: SyntheticApp): String {
+        return AppCatalogKeys.getIconKey(
+            app.packageName, app.activityName, app.lastUpdateTime, DENSITY_DPI, ICON_SIZE
+        )
+    }
+
+    private fun loadLabel(app: SyntheticApp): String {
+        LockSupport.parkNanos(LABEL_LOAD_NANOS)
+        return app.label
+    }
+
+    private fun measureNanos(block: () -> Unit): Long {
+        // Warm up
+        repeat(ITERATIONS) { block() }
+
+        val start = System.nanoTime()
+        repeat(ITERATIONS) { block() }
+        return (System.nanoTime() - start) / ITERATIONS
+    }
+
+    @Test
+    fun hashedDedupMatchesLegacy() {
+        val apps = createApps(APP_COUNT)
+
+        val expected = legacyDedup(apps)
+        assertEquals(APP_COUNT, expected.size)
+        assertEquals(expected, hashedDedup(apps))
+    }
+
+    @Test
+    fun keysMatchLegacy() {
+        // Concatenated keys match the String.format keys built before
+        createApps(APP_COUNT).forEach {
+            assertEquals(legacyAppHash(it), appHash(it))
+            assertEquals(legacyIconKey(it), iconKey(it))
+        }
+    }
+
+    @Test
+    fun concurrentLoadKeepsOrder() = runBlocking(Dispatchers.IO) {
+        val apps = createApps(APP_COUNT)
+
+        assertEquals(
+            apps.map { loadLabel(it) },
+            apps.mapConcurrently(PARALLELISM) { loadLabel(it) }
+        )
+    }
+
+    @Test
+    fun dedupScaling() {
+        listOf(APP_COUNT / 4, APP_COUNT / 2, APP_COUNT).forEach { count ->
+            val apps = createApps(count)
+
+            val legacyNanos = measureNanos { legacyDedup(apps) }
+            val hashedNanos = measureNanos { hashedDedup(apps) }
+
+            println(
+                "%d apps: ArrayList.contains %.2f ms, hashed %.2f ms".format(
+                    count, legacyNanos / 1e6, hashedNanos / 1e6
+                )
+            )
+        }
+    }
+
+    @Test
+    fun keyLatency() {
+        val apps = createApps(APP_COUNT)
+
+        val legacyHashNanos = measureNanos { apps.forEach { legacyAppHash(it) } }
+        val hashNanos = measureNanos { apps.forEach { appHash(it) } }
+        val legacyIconKeyNanos = measureNanos { apps.forEach { legacyIconKey(it) } }
+        val iconKeyNanos = measureNanos { apps.forEach { iconKey(it) } }
+
+        println(
+            "%d app hashes: String.format %.2f ms, AppCatalogKeys %.2f ms".format(
+                apps.size, legacyHashNanos / 1e6, hashNanos / 1e6
+            )
+        )
+        println(
+            "%d icon keys: String.format %.2f ms, AppCatalogKeys %.2f ms".format(
+                apps.size, legacyIconKeyNanos / 1e6, iconKeyNanos / 1e6
+            )
+        )
+    }
+
+    @Test
+    fun labelLoadLatency() = runBlocking(Dispatchers.IO) {
+        val apps = createApps(APP_COUNT).distinctBy { it.packageName }
+
+        var start = System.nanoTime()
+        apps.map { loadLabel(it) }
+        val sequentialNanos = System.nanoTime() - start
+
+        start = System.nanoTime()
+        apps.mapConcurrently(PARALLELISM) { loadLabel(it) }
+        val concurrentNanos = System.nanoTime() - start
+
+        println("%d labels: sequential %.1f ms".format(apps.size, sequentialNanos / 1e6))
+        println(
+            "%d labels: %d workers %.1f ms".format(
+                apps.size, PARALLELISM, concurrentNanos / 1e6
+            )
+        )
+    }
+}
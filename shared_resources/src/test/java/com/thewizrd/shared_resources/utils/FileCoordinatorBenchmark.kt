@@ -0,0 +1,132 @@
+package com.thewizrd.shared_resources.utils
+
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.async
+import kotlinx.coroutines.awaitAll
+import kotlinx.coroutines.runBlocking
+import org.junit.After
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertTrue
+import org.junit.Before
+import org.junit.Test
+import java.io.File
+import java.util.concurrent.atomic.AtomicBoolean
+import java.util.concurrent.atomic.AtomicInteger
+
+/**
+ * Compares file access latency under contention with [FileCoordinator] against the busy-wait
+ * previously used by JSONParser and FileUtils (poll the file, sleep 100ms while it is busy)
+ */
+class FileCoordinatorBenchmark {
+    companion object {
+        private const val WORKERS = 8
+        private const val OPERATIONS_PER_WORKER = 25
+        private const val WRITE_EVERY = 5
+        private const val POLL_INTERVAL_MS = 100L
+
+        private val PAYLOAD = "x".repeat(16 * 1024)
+    }
+
+    private lateinit var file: File
+
+    @Before
+    fun setUp() {
+        file = File.createTempFile("FileCoordinatorBenchmark", ".json")
+    }
+
+    @After
+    fun tearDown() {
+        file.delete()
+    }
+
+    private class Latencies {
+        private val nanos = ArrayList<Long>()
+
+        @Synchronized
+        fun add(value: Long) {
+            nanos.add(value)
+        }
+
+        @Synchronized
+        fun describe(): String {
+            nanos.sort()
+            val avg = nanos.average() / 1e6
+            val p99 = nanos[(nanos.size * 99 / 100).coerceAtMost(nanos.size - 1)] / 1e6
+            return "avg %.2f ms, p99 %.2f ms".format(avg, p99)
+        }
+    }
+
+    private fun readFile() = file.readText()
+
+    private fun writeFile(data: String) = file.writeText(data)
+
+    /**
+     * Mixed reads and writes from [WORKERS] concurrent workers
+     */
+    private fun runContended(access: (isWrite: Boolean, data: String) -> Unit): Latencies {
+        val latencies = Latencies()
+
+        runBlocking(Dispatchers.IO) {
+            (0 until WORKERS).map { worker ->
+                async {
+                    repeat(OPERATIONS_PER_WORKER) { i ->
+                        val start = System.nanoTime()
+                        access(i % WRITE_EVERY == 0, "$worker:$i:$PAYLOAD")
+                        latencies.add(System.nanoTime() - start)
+                    }
+                }
+            }.awaitAll()
+        }
+
+        return latencies
+    }
+
+    @Test
+    fun contendedAccessLatency() {
+        writeFile(PAYLOAD)
+
+        // Legacy: wait while another access is in progress, polling every 100ms
+        val busy = AtomicBoolean(false)
+        val legacy = runContended { isWrite, data ->
+            while (!busy.compareAndSet(false, true)) {
+                Thread.sleep(POLL_INTERVAL_MS)
+            }
+            try {
+                if (isWrite) writeFile(data) else readFile()
+            } finally {
+                busy.set(false)
+            }
+        }
+
+        val coordinated = runContended { isWrite, data ->
+            if (isWrite) {
+                FileCoordinator.write(file) { writeFile(data) }
+            } else {
+                FileCoordinator.read(file) { readFile() }
+            }
+        }
+
+        println("busy-wait: ${legacy.describe()}")
+        println("coordinated: ${coordinated.describe()}")
+    }
+
+    @Test
+    fun readsRunConcurrently() = runBlocking(Dispatchers.IO) {
+        val activeReaders = AtomicInteger(0)
+        val maxReaders = AtomicInteger(0)
+
+        (0 until WORKERS).map {
+            async {
+                FileCoordinator.read(file) {
+                    val readers = activeReaders.incrementAndGet()
+                    maxReaders.accumulateAndGet(readers) { a, b -> maxOf(a, b) }
+                    Thread.sleep(POLL_INTERVAL_MS / 2)
+                    activeReaders.decrementAndGet()
+                }
+            }
+        }.awaitAll()
+
+        assertTrue(maxReaders.get() > 1)
+        assertEquals(0, activeReaders.get())
+    }
+}
@@ -19,6 +19,17 @@ class AppItemViewModel : ViewModel() {
         }
     var appType: AppType = AppType.APP
 
+    fun copy(bitmapIcon: Bitmap? = this.bitmapIcon): AppItemViewModel {
+        val item = this
+        return AppItemViewModel().apply {
+            this.bitmapIcon = bitmapIcon
+            appLabel = item.appLabel
+            packageName = item.packageName
+            activityName = item.activityName
+            appType = item.appType
+        }
+    }
+
     override fun equals(other: Any?): Boolean {
         if (this === other) return true
         if (javaClass != other?.javaClass) return false
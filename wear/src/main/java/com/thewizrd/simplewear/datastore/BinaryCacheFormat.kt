@@ -0,0 +1,74 @@
+package com.thewizrd.simplewear.datastore
+
+import android.content.Context
+import android.util.Log
+import androidx.datastore.core.DataMigration
+import androidx.datastore.dataStoreFile
+import com.thewizrd.shared_resources.utils.JSONParser
+import com.thewizrd.shared_resources.utils.Logger
+import java.io.DataInputStream
+import java.io.DataOutputStream
+import java.io.File
+import java.lang.reflect.Type
+
+/**
+ * Header of the binary DataStore caches: [MAGIC][version]
+ *
+ * Each cache versions its own layout; caches written by a newer version are read as empty
+ */
+internal object BinaryCacheFormat {
+    private const val MAGIC: Byte = 0xAC.toByte()
+
+    fun writeHeader(out: DataOutputStream, version: Int) {
+        out.writeByte(MAGIC.toInt())
+        out.writeByte(version)
+    }
+
+    /**
+     * @return the version of the cache or null if the header is invalid or the version is not
+     * supported
+     */
+    fun readHeader(input: DataInputStream, maxVersion: Int): Int? {
+        if (input.readByte() != MAGIC) {
+            Logger.writeLine(Log.WARN, "BinaryCacheFormat: invalid header")
+            return null
+        }
+
+        val version = input.readUnsignedByte()
+        if (version > maxVersion) {
+            Logger.writeLine(Log.WARN, "BinaryCacheFormat: unsupported version $version")
+            return null
+        }
+
+        return version
+    }
+}
+
+/**
+ * Migrates a cache from its previous JSON DataStore file; the JSON file is deleted afterwards
+ */
+internal class JsonCacheMigration<T>(
+    context: Context,
+    jsonFileName: String,
+    private val type: Type
+) : DataMigration<T> {
+    private val jsonFile: File = context.dataStoreFile(jsonFileName)
+
+    override suspend fun shouldMigrate(currentData: T): Boolean {
+        return jsonFile.exists()
+    }
+
+    override suspend fun migrate(currentData: T): T {
+        return runCatching {
+            jsonFile.inputStream().use {
+                JSONParser.deserializer<T>(it, type)
+            }
+        }.onFailure {
+            Logger.writeLine(Log.ERROR, it, "JsonCacheMigration: error reading ${jsonFile.name}")
+        }.getOrNull() ?: currentData
+    }
+
+    override suspend fun cleanUp() {
+        jsonFile.delete()
+    }
+}
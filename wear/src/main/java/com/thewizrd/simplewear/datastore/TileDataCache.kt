@@ -0,0 +1,74 @@
+package com.thewizrd.simplewear.datastore
+
+import androidx.datastore.core.DataStore
+import com.thewizrd.shared_resources.appLib
+import com.thewizrd.shared_resources.data.AppItemData
+import com.thewizrd.shared_resources.utils.Logger
+import com.thewizrd.simplewear.datastore.dashboard.DashboardDataCache
+import com.thewizrd.simplewear.datastore.dashboard.dashboardDataStore
+import com.thewizrd.simplewear.datastore.media.MediaDataCache
+import com.thewizrd.simplewear.datastore.media.appInfoDataStore
+import com.thewizrd.simplewear.datastore.media.artworkDataStore
+import com.thewizrd.simplewear.datastore.media.mediaDataStore
+import kotlinx.coroutines.delay
+import kotlinx.coroutines.flow.Flow
+import kotlinx.coroutines.flow.SharingStarted
+import kotlinx.coroutines.flow.filterNotNull
+import kotlinx.coroutines.flow.first
+import kotlinx.coroutines.flow.retryWhen
+import kotlinx.coroutines.flow.stateIn
+
+/**
+ * Process-wide snapshots of the caches rendered by the tiles and complications
+ *
+ * Each cache is read from disk by the first subscriber and is then kept in memory for the life
+ * of the process. Writes still go through the DataStores (DataStore.updateData); the snapshots
+ * follow the stores, so a write is applied to memory once it is persisted. Tile services
+ * come and go, but their state can be rebuilt from the snapshots without reading or decoding
+ * the files again
+ */
+object TileDataCache {
+    private const val TAG = "TileDataCache"
+    private const val RETRY_DELAY_MS = 1000L
+
+    private val mediaSnapshot by lazy {
+        appLib.context.mediaDataStore.snapshot(MediaDataCache())
+    }
+    private val artworkSnapshot by lazy {
+        appLib.context.artworkDataStore.snapshot(byteArrayOf())
+    }
+    private val appInfoSnapshot by lazy {
+        appLib.context.appInfoDataStore.snapshot(AppItemData(null, null, null, null))
+    }
+    private val dashboardSnapshot by lazy {
+        appLib.context.dashboardDataStore.snapshot(DashboardDataCache())
+    }
+
+    val mediaData: Flow<MediaDataCache>
+        get() = mediaSnapshot.filterNotNull()
+
+    val artwork: Flow<ByteArray>
+        get() = artworkSnapshot.filterNotNull()
+
+    val appInfo: Flow<AppItemData>
+        get() = appInfoSnapshot.filterNotNull()
+
+    val dashboardData: Flow<DashboardDataCache>
+        get() = dashboardSnapshot.filterNotNull()
+
+    suspend fun getDashboardData(): DashboardDataCache = dashboardData.first()
+
+    /**
+     * Falls back to [defaultValue] if the store can't be read, so readers don't wait on it;
+     * the store is subscribed to again (with a growing delay), so later writes still reach
+     * the snapshot
+     */
+    private fun <T> DataStore<T>.snapshot(defaultValue: T) = data
+        .retryWhen { cause, attempt ->
+            Logger.error(TAG, cause, "error reading cache")
+            if (attempt == 0L) emit(defaultValue)
+            delay(RETRY_DELAY_MS shl attempt.coerceAtMost(6).toInt())
+            true
+        }
+        .stateIn(appLib.appScope, SharingStarted.Lazily, null)
+}
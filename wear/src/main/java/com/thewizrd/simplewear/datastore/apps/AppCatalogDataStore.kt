@@ -0,0 +1,69 @@
+package com.thewizrd.simplewear.datastore.apps
+
+import android.content.Context
+import android.util.Log
+import androidx.datastore.core.DataStore
+import androidx.datastore.core.Serializer
+import androidx.datastore.dataStore
+import com.thewizrd.shared_resources.data.AppCatalogItem
+import com.thewizrd.shared_resources.data.AppItemSerializer
+import com.thewizrd.shared_resources.data.AppItemSerializer.writeTo
+import com.thewizrd.shared_resources.utils.Logger
+import com.thewizrd.simplewear.datastore.BinaryCacheFormat
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.withContext
+import java.io.DataInputStream
+import java.io.DataOutputStream
+import java.io.InputStream
+import java.io.OutputStream
+
+/**
+ * Layout: [header (see BinaryCacheFormat)][count (int)]{[hash (long)][app item record (see AppItemSerializer)]}
+ *
+ * Icons are stored as raw bytes
+ */
+private object AppCatalogCacheSerializer : Serializer<List<AppCatalogItem>> {
+    private const val VERSION = 1
+
+    override val defaultValue: List<AppCatalogItem>
+        get() = emptyList()
+
+    override suspend fun readFrom(input: InputStream): List<AppCatalogItem> {
+        return runCatching {
+            val reader = DataInputStream(input.buffered())
+            BinaryCacheFormat.readHeader(reader, VERSION) ?: return defaultValue
+
+            val count = reader.readInt()
+            val items = ArrayList<AppCatalogItem>(count)
+
+            repeat(count) {
+                val hash = reader.readLong()
+                items.add(AppCatalogItem(AppItemSerializer.readItem(reader), hash))
+            }
+
+            items
+        }.onFailure {
+            Logger.writeLine(Log.ERROR, it, "AppCatalogCacheSerializer: error reading cache")
+        }.getOrDefault(defaultValue)
+    }
+
+    override suspend fun writeTo(t: List<AppCatalogItem>, output: OutputStream) {
+        withContext(Dispatchers.IO) {
+            val out = DataOutputStream(output.buffered())
+            BinaryCacheFormat.writeHeader(out, VERSION)
+
+            out.writeInt(t.size)
+            t.forEach {
+                out.writeLong(it.hash)
+                it.item.writeTo(out)
+            }
+
+            out.flush()
+        }
+    }
+}
+
+val Context.appCatalogDataStore: DataStore<List<AppCatalogItem>> by dataStore(
+    fileName = "app_catalog_cache.bin",
+    serializer = AppCatalogCacheSerializer
+)
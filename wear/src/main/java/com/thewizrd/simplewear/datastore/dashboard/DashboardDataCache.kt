@@ -3,10 +3,12 @@ package com.thewizrd.simplewear.datastore.dashboard
 import com.thewizrd.shared_resources.actions.Action
 import com.thewizrd.shared_resources.actions.Actions
 import com.thewizrd.shared_resources.actions.BatteryStatus
+import com.thewizrd.shared_resources.actions.DashboardSyncState
 
 data class DashboardDataCache(
     val batteryStatus: BatteryStatus? = null,
     val actions: Map<Actions, Action?> = emptyMap(),
+    val syncState: DashboardSyncState? = null,
 ) {
     override fun equals(other: Any?): Boolean {
         if (this === other) return true
@@ -14,6 +16,7 @@ data class DashboardDataCache(
 
         if (batteryStatus != other.batteryStatus) return false
         if (actions != other.actions) return false
+        if (syncState != other.syncState) return false
 
         return true
     }
@@ -21,6 +24,7 @@ data class DashboardDataCache(
     override fun hashCode(): Int {
         var result = batteryStatus?.hashCode() ?: 0
         result = 31 * result + actions.hashCode()
+        result = 31 * result + (syncState?.hashCode() ?: 0)
         return result
     }
 }
@@ -1,32 +1,112 @@
 package com.thewizrd.simplewear.datastore.dashboard
 
 import android.content.Context
+import android.util.Log
 import androidx.datastore.core.DataStore
 import androidx.datastore.core.Serializer
 import androidx.datastore.dataStore
-import com.thewizrd.shared_resources.utils.JSONParser
-import com.thewizrd.shared_resources.utils.stringToBytes
+import com.thewizrd.shared_resources.actions.Action
+import com.thewizrd.shared_resources.actions.ActionSerializer
+import com.thewizrd.shared_resources.actions.Actions
+import com.thewizrd.shared_resources.actions.BatteryStatus
+import com.thewizrd.shared_resources.actions.DashboardSyncState
+import com.thewizrd.shared_resources.utils.Logger
+import com.thewizrd.simplewear.datastore.BinaryCacheFormat
+import com.thewizrd.simplewear.datastore.JsonCacheMigration
 import kotlinx.coroutines.Dispatchers
 import kotlinx.coroutines.withContext
+import java.io.DataInputStream
+import java.io.DataOutputStream
 import java.io.InputStream
 import java.io.OutputStream
 
+/**
+ * Layout: [header (see BinaryCacheFormat)][flags][battery level][is charging]
+ * [sync epoch (long)][sync version (long)][count (short)] followed by an entry per action:
+ * [action type][has action][action record (see ActionSerializer)]
+ */
 private object DashboardDataCacheSerializer : Serializer<DashboardDataCache> {
+    private const val VERSION = 1
+
+    private const val FLAG_HAS_BATTERY = 0x1
+    private const val FLAG_HAS_SYNC_STATE = 0x2
+
     override val defaultValue: DashboardDataCache
         get() = DashboardDataCache()
 
     override suspend fun readFrom(input: InputStream): DashboardDataCache {
-        return JSONParser.deserializer(input, DashboardDataCache::class.java) ?: defaultValue
+        return runCatching {
+            val reader = DataInputStream(input.buffered())
+            BinaryCacheFormat.readHeader(reader, VERSION) ?: return defaultValue
+
+            val flags = reader.readUnsignedByte()
+            val batteryLevel = reader.readUnsignedByte()
+            val isCharging = reader.readBoolean()
+            val epoch = reader.readLong()
+            val syncVersion = reader.readLong()
+
+            val count = reader.readUnsignedShort()
+            val actions = LinkedHashMap<Actions, Action?>(count)
+            repeat(count) {
+                val actionType = Actions.valueOf(reader.readUnsignedByte())
+                actions[actionType] = if (reader.readBoolean()) {
+                    ActionSerializer.readAction(reader)
+                } else {
+                    null
+                }
+            }
+
+            DashboardDataCache(
+                batteryStatus = if ((flags and FLAG_HAS_BATTERY) != 0) {
+                    BatteryStatus(batteryLevel, isCharging)
+                } else {
+                    null
+                },
+                actions = actions,
+                syncState = if ((flags and FLAG_HAS_SYNC_STATE) != 0) {
+                    DashboardSyncState(epoch = epoch, version = syncVersion)
+                } else {
+                    null
+                }
+            )
+        }.onFailure {
+            Logger.writeLine(Log.ERROR, it, "DashboardDataCacheSerializer: error reading cache")
+        }.getOrDefault(defaultValue)
     }
 
     override suspend fun writeTo(t: DashboardDataCache, output: OutputStream) {
         withContext(Dispatchers.IO) {
-            output.write(JSONParser.serializer(t, DashboardDataCache::class.java).stringToBytes())
+            val out = DataOutputStream(output.buffered())
+            BinaryCacheFormat.writeHeader(out, VERSION)
+
+            var flags = 0
+            if (t.batteryStatus != null) flags = flags or FLAG_HAS_BATTERY
+            if (t.syncState != null) flags = flags or FLAG_HAS_SYNC_STATE
+            out.writeByte(flags)
+
+            out.writeByte(t.batteryStatus?.batteryLevel ?: 0)
+            out.writeBoolean(t.batteryStatus?.isCharging ?: false)
+            out.writeLong(t.syncState?.epoch ?: 0)
+            out.writeLong(t.syncState?.version ?: 0)
+
+            out.writeShort(t.actions.size)
+            t.actions.forEach { (actionType, action) ->
+                out.writeByte(actionType.value)
+                out.writeBoolean(action != null)
+                action?.let { ActionSerializer.writeAction(out, it) }
+            }
+
+            out.flush()
         }
     }
 }
 
 val Context.dashboardDataStore: DataStore<DashboardDataCache> by dataStore(
-    fileName = "dashboard_cache.json",
-    serializer = DashboardDataCacheSerializer
-)
\ No newline at end of file
+    fileName = "dashboard_cache.bin",
+    serializer = DashboardDataCacheSerializer,
+    produceMigrations = { context ->
+        listOf(
+            JsonCacheMigration(context, "dashboard_cache.json", DashboardDataCache::class.java)
+        )
+    }
+)
@@ -1,28 +1,129 @@
 package com.thewizrd.simplewear.datastore.media
 
 import android.content.Context
+import android.util.Log
 import androidx.datastore.core.DataStore
 import androidx.datastore.core.Serializer
 import androidx.datastore.dataStore
+import com.thewizrd.shared_resources.actions.AudioStreamState
+import com.thewizrd.shared_resources.actions.AudioStreamType
 import com.thewizrd.shared_resources.data.AppItemData
-import com.thewizrd.shared_resources.utils.JSONParser
-import com.thewizrd.shared_resources.utils.stringToBytes
+import com.thewizrd.shared_resources.data.AppItemSerializer
+import com.thewizrd.shared_resources.data.AppItemSerializer.writeTo
+import com.thewizrd.shared_resources.media.MediaMetaData
+import com.thewizrd.shared_resources.media.MediaPlayerState
+import com.thewizrd.shared_resources.media.PlaybackState
+import com.thewizrd.shared_resources.media.PositionState
+import com.thewizrd.shared_resources.utils.Logger
+import com.thewizrd.shared_resources.utils.readString
+import com.thewizrd.shared_resources.utils.writeString
+import com.thewizrd.simplewear.datastore.BinaryCacheFormat
+import com.thewizrd.simplewear.datastore.JsonCacheMigration
 import kotlinx.coroutines.Dispatchers
 import kotlinx.coroutines.withContext
+import java.io.DataInputStream
+import java.io.DataOutputStream
 import java.io.InputStream
 import java.io.OutputStream
 
+/**
+ * Layout: [header (see BinaryCacheFormat)][flags]
+ * [player state: playback state, (metadata: title, artist, duration, position, speed, time)]
+ * [audio stream state: current, min, max, stream type]; states are only written if present
+ */
 private object MediaDataCacheStateSerializer : Serializer<MediaDataCache> {
+    private const val VERSION = 1
+
+    private const val FLAG_HAS_PLAYER_STATE = 0x1
+    private const val FLAG_HAS_METADATA = 0x2
+    private const val FLAG_HAS_AUDIO_STREAM_STATE = 0x4
+
     override val defaultValue: MediaDataCache
         get() = MediaDataCache()
 
     override suspend fun readFrom(input: InputStream): MediaDataCache {
-        return JSONParser.deserializer(input, MediaDataCache::class.java) ?: defaultValue
+        return runCatching {
+            val reader = DataInputStream(input.buffered())
+            BinaryCacheFormat.readHeader(reader, VERSION) ?: return defaultValue
+
+            val flags = reader.readUnsignedByte()
+
+            val playerState = if ((flags and FLAG_HAS_PLAYER_STATE) != 0) {
+                val playbackState = PlaybackState.entries[reader.readUnsignedByte()]
+
+                val metaData = if ((flags and FLAG_HAS_METADATA) != 0) {
+                    MediaMetaData(
+                        title = reader.readString(),
+                        artist = reader.readString(),
+                        positionState = PositionState(
+                            durationMs = reader.readLong(),
+                            currentPositionMs = reader.readLong(),
+                            playbackSpeed = reader.readFloat(),
+                            currentTimeMs = reader.readLong()
+                        )
+                    )
+                } else {
+                    null
+                }
+
+                MediaPlayerState(playbackState, metaData)
+            } else {
+                null
+            }
+
+            val audioStreamState = if ((flags and FLAG_HAS_AUDIO_STREAM_STATE) != 0) {
+                AudioStreamState(
+                    currentVolume = reader.readInt(),
+                    minVolume = reader.readInt(),
+                    maxVolume = reader.readInt(),
+                    streamType = AudioStreamType.valueOf(reader.readUnsignedByte())
+                )
+            } else {
+                null
+            }
+
+            MediaDataCache(playerState, audioStreamState)
+        }.onFailure {
+            Logger.writeLine(Log.ERROR, it, "MediaDataCacheStateSerializer: error reading cache")
+        }.getOrDefault(defaultValue)
     }
 
     override suspend fun writeTo(t: MediaDataCache, output: OutputStream) {
         withContext(Dispatchers.IO) {
-            output.write(JSONParser.serializer(t, MediaDataCache::class.java).stringToBytes())
+            val out = DataOutputStream(output.buffered())
+            BinaryCacheFormat.writeHeader(out, VERSION)
+
+            val playerState = t.mediaPlayerState
+            val metaData = playerState?.mediaMetaData
+            val audioStreamState = t.audioStreamState
+
+            var flags = 0
+            if (playerState != null) flags = flags or FLAG_HAS_PLAYER_STATE
+            if (metaData != null) flags = flags or FLAG_HAS_METADATA
+            if (audioStreamState != null) flags = flags or FLAG_HAS_AUDIO_STREAM_STATE
+            out.writeByte(flags)
+
+            if (playerState != null) {
+                out.writeByte(playerState.playbackState.ordinal)
+
+                if (metaData != null) {
+                    out.writeString(metaData.title)
+                    out.writeString(metaData.artist)
+                    out.writeLong(metaData.positionState.durationMs)
+                    out.writeLong(metaData.positionState.currentPositionMs)
+                    out.writeFloat(metaData.positionState.playbackSpeed)
+                    out.writeLong(metaData.positionState.currentTimeMs)
+                }
+            }
+
+            if (audioStreamState != null) {
+                out.writeInt(audioStreamState.currentVolume)
+                out.writeInt(audioStreamState.minVolume)
+                out.writeInt(audioStreamState.maxVolume)
+                out.writeByte(audioStreamState.streamType.value)
+            }
+
+            out.flush()
         }
     }
 }
@@ -42,24 +143,44 @@ private object ArtworkCacheSerializer : Serializer<ByteArray> {
     }
 }
 
+/**
+ * Layout: [header (see BinaryCacheFormat)][app item record (see AppItemSerializer)]
+ *
+ * The icon is stored as raw bytes
+ */
 private object AppItemCacheSerializer : Serializer<AppItemData> {
+    private const val VERSION = 1
+
     override val defaultValue: AppItemData
         get() = AppItemData(null, null, null, null)
 
     override suspend fun readFrom(input: InputStream): AppItemData {
-        return JSONParser.deserializer(input, AppItemData::class.java) ?: defaultValue
+        return runCatching {
+            val reader = DataInputStream(input.buffered())
+            BinaryCacheFormat.readHeader(reader, VERSION) ?: return defaultValue
+
+            AppItemSerializer.readItem(reader)
+        }.onFailure {
+            Logger.writeLine(Log.ERROR, it, "AppItemCacheSerializer: error reading cache")
+        }.getOrDefault(defaultValue)
     }
 
     override suspend fun writeTo(t: AppItemData, output: OutputStream) {
         withContext(Dispatchers.IO) {
-            output.write(JSONParser.serializer(t, AppItemData::class.java).stringToBytes())
+            val out = DataOutputStream(output.buffered())
+            BinaryCacheFormat.writeHeader(out, VERSION)
+            t.writeTo(out)
+            out.flush()
         }
     }
 }
 
 val Context.mediaDataStore: DataStore<MediaDataCache> by dataStore(
-    fileName = "media_cache.json",
-    serializer = MediaDataCacheStateSerializer
+    fileName = "media_cache.bin",
+    serializer = MediaDataCacheStateSerializer,
+    produceMigrations = { context ->
+        listOf(JsonCacheMigration(context, "media_cache.json", MediaDataCache::class.java))
+    }
 )
 
 val Context.artworkDataStore: DataStore<ByteArray> by dataStore(
@@ -68,6 +189,9 @@ val Context.artworkDataStore: DataStore<ByteArray> by dataStore(
 )
 
 val Context.appInfoDataStore: DataStore<AppItemData> by dataStore(
-    fileName = "app_info_cache.json",
-    serializer = AppItemCacheSerializer
-)
\ No newline at end of file
+    fileName = "app_info_cache.bin",
+    serializer = AppItemCacheSerializer,
+    produceMigrations = { context ->
+        listOf(JsonCacheMigration(context, "app_info_cache.json", AppItemData::class.java))
+    }
+)
@@ -0,0 +1,143 @@
+package com.thewizrd.simplewear.helpers
+
+import android.graphics.Bitmap
+import android.util.LruCache
+import com.thewizrd.shared_resources.data.AppIconSerializer
+import com.thewizrd.shared_resources.data.AppItemData
+import com.thewizrd.shared_resources.helpers.WearableHelper
+import com.thewizrd.shared_resources.utils.FramedStreamReader
+import com.thewizrd.simplewear.controls.AppItemViewModel
+import kotlinx.coroutines.CoroutineScope
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.Job
+import kotlinx.coroutines.delay
+import kotlinx.coroutines.flow.buffer
+import kotlinx.coroutines.flow.flowOn
+import kotlinx.coroutines.flow.mapNotNull
+import kotlinx.coroutines.launch
+import java.io.InputStream
+
+/**
+ * Fetches app icons from the phone as list entries are shown
+ *
+ * Requests for the visible entries (and the next page, which is prefetched) are batched;
+ * icons are kept in memory across screens, so an entry is only requested once
+ *
+ * @param tag identifies the list; icons are received on [channelPath]
+ * @param sendRequest sends the request payload to the phone on the given path
+ */
+class AppIconLoader(
+    private val scope: CoroutineScope,
+    tag: String,
+    private val sendRequest: suspend (path: String, data: ByteArray) -> Boolean
+) {
+    companion object {
+        private const val BATCH_DELAY_MS = 100L
+        private const val MAX_MEMORY_BYTES = 2 * 1024 * 1024 // 2MB
+
+        private val iconCache = object : LruCache<String, Bitmap>(MAX_MEMORY_BYTES) {
+            override fun sizeOf(key: String, value: Bitmap): Int = value.byteCount
+        }
+
+        /**
+         * @param key app item key (see [AppItemData.key])
+         */
+        fun getCachedIcon(key: String): Bitmap? = iconCache.get(key)
+    }
+
+    val channelPath = "${WearableHelper.AppIconsPath}/$tag"
+
+    private val lock = Any()
+    private val requestedKeys = HashSet<String>()
+    private val pendingItems = LinkedHashMap<String, AppItemData>()
+    private var batchJob: Job? = null
+
+    /**
+     * Requests the icons of the entries which don't have one yet
+     */
+    fun requestIcons(items: Collection<AppItemViewModel>) {
+        synchronized(lock) {
+            items.forEach {
+                if (it.bitmapIcon != null) return@forEach
+
+                val item = AppItemData(
+                    label = null,
+                    packageName = it.packageName ?: return@forEach,
+                    activityName = it.activityName ?: return@forEach,
+                    iconBitmap = null
+                )
+
+                if (requestedKeys.add(item.key)) {
+                    pendingItems[item.key] = item
+                }
+            }
+
+            if (pendingItems.isNotEmpty() && batchJob?.isActive != true) {
+                batchJob = scope.launch {
+                    // Entries requested while a batch is sent go out with the next one
+                    do {
+                        // Wait for the visible range to settle
+                        delay(BATCH_DELAY_MS)
+                    } while (sendPendingRequests())
+                }
+            }
+        }
+    }
+
+    /**
+     * Reads the icons received on [channelPath]
+     *
+     * @param onIconLoaded called for every icon as it is decoded
+     */
+    suspend fun receiveIcons(
+        input: InputStream,
+        onIconLoaded: suspend (key: String, icon: Bitmap) -> Unit
+    ) {
+        AppIconSerializer.deserialize(FramedStreamReader(input))
+            .flowOn(Dispatchers.IO)
+            .mapNotNull { item ->
+                IconDecoder.decode(item.iconBitmap)?.let { item.key to it }
+            }
+            .buffer()
+            .collect { (key, icon) ->
+                iconCache.put(key, icon)
+                onIconLoaded(key, icon)
+            }
+    }
+
+    /**
+     * Allows icons which were not received to be requested again
+     */
+    fun reset() {
+        synchronized(lock) {
+            requestedKeys.removeAll { iconCache.get(it) == null }
+        }
+    }
+
+    /**
+     * @return false if there was nothing to send; the batch job ends and a new one is launched
+     * on the next request
+     */
+    private suspend fun sendPendingRequests(): Boolean {
+        val items = synchronized(lock) {
+            if (pendingItems.isEmpty()) {
+                batchJob = null
+                return false
+            }
+
+            pendingItems.values.toList().also { pendingItems.clear() }
+        }
+
+        items.chunked(AppIconSerializer.MAX_REQUEST_SIZE).forEach { batch ->
+            val sent = sendRequest(channelPath, AppIconSerializer.createRequestPayload(batch))
+
+            if (!sent) {
+                synchronized(lock) {
+                    batch.forEach { requestedKeys.remove(it.key) }
+                }
+            }
+        }
+
+        return true
+    }
+}
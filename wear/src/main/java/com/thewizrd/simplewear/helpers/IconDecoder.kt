@@ -0,0 +1,55 @@
+package com.thewizrd.simplewear.helpers
+
+import android.graphics.Bitmap
+import android.graphics.BitmapFactory
+import android.util.Log
+import android.util.LruCache
+import com.thewizrd.shared_resources.utils.HashUtils
+import com.thewizrd.shared_resources.utils.Logger
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.withContext
+
+/**
+ * Decodes list icons (app, queue, browse and action icons) into shared bitmaps
+ *
+ * Decoded bitmaps are kept in a byte-bounded LRU keyed by the content of the encoded icon, so
+ * a list refresh with the same icons doesn't allocate again and list entries keep the same
+ * bitmap instance. Decoding runs with limited parallelism to bound the memory of in-flight decodes
+ */
+object IconDecoder {
+    private const val MAX_MEMORY_BYTES = 4 * 1024 * 1024 // 4MB
+    private const val MAX_PARALLEL_DECODES = 2
+
+    private val decodeDispatcher = Dispatchers.IO.limitedParallelism(MAX_PARALLEL_DECODES)
+
+    private val memoryCache = object : LruCache<Long, Bitmap>(
+        minOf(MAX_MEMORY_BYTES.toLong(), Runtime.getRuntime().maxMemory() / 32).toInt()
+    ) {
+        override fun sizeOf(key: Long, value: Bitmap): Int = value.allocationByteCount
+    }
+
+    suspend fun decode(data: ByteArray?): Bitmap? {
+        if (data == null || data.isEmpty()) return null
+
+        val key = getContentKey(data)
+        memoryCache.get(key)?.let { return it }
+
+        return withContext(decodeDispatcher) {
+            // May have been decoded while waiting for the dispatcher
+            memoryCache.get(key) ?: runCatching {
+                BitmapFactory.decodeByteArray(data, 0, data.size)
+            }.onFailure {
+                Logger.writeLine(Log.ERROR, it, "IconDecoder: error decoding icon")
+            }.getOrNull()?.also {
+                memoryCache.put(key, it)
+            }
+        }
+    }
+
+    /**
+     * FNV-1a over the encoded icon, mixed with its length
+     */
+    private fun getContentKey(data: ByteArray): Long {
+        return HashUtils.fnv1a(data) xor (data.size.toLong() shl 32)
+    }
+}
@@ -0,0 +1,178 @@
+package com.thewizrd.simplewear.media
+
+import android.graphics.Bitmap
+import android.util.LruCache
+import com.thewizrd.shared_resources.appLib
+import com.thewizrd.shared_resources.utils.ImageUtils.toBitmap
+import com.thewizrd.shared_resources.utils.Logger
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.sync.Mutex
+import kotlinx.coroutines.sync.withLock
+import kotlinx.coroutines.withContext
+import java.io.File
+import java.util.concurrent.atomic.AtomicLong
+
+/**
+ * Process-wide artwork cache keyed by track (see MediaHelper.getTrackKey)
+ *
+ * Encoded artwork is kept in a bounded LRU on disk; decoded bitmaps in a bounded LRU in memory.
+ * Going back to a previous track can show its artwork before the phone sends it again
+ */
+object ArtworkCache {
+    private const val TAG = "ArtworkCache"
+
+    private const val CACHE_DIR = "artwork"
+    private const val MAX_DISK_BYTES = 4L * 1024 * 1024 // 4MB
+    private const val MAX_MEMORY_BYTES = 8 * 1024 * 1024 // 8MB
+
+    data class Stats(
+        val memoryHits: Long,
+        val diskHits: Long,
+        val misses: Long
+    )
+
+    private val memoryCache = object : LruCache<String, Bitmap>(
+        minOf(MAX_MEMORY_BYTES.toLong(), Runtime.getRuntime().maxMemory() / 16).toInt()
+    ) {
+        override fun sizeOf(key: String, value: Bitmap): Int = value.allocationByteCount
+    }
+
+    private val diskLock = Mutex()
+
+    // Disk entries and their sizes in access order; loaded on first use
+    private var diskEntries: LinkedHashMap<String, Long>? = null
+    private var diskSize = 0L
+
+    private val memoryHits = AtomicLong()
+    private val diskHits = AtomicLong()
+    private val misses = AtomicLong()
+
+    val stats: Stats
+        get() = Stats(memoryHits.get(), diskHits.get(), misses.get())
+
+    /**
+     * Stores the encoded artwork of the track
+     */
+    suspend fun put(trackKey: String, artworkBytes: ByteArray) {
+        if (artworkBytes.isEmpty()) return
+
+        memoryCache.remove(trackKey)
+
+        withContext(Dispatchers.IO) {
+            diskLock.withLock {
+                runCatching {
+                    val entries = getDiskEntries()
+                    File(getCacheDir(), trackKey).writeBytes(artworkBytes)
+
+                    entries.remove(trackKey)?.let { diskSize -= it }
+                    entries[trackKey] = artworkBytes.size.toLong()
+                    diskSize += artworkBytes.size
+
+                    trimDiskCache(entries)
+                }.onFailure {
+                    Logger.error(TAG, it, "error writing artwork")
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the encoded artwork of the track or null if not cached
+     */
+    suspend fun getBytes(trackKey: String): ByteArray? {
+        return withContext(Dispatchers.IO) {
+            diskLock.withLock {
+                runCatching {
+                    val entries = getDiskEntries()
+                    if (entries[trackKey] == null) return@runCatching null
+
+                    val file = File(getCacheDir(), trackKey)
+                    file.readBytes().also {
+                        // Keep the access order across restarts
+                        file.setLastModified(System.currentTimeMillis())
+                    }
+                }.onFailure {
+                    Logger.error(TAG, it, "error reading artwork")
+                    removeDiskEntry(trackKey)
+                }.getOrNull()
+            }
+        }
+    }
+
+    /**
+     * Returns the decoded artwork of the track or null if not cached
+     */
+    suspend fun getBitmap(trackKey: String): Bitmap? {
+        memoryCache.get(trackKey)?.let {
+            memoryHits.incrementAndGet()
+            return it
+        }
+
+        val bitmap = getBytes(trackKey)?.toBitmap()
+
+        if (bitmap != null) {
+            diskHits.incrementAndGet()
+            memoryCache.put(trackKey, bitmap)
+        } else {
+            misses.incrementAndGet()
+        }
+
+        Logger.debug(TAG, "getBitmap - $stats")
+
+        return bitmap
+    }
+
+    /**
+     * Decodes artwork received for the track and keeps the bitmap in memory
+     */
+    suspend fun decode(trackKey: String?, artworkBytes: ByteArray?): Bitmap? {
+        if (artworkBytes == null || artworkBytes.isEmpty()) return null
+
+        val bitmap = artworkBytes.toBitmap()
+
+        if (trackKey != null && bitmap != null) {
+            memoryCache.put(trackKey, bitmap)
+        }
+
+        return bitmap
+    }
+
+    private fun getCacheDir(): File {
+        return File(appLib.context.cacheDir, CACHE_DIR).apply { mkdirs() }
+    }
+
+    private fun getDiskEntries(): LinkedHashMap<String, Long> {
+        diskEntries?.let { return it }
+
+        val entries = LinkedHashMap<String, Long>(16, 0.75f, true)
+        diskSize = 0L
+
+        getCacheDir().listFiles()
+            ?.sortedBy { it.lastModified() }
+            ?.forEach {
+                entries[it.name] = it.length()
+                diskSize += it.length()
+            }
+
+        diskEntries = entries
+        trimDiskCache(entries)
+
+        return entries
+    }
+
+    private fun trimDiskCache(entries: LinkedHashMap<String, Long>) {
+        val iterator = entries.entries.iterator()
+
+        while (diskSize > MAX_DISK_BYTES && iterator.hasNext()) {
+            val (key, size) = iterator.next()
+            iterator.remove()
+            diskSize -= size
+            File(getCacheDir(), key).delete()
+        }
+    }
+
+    private fun removeDiskEntry(trackKey: String) {
+        diskEntries?.remove(trackKey)?.let { diskSize -= it }
+        File(getCacheDir(), trackKey).delete()
+    }
+}
@@ -18,27 +18,40 @@ import com.thewizrd.shared_resources.data.AppItemData
 import com.thewizrd.shared_resources.helpers.MediaHelper
 import com.thewizrd.shared_resources.helpers.WearConnectionStatus
 import com.thewizrd.shared_resources.helpers.WearableHelper
+import com.thewizrd.shared_resources.media.ActionItem
 import com.thewizrd.shared_resources.media.BrowseMediaItems
 import com.thewizrd.shared_resources.media.CustomControls
+import com.thewizrd.shared_resources.media.MediaDataSerializer
+import com.thewizrd.shared_resources.media.MediaItem
 import com.thewizrd.shared_resources.media.MediaPlayerState
 import com.thewizrd.shared_resources.media.PlaybackState
 import com.thewizrd.shared_resources.media.PositionState
+import com.thewizrd.shared_resources.media.QueueItem
 import com.thewizrd.shared_resources.media.QueueItems
-import com.thewizrd.shared_resources.utils.ImageUtils.toBitmap
+import com.thewizrd.shared_resources.utils.ConflatedRateLimiter
+import com.thewizrd.shared_resources.utils.FramedStream
+import com.thewizrd.shared_resources.utils.FramedStreamReader
 import com.thewizrd.shared_resources.utils.JSONParser
 import com.thewizrd.shared_resources.utils.Logger
 import com.thewizrd.shared_resources.utils.booleanToBytes
 import com.thewizrd.shared_resources.utils.bytesToString
+import com.thewizrd.shared_resources.utils.collectBatched
 import com.thewizrd.shared_resources.utils.intToBytes
 import com.thewizrd.shared_resources.utils.stringToBytes
 import com.thewizrd.simplewear.controls.AppItemViewModel
+import com.thewizrd.simplewear.helpers.IconDecoder
 import com.thewizrd.simplewear.viewmodels.WearableEvent
 import com.thewizrd.simplewear.viewmodels.WearableListenerViewModel
 import kotlinx.coroutines.Dispatchers
 import kotlinx.coroutines.Job
+import kotlinx.coroutines.flow.Flow
 import kotlinx.coroutines.flow.MutableStateFlow
 import kotlinx.coroutines.flow.SharingStarted
+import kotlinx.coroutines.flow.asFlow
+import kotlinx.coroutines.flow.buffer
+import kotlinx.coroutines.flow.flowOn
 import kotlinx.coroutines.flow.map
+import kotlinx.coroutines.flow.mapNotNull
 import kotlinx.coroutines.flow.stateIn
 import kotlinx.coroutines.flow.update
 import kotlinx.coroutines.launch
@@ -111,6 +124,13 @@ data class MediaPagerState(
 class MediaPlayerViewModel(app: Application) : WearableListenerViewModel(app) {
     private val viewModelState = MutableStateFlow(MediaPlayerUiState(isLoading = true))
 
+    private var currentTrackKey: String? = null
+
+    // Slider and rotary input; only the latest volume is sent, at a fixed rate
+    private val volumeUpdates = ConflatedRateLimiter<Int>(viewModelScope) { value ->
+        requestMediaAction(MediaHelper.MediaSetVolumePath, value.intToBytes())
+    }
+
     val uiState = viewModelState.stateIn(
         viewModelScope,
         SharingStarted.Eagerly,
@@ -179,7 +199,11 @@ class MediaPlayerViewModel(app: Application) : WearableListenerViewModel(app) {
                                     sendMessage(
                                         nodeID,
                                         MediaHelper.MediaPlayerConnectPath,
-                                        if (state.isAutoLaunch) state.isAutoLaunch.booleanToBytes() else state.mediaPlayerDetails.packageName?.stringToBytes()
+                                        MediaHelper.createMediaPlayerConnectPayload(
+                                            nodeID,
+                                            if (state.isAutoLaunch) state.isAutoLaunch.booleanToBytes() else state.mediaPlayerDetails.packageName?.stringToBytes(),
+                                            MediaHelper.getMediaArtworkSpec(appContext)
+                                        )
                                     )
                                     sendMessage(nodeID, event.eventType, null)
                                 }
@@ -200,7 +224,11 @@ class MediaPlayerViewModel(app: Application) : WearableListenerViewModel(app) {
                                     sendMessage(
                                         nodeID,
                                         MediaHelper.MediaPlayerConnectPath,
-                                        if (state.isAutoLaunch) state.isAutoLaunch.booleanToBytes() else state.mediaPlayerDetails.packageName?.stringToBytes()
+                                        MediaHelper.createMediaPlayerConnectPayload(
+                                            nodeID,
+                                            if (state.isAutoLaunch) state.isAutoLaunch.booleanToBytes() else state.mediaPlayerDetails.packageName?.stringToBytes(),
+                                            MediaHelper.getMediaArtworkSpec(appContext)
+                                        )
                                     )
                                     sendMessage(
                                         nodeID,
@@ -213,60 +241,7 @@ class MediaPlayerViewModel(app: Application) : WearableListenerViewModel(app) {
                     }
 
                     ACTION_CHANGED -> {
-                        val jsonData = event.data.getString(EXTRA_ACTIONDATA)
-                        requestAction(jsonData)
-                    }
-                }
-            }
-        }
-
-        viewModelScope.launch {
-            channelEventsFlow.collect { event ->
-                when (event.eventType) {
-                    MediaHelper.MediaActionsPath -> {
-                        val jsonData = event.data.getString(EXTRA_ACTIONDATA)
-
-                        viewModelScope.launch {
-                            val customControls = jsonData?.let {
-                                JSONParser.deserializer(it, CustomControls::class.java)
-                            }
-
-                            updateCustomControls(customControls)
-                        }
-                    }
-
-                    MediaHelper.MediaBrowserItemsPath -> {
-                        val jsonData = event.data.getString(EXTRA_ACTIONDATA)
-
-                        viewModelScope.launch {
-                            val browseMediaItems = jsonData?.let {
-                                JSONParser.deserializer(it, BrowseMediaItems::class.java)
-                            }
-
-                            updateBrowserItems(browseMediaItems)
-                        }
-                    }
-//                    MediaHelper.MediaBrowserItemsExtraSuggestedPath -> {
-//                        val jsonData = event.data.getString(EXTRA_ACTIONDATA)
-//
-//                        viewModelScope.launch {
-//                            val browseMediaItems = jsonData?.let {
-//                                JSONParser.deserializer(it, BrowseMediaItems::class.java)
-//                            }
-//
-//                            updateBrowserItems(browseMediaItems)
-//                        }
-//                    }
-                    MediaHelper.MediaQueueItemsPath -> {
-                        val jsonData = event.data.getString(EXTRA_ACTIONDATA)
-
-                        viewModelScope.launch {
-                            val queueItems = jsonData?.let {
-                                JSONParser.deserializer(it, QueueItems::class.java)
-                            }
-
-                            updateQueueItems(queueItems)
-                        }
+                        requestAction(event.action)
                     }
                 }
             }
@@ -334,10 +309,11 @@ class MediaPlayerViewModel(app: Application) : WearableListenerViewModel(app) {
             }
 
             MediaHelper.MediaPlayerArtPath -> {
-                val artworkBytes = messageEvent.data
+                val (trackKey, artworkBytes) =
+                    MediaHelper.parseMediaPlayerArtPayload(messageEvent.data)
 
                 viewModelScope.launch {
-                    updatePlayerArtwork(artworkBytes)
+                    updatePlayerArtwork(trackKey, artworkBytes)
                 }
             }
 
@@ -353,7 +329,7 @@ class MediaPlayerViewModel(app: Application) : WearableListenerViewModel(app) {
                                 appLabel = appInfo?.label
                                 packageName = appInfo?.packageName
                                 activityName = appInfo?.activityName
-                                bitmapIcon = appInfo?.iconBitmap?.toBitmap()
+                                bitmapIcon = IconDecoder.decode(appInfo?.iconBitmap)
                             }
                         )
                     }
@@ -381,38 +357,70 @@ class MediaPlayerViewModel(app: Application) : WearableListenerViewModel(app) {
                 runCatching {
                     val stream = Wearable.getChannelClient(appContext)
                         .getInputStream(channel).await()
-                    stream.bufferedReader().use { reader ->
-                        val line = reader.readLine()
+                    stream.buffered().use { input ->
+                        if (FramedStream.isFramed(input)) {
+                            // Items are applied as they are read
+                            receiveChannelData(
+                                channel.path,
+                                MediaDataSerializer.deserialize(FramedStreamReader(input))
+                                    .flowOn(Dispatchers.IO)
+                            )
+                            return@use
+                        }
+
+                        val line = input.bufferedReader().readLine()
 
                         when {
                             line.startsWith("data: ") -> {
                                 runCatching {
                                     val json = line.substringAfter("data: ")
-                                    _channelEventsFlow.tryEmit(
-                                        WearableEvent(channel.path, Bundle().apply {
-                                            putString(EXTRA_ACTIONDATA, json)
-                                        })
-                                )
+                                    val data = getChannelDataType(channel.path)?.let {
+                                        JSONParser.deserializer(json, it)
+                                    }
+                                    receiveChannelData(
+                                        channel.path,
+                                        MediaDataSerializer.flatten(data).asFlow()
+                                    )
                                 }.onFailure {
                                     Logger.error(
                                         "MediaPlayerChannelListener",
                                         it,
                                         "error reading data for channel = ${channel.path}"
                                     )
+                                }
                             }
-                        }
 
                             line.isEmpty() -> {
                                 // empty line; data terminator
                             }
 
                             else -> {}
+                        }
                     }
-                }
                 }.onFailure {
                     Logger.error("MediaPlayerChannelListener", it)
+                }
             }
         }
+
+    private fun getChannelDataType(path: String): Class<*>? {
+        return when (path) {
+            MediaHelper.MediaActionsPath -> CustomControls::class.java
+            MediaHelper.MediaBrowserItemsPath -> BrowseMediaItems::class.java
+            MediaHelper.MediaQueueItemsPath -> QueueItems::class.java
+            else -> null
+        }
+    }
+
+    /**
+     * Applies the channel data to the UI state item by item (see MediaDataSerializer.flatten)
+     */
+    private suspend fun receiveChannelData(path: String, data: Flow<Any>) {
+        when (path) {
+            MediaHelper.MediaActionsPath -> receiveCustomControls(data)
+            MediaHelper.MediaBrowserItemsPath -> receiveBrowserItems(data)
+            MediaHelper.MediaQueueItemsPath -> receiveQueueItems(data)
+        }
     }
 
     fun autoLaunch() {
@@ -443,7 +451,11 @@ class MediaPlayerViewModel(app: Application) : WearableListenerViewModel(app) {
                 sendMessage(
                     mPhoneNodeWithApp!!.id,
                     MediaHelper.MediaPlayerConnectPath,
-                    if (state.isAutoLaunch) true.booleanToBytes() else state.mediaPlayerDetails.packageName?.stringToBytes()
+                    MediaHelper.createMediaPlayerConnectPayload(
+                        mPhoneNodeWithApp!!.id,
+                        if (state.isAutoLaunch) true.booleanToBytes() else state.mediaPlayerDetails.packageName?.stringToBytes(),
+                        MediaHelper.getMediaArtworkSpec(appContext)
+                    )
                 )
             }
         }
@@ -490,6 +502,15 @@ class MediaPlayerViewModel(app: Application) : WearableListenerViewModel(app) {
         val artist = playerState?.mediaMetaData?.artist
         val positionState = playerState?.mediaMetaData?.positionState
 
+        val trackKey = MediaHelper.getTrackKey(playerState?.mediaMetaData)
+        // Show the cached artwork of a new track until the phone sends it
+        val cachedArtwork = if (trackKey != null && trackKey != currentTrackKey) {
+            ArtworkCache.getBitmap(trackKey)
+        } else {
+            null
+        }
+        currentTrackKey = trackKey
+
         if (playbackState != PlaybackState.NONE) {
             viewModelState.update {
                 it.copy(
@@ -497,7 +518,8 @@ class MediaPlayerViewModel(app: Application) : WearableListenerViewModel(app) {
                         playbackState = playbackState,
                         title = title,
                         artist = artist,
-                        positionState = positionState
+                        positionState = positionState,
+                        artworkBitmap = cachedArtwork ?: it.playerState.artworkBitmap
                     ),
                     isLoading = false,
                     isPlaybackLoading = playbackState == PlaybackState.LOADING
@@ -514,8 +536,11 @@ class MediaPlayerViewModel(app: Application) : WearableListenerViewModel(app) {
         }
     }
 
-    private suspend fun updatePlayerArtwork(artworkBytes: ByteArray?) {
-        val artworkBitmap = artworkBytes?.toBitmap()
+    /**
+     * @param trackKey key of the track the artwork belongs to, as sent by the phone
+     */
+    private suspend fun updatePlayerArtwork(trackKey: String?, artworkBytes: ByteArray?) {
+        val artworkBitmap = ArtworkCache.decode(trackKey, artworkBytes)
 
         viewModelState.update {
             it.copy(
@@ -551,7 +576,7 @@ class MediaPlayerViewModel(app: Application) : WearableListenerViewModel(app) {
     }
 
     fun requestSetVolume(value: Int) {
-        requestMediaAction(MediaHelper.MediaSetVolumePath, value.intToBytes())
+        volumeUpdates.submit(value)
     }
 
     private fun requestMediaAction(path: String, data: ByteArray? = null) {
@@ -563,7 +588,11 @@ class MediaPlayerViewModel(app: Application) : WearableListenerViewModel(app) {
                     sendMessage(
                         nodeID,
                         MediaHelper.MediaPlayerConnectPath,
-                        if (state.isAutoLaunch) state.isAutoLaunch.booleanToBytes() else state.mediaPlayerDetails.packageName?.stringToBytes()
+                        MediaHelper.createMediaPlayerConnectPayload(
+                            nodeID,
+                            if (state.isAutoLaunch) state.isAutoLaunch.booleanToBytes() else state.mediaPlayerDetails.packageName?.stringToBytes(),
+                            MediaHelper.getMediaArtworkSpec(appContext)
+                        )
                     )
                     sendMessage(nodeID, path, data)
                 }
@@ -580,20 +609,35 @@ class MediaPlayerViewModel(app: Application) : WearableListenerViewModel(app) {
         requestMediaAction(MediaHelper.MediaActionsPath)
     }
 
-    private suspend fun updateCustomControls(customControls: CustomControls?) {
-        val mediaItems = customControls?.actions?.map { action ->
-            MediaItemModel(action.action).apply {
-                title = action.title
-                icon = action.icon?.toBitmap()
+    private suspend fun receiveCustomControls(data: Flow<Any>) {
+        val mediaItems = ArrayList<MediaItemModel>()
+
+        data.mapNotNull { element ->
+            // Icons are decoded while the next items are read
+            (element as? ActionItem)?.let { action ->
+                MediaItemModel(action.action).apply {
+                    title = action.title
+                    icon = IconDecoder.decode(action.icon)
+                }
             }
+        }.buffer().collectBatched { items ->
+            // UI state is updated once per batch, not per item
+            mediaItems.addAll(items)
+            updateCustomControls(mediaItems.toList())
         }
 
+        if (mediaItems.isEmpty()) {
+            updateCustomControls(emptyList())
+        }
+    }
+
+    private fun updateCustomControls(mediaItems: List<MediaItemModel>) {
         viewModelState.update {
             it.copy(
                 isLoading = false,
-                mediaCustomItems = mediaItems ?: emptyList(),
+                mediaCustomItems = mediaItems,
                 pagerState = it.pagerState.copy(
-                    supportsCustomActions = !mediaItems.isNullOrEmpty()
+                    supportsCustomActions = mediaItems.isNotEmpty()
                 )
             )
         }
@@ -604,27 +648,58 @@ class MediaPlayerViewModel(app: Application) : WearableListenerViewModel(app) {
         requestMediaAction(MediaHelper.MediaBrowserItemsPath)
     }
 
-    private suspend fun updateBrowserItems(browseMediaItems: BrowseMediaItems?) {
-        val isRoot = browseMediaItems?.isRoot ?: true
-        val items = browseMediaItems?.mediaItems ?: emptyList()
-        val mediaItems = ArrayList<MediaItemModel>(if (isRoot) items.size else items.size + 1)
-        if (!isRoot) {
-            mediaItems.add(MediaItemModel(MediaHelper.ACTIONITEM_BACK))
+    private suspend fun receiveBrowserItems(data: Flow<Any>) {
+        var isRoot = true
+        var itemCount = 0
+        val mediaItems = ArrayList<MediaItemModel>()
+
+        data.map { element ->
+            // Icons are decoded while the next items are read
+            if (element is MediaItem) {
+                MediaItemModel(element.mediaId).apply {
+                    this.icon = IconDecoder.decode(element.icon)
+                    this.title = element.title
+                }
+            } else {
+                element
+            }
+        }.buffer().collectBatched { elements ->
+            val lastItemCount = itemCount
+
+            elements.forEach { element ->
+                when (element) {
+                    is BrowseMediaItems -> {
+                        isRoot = element.isRoot
+                        if (!isRoot) {
+                            mediaItems.add(MediaItemModel(MediaHelper.ACTIONITEM_BACK))
+                        }
+                    }
+
+                    is MediaItemModel -> {
+                        itemCount++
+                        mediaItems.add(element)
+                    }
+                }
+            }
+
+            // UI state is updated once per batch, not per item
+            if (itemCount > lastItemCount) {
+                updateBrowserItems(mediaItems.toList(), true)
+            }
         }
 
-        for (item in items) {
-            mediaItems.add(MediaItemModel(item.mediaId).apply {
-                this.icon = item.icon?.toBitmap()
-                this.title = item.title
-            })
+        if (itemCount == 0) {
+            updateBrowserItems(mediaItems, false)
         }
+    }
 
+    private fun updateBrowserItems(mediaItems: List<MediaItemModel>, supportsBrowser: Boolean) {
         viewModelState.update {
             it.copy(
                 isLoading = false,
                 mediaBrowserItems = mediaItems,
                 pagerState = it.pagerState.copy(
-                    supportsBrowser = items.isNotEmpty()
+                    supportsBrowser = supportsBrowser
                 )
             )
         }
@@ -643,22 +718,55 @@ class MediaPlayerViewModel(app: Application) : WearableListenerViewModel(app) {
         requestMediaAction(MediaHelper.MediaQueueItemsPath)
     }
 
-    private suspend fun updateQueueItems(queueItems: QueueItems?) {
-        val mediaQueueItems = queueItems?.queueItems?.map { item ->
-            MediaItemModel(item.queueId.toString()).apply {
-                this.icon = item.icon?.toBitmap()
-                this.title = item.title
-                this.subTitle = item.subTitle
+    private suspend fun receiveQueueItems(data: Flow<Any>) {
+        var activeQueueItemId = -1L
+        val mediaQueueItems = ArrayList<MediaItemModel>()
+
+        data.map { element ->
+            // Icons are decoded while the next items are read
+            if (element is QueueItem) {
+                MediaItemModel(element.queueId.toString()).apply {
+                    this.icon = IconDecoder.decode(element.icon)
+                    this.title = element.title
+                    this.subTitle = element.subTitle
+                }
+            } else {
+                element
             }
+        }.buffer().collectBatched { elements ->
+            val lastItemCount = mediaQueueItems.size
+
+            elements.forEach { element ->
+                when (element) {
+                    is QueueItems -> {
+                        activeQueueItemId = element.activeQueueItemId
+                    }
+
+                    is MediaItemModel -> {
+                        mediaQueueItems.add(element)
+                    }
+                }
+            }
+
+            // UI state is updated once per batch, not per item
+            if (mediaQueueItems.size > lastItemCount) {
+                updateQueueItems(mediaQueueItems.toList(), activeQueueItemId)
+            }
+        }
+
+        if (mediaQueueItems.isEmpty()) {
+            updateQueueItems(emptyList(), activeQueueItemId)
         }
+    }
 
+    private fun updateQueueItems(mediaQueueItems: List<MediaItemModel>, activeQueueItemId: Long) {
         viewModelState.update {
             it.copy(
                 isLoading = false,
-                mediaQueueItems = mediaQueueItems ?: emptyList(),
-                activeQueueItemId = queueItems?.activeQueueItemId ?: -1,
+                mediaQueueItems = mediaQueueItems,
+                activeQueueItemId = activeQueueItemId,
                 pagerState = it.pagerState.copy(
-                    supportsQueue = !mediaQueueItems.isNullOrEmpty()
+                    supportsQueue = mediaQueueItems.isNotEmpty()
                 )
             )
         }
@@ -0,0 +1,40 @@
+package com.thewizrd.simplewear.ui.compose
+
+import androidx.compose.runtime.Composable
+import androidx.compose.runtime.LaunchedEffect
+import androidx.compose.runtime.getValue
+import androidx.compose.runtime.rememberUpdatedState
+import androidx.compose.runtime.snapshotFlow
+import androidx.wear.compose.foundation.lazy.TransformingLazyColumnState
+import kotlinx.coroutines.flow.distinctUntilChanged
+
+/**
+ * Reports the range of visible items as the list is scrolled
+ *
+ * @param headerCount number of items before the list entries (e.g. a list header);
+ * reported indices are relative to the first entry
+ * @param key restarts the effect (e.g. when the list content changes)
+ */
+@Composable
+fun VisibleItemsEffect(
+    state: TransformingLazyColumnState,
+    headerCount: Int = 0,
+    key: Any? = null,
+    onVisibleItemsChanged: (IntRange) -> Unit
+) {
+    val currentOnVisibleItemsChanged by rememberUpdatedState(onVisibleItemsChanged)
+
+    LaunchedEffect(state, key) {
+        snapshotFlow {
+            val visibleItems = state.layoutInfo.visibleItems
+
+            if (visibleItems.isEmpty()) {
+                IntRange.EMPTY
+            } else {
+                (visibleItems.first().index - headerCount)..(visibleItems.last().index - headerCount)
+            }
+        }
+            .distinctUntilChanged()
+            .collect { currentOnVisibleItemsChanged(it) }
+    }
+}
@@ -59,6 +59,7 @@ import com.thewizrd.simplewear.controls.AppItemViewModel
 import com.thewizrd.simplewear.ui.components.ConfirmationOverlay
 import com.thewizrd.simplewear.ui.components.HorizontalPagerScreen
 import com.thewizrd.simplewear.ui.components.LoadingContent
+import com.thewizrd.simplewear.ui.compose.VisibleItemsEffect
 import com.thewizrd.simplewear.ui.compose.tools.WearPreviewDevices
 import com.thewizrd.simplewear.ui.theme.findActivity
 import com.thewizrd.simplewear.viewmodels.AppLauncherUiState
@@ -217,6 +218,9 @@ private fun AppLauncherScreen(
         },
         onRefresh = {
             appLauncherViewModel.refreshApps()
+        },
+        onVisibleItemsChanged = {
+            appLauncherViewModel.onVisibleItemsChanged(it)
         }
     )
 
@@ -232,7 +236,8 @@ private fun AppLauncherScreen(
     uiState: AppLauncherUiState,
     scrollState: TransformingLazyColumnState = rememberTransformingLazyColumnState(),
     onItemClicked: (AppItemViewModel) -> Unit = {},
-    onRefresh: () -> Unit = {}
+    onRefresh: () -> Unit = {},
+    onVisibleItemsChanged: (IntRange) -> Unit = {}
 ) {
     val contentPadding = rememberResponsiveColumnPadding(
         first = ColumnItemType.ListHeader,
@@ -334,6 +339,14 @@ private fun AppLauncherScreen(
             }
         }
     }
+
+    // Icons are fetched as entries are shown
+    VisibleItemsEffect(
+        state = scrollState,
+        headerCount = 1,
+        key = Pair(uiState.appsList.size, uiState.loadAppIcons),
+        onVisibleItemsChanged = onVisibleItemsChanged
+    )
 }
 
 @Composable
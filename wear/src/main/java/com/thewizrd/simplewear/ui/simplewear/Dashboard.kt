@@ -47,7 +47,6 @@ import androidx.wear.compose.material3.Icon
 import androidx.wear.compose.material3.ScreenScaffold
 import androidx.wear.compose.material3.Text
 import com.google.android.horologist.annotations.ExperimentalHorologistApi
-import com.thewizrd.shared_resources.actions.Action
 import com.thewizrd.shared_resources.actions.ActionStatus
 import com.thewizrd.shared_resources.actions.Actions
 import com.thewizrd.shared_resources.controls.ActionButtonViewModel
@@ -308,9 +307,7 @@ fun Dashboard(
                     }
 
                     WearableHelper.ActionsPath -> {
-                        val jsonData =
-                            event.data.getString(WearableListenerViewModel.EXTRA_ACTIONDATA)
-                        val action = JSONParser.deserializer(jsonData, Action::class.java)!!
+                        val action = event.action!!
 
                         dashboardViewModel.cancelTimer(action.actionType)
                         dashboardViewModel.updateButton(ActionButtonViewModel(action))
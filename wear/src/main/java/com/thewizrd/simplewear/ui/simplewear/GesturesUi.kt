@@ -158,6 +158,15 @@ fun GesturesUi(
                                 onDPadClicked = {
                                     gestureUiViewModel.requestDPadClick()
                                 },
+                                onScrollStart = { screenWidth, screenHeight ->
+                                    gestureUiViewModel.startScrollStream(screenWidth, screenHeight)
+                                },
+                                onScrollDelta = { dX, dY ->
+                                    gestureUiViewModel.requestScrollDelta(dX, dY)
+                                },
+                                onScrollEnd = {
+                                    gestureUiViewModel.endScrollStream()
+                                },
                                 onScroll = { dX, dY, screenWidth, screenHeight ->
                                     gestureUiViewModel.requestScroll(
                                         dX,
@@ -273,6 +282,9 @@ private fun GestureScreen(
     uiState: GestureUiState,
     onDPadDirection: ((Int) -> Unit) = {},
     onDPadClicked: () -> Unit = {},
+    onScrollStart: (screenWidth: Float, screenHeight: Float) -> Unit = { _, _ -> },
+    onScrollDelta: (dX: Float, dY: Float) -> Unit = { _, _ -> },
+    onScrollEnd: () -> Unit = {},
     onScroll: (dX: Float, dY: Float, screenWidth: Float, screenHeight: Float) -> Unit = { _, _, _, _ ->
     }
 ) {
@@ -313,6 +325,9 @@ private fun GestureScreen(
             .padding(horizontal = 8.dp)
             .pointerInput("horizontalScroll") {
                 detectHorizontalDragGestures(
+                    onDragStart = {
+                        onScrollStart(screenWidthPx.toFloat(), screenHeightPx.toFloat())
+                    },
                     onDragEnd = {
                         if (scrollOffset != 0f) {
                             onScroll(
@@ -322,9 +337,12 @@ private fun GestureScreen(
                                 screenHeightPx.toFloat()
                             )
                         }
-                    }
+                        onScrollEnd()
+                    },
+                    onDragCancel = onScrollEnd
                 ) { change, dragAmount ->
                     change.consume()
+                    onScrollDelta(dragAmount, 0f)
 
                     scrollOffset = if (dragAmount > 0) {
                         max(scrollOffset, dragAmount + viewConfig.scaledTouchSlop)
@@ -337,6 +355,9 @@ private fun GestureScreen(
             }
             .pointerInput("verticalScroll") {
                 detectVerticalDragGestures(
+                    onDragStart = {
+                        onScrollStart(screenWidthPx.toFloat(), screenHeightPx.toFloat())
+                    },
                     onDragEnd = {
                         if (scrollOffset != 0f) {
                             onScroll(
@@ -346,9 +367,12 @@ private fun GestureScreen(
                                 screenHeightPx.toFloat()
                             )
                         }
-                    }
+                        onScrollEnd()
+                    },
+                    onDragCancel = onScrollEnd
                 ) { change, dragAmount ->
                     change.consume()
+                    onScrollDelta(0f, dragAmount)
 
                     scrollOffset = if (dragAmount > 0) {
                         max(scrollOffset, dragAmount + viewConfig.scaledTouchSlop)
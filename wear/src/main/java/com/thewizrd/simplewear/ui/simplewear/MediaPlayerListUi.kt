@@ -73,6 +73,7 @@ import com.thewizrd.simplewear.controls.AppItemViewModel
 import com.thewizrd.simplewear.ui.components.ConfirmationOverlay
 import com.thewizrd.simplewear.ui.components.HorizontalPagerScreen
 import com.thewizrd.simplewear.ui.components.LoadingContent
+import com.thewizrd.simplewear.ui.compose.VisibleItemsEffect
 import com.thewizrd.simplewear.ui.compose.tools.WearPreviewDevices
 import com.thewizrd.simplewear.ui.navigation.Screen
 import com.thewizrd.simplewear.ui.theme.findActivity
@@ -260,6 +261,9 @@ private fun MediaPlayerListScreen(
         },
         onRefresh = {
             mediaPlayerListViewModel.refreshState()
+        },
+        onVisibleItemsChanged = {
+            mediaPlayerListViewModel.onVisibleItemsChanged(it)
         }
     )
 }
@@ -269,7 +273,8 @@ private fun MediaPlayerListScreen(
 private fun MediaPlayerListScreen(
     uiState: MediaPlayerListUiState,
     onItemClicked: (AppItemViewModel) -> Unit = {},
-    onRefresh: () -> Unit = {}
+    onRefresh: () -> Unit = {},
+    onVisibleItemsChanged: (IntRange) -> Unit = {}
 ) {
     val columnState = rememberTransformingLazyColumnState()
     val contentPadding = rememberResponsiveColumnPadding(
@@ -370,6 +375,14 @@ private fun MediaPlayerListScreen(
             }
         }
     }
+
+    // Icons are fetched as entries are shown
+    VisibleItemsEffect(
+        state = columnState,
+        headerCount = 1,
+        key = uiState.mediaAppsSet.size,
+        onVisibleItemsChanged = onVisibleItemsChanged
+    )
 }
 
 @Composable
@@ -30,7 +30,6 @@ import androidx.wear.compose.material3.Text
 import com.google.android.horologist.audio.ui.VolumeUiState
 import com.google.android.horologist.audio.ui.material3.VolumeLevelIndicator
 import com.google.android.horologist.audio.ui.material3.volumeRotaryBehavior
-import com.thewizrd.shared_resources.actions.Action
 import com.thewizrd.shared_resources.actions.ActionStatus
 import com.thewizrd.shared_resources.actions.Actions
 import com.thewizrd.shared_resources.actions.AudioStreamType
@@ -137,9 +136,7 @@ fun ValueActionScreen(
                     }
 
                     WearableHelper.ActionsPath -> {
-                        val jsonData =
-                            event.data.getString(WearableListenerViewModel.EXTRA_ACTIONDATA)
-                        val action = JSONParser.deserializer(jsonData, Action::class.java)
+                        val action = event.action
 
                         val actionSuccessful = action?.isActionSuccessful ?: false
                         val actionStatus = action?.actionStatus ?: ActionStatus.UNKNOWN
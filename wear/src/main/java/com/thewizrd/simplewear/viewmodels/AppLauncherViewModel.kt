@@ -1,6 +1,7 @@
 package com.thewizrd.simplewear.viewmodels
 
 import android.app.Application
+import android.graphics.Bitmap
 import android.os.Bundle
 import android.util.Log
 import androidx.lifecycle.viewModelScope
@@ -10,24 +11,40 @@ import com.google.android.gms.wearable.PutDataMapRequest
 import com.google.android.gms.wearable.Wearable
 import com.google.gson.stream.JsonReader
 import com.thewizrd.shared_resources.actions.ActionStatus
+import com.thewizrd.shared_resources.data.AppCatalogChange
+import com.thewizrd.shared_resources.data.AppCatalogItem
+import com.thewizrd.shared_resources.data.AppCatalogSerializer
 import com.thewizrd.shared_resources.data.AppItemData
 import com.thewizrd.shared_resources.data.AppItemSerializer
 import com.thewizrd.shared_resources.helpers.WearConnectionStatus
 import com.thewizrd.shared_resources.helpers.WearableHelper
-import com.thewizrd.shared_resources.utils.ImageUtils.toBitmap
+import com.thewizrd.shared_resources.helpers.WireProtocolHelper
+import com.thewizrd.shared_resources.utils.FramedStream
+import com.thewizrd.shared_resources.utils.FramedStreamReader
 import com.thewizrd.shared_resources.utils.JSONParser
 import com.thewizrd.shared_resources.utils.Logger
 import com.thewizrd.shared_resources.utils.bytesToString
 import com.thewizrd.simplewear.controls.AppItemViewModel
+import com.thewizrd.simplewear.datastore.apps.appCatalogDataStore
+import com.thewizrd.simplewear.helpers.AppIconLoader
+import com.thewizrd.simplewear.helpers.IconDecoder
 import com.thewizrd.simplewear.preferences.Settings
 import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.flow.Flow
 import kotlinx.coroutines.flow.MutableStateFlow
 import kotlinx.coroutines.flow.SharingStarted
+import kotlinx.coroutines.flow.buffer
+import kotlinx.coroutines.flow.first
+import kotlinx.coroutines.flow.flowOn
+import kotlinx.coroutines.flow.map
 import kotlinx.coroutines.flow.stateIn
 import kotlinx.coroutines.flow.update
 import kotlinx.coroutines.launch
+import kotlinx.coroutines.sync.Mutex
+import kotlinx.coroutines.sync.withLock
 import kotlinx.coroutines.tasks.await
 import java.io.InputStreamReader
+import java.text.Collator
 
 data class AppLauncherUiState(
     val connectionStatus: WearConnectionStatus? = null,
@@ -45,24 +62,60 @@ class AppLauncherViewModel(app: Application) : WearableListenerViewModel(app) {
         viewModelState.value
     )
 
+    // App catalog received from the phone; persisted so the list shows right away when opened
+    private val catalogLock = Mutex()
+    private val catalog = LinkedHashMap<String, AppCatalogItem>()
+    private val appViewModels = HashMap<String, AppItemViewModel>()
+    private var isCatalogLoaded = false
+
+    private val iconLoader = AppIconLoader(viewModelScope, "launcher") { path, data ->
+        connect() && sendMessage(mPhoneNodeWithApp!!.id, path, data) != -1
+    }
+
     private val channelCallback = object : ChannelClient.ChannelCallback() {
         override fun onChannelOpened(channel: ChannelClient.Channel) {
             super.onChannelOpened(channel)
+            if (channel.path == iconLoader.channelPath) {
+                viewModelScope.launch(Dispatchers.IO) {
+                    runCatching {
+                        val inputStream =
+                            Wearable.getChannelClient(appContext).getInputStream(channel).await()
+                        inputStream.buffered().use {
+                            iconLoader.receiveIcons(it) { key, icon ->
+                                onAppIconLoaded(key, icon)
+                            }
+                        }
+                    }.onFailure {
+                        Logger.writeLine(Log.ERROR, it)
+                    }
+                }
+            }
             // Check if we can load the data
             if (channel.path == WearableHelper.AppsPath) {
                 viewModelScope.launch(Dispatchers.IO) {
                     val channelClient = Wearable.getChannelClient(appContext)
                     runCatching {
                         val inputStream = channelClient.getInputStream(channel).await()
-                        inputStream.use {
+                        inputStream.buffered().use {
+                            if (FramedStream.isFramed(it)) {
+                                receiveCatalogChanges(
+                                    AppCatalogSerializer.deserializeDelta(FramedStreamReader(it))
+                                        .flowOn(Dispatchers.IO)
+                                )
+                                return@use
+                            }
+
+                            // Legacy: full app list
                             val reader = JsonReader(InputStreamReader(it))
                             val items = AppItemSerializer.deserialize(reader)
 
-                            viewModelState.update { state ->
-                                state.copy(
-                                    appsList = createAppsList(items),
-                                    isLoading = false
-                                )
+                            catalogLock.withLock {
+                                catalog.clear()
+                                appViewModels.clear()
+                                items.forEach { item ->
+                                    catalog[item.key] = AppCatalogItem(item, 0L)
+                                }
+                                updateAppsList()
                             }
                         }
                     }.onFailure {
@@ -78,6 +131,16 @@ class AppLauncherViewModel(app: Application) : WearableListenerViewModel(app) {
             registerChannelCallback(channelCallback)
         }
 
+        viewModelScope.launch {
+            catalogLock.withLock {
+                loadCatalog()
+
+                if (catalog.isNotEmpty()) {
+                    updateAppsList()
+                }
+            }
+        }
+
         viewModelScope.launch {
             eventFlow.collect { event ->
                 when (event.eventType) {
@@ -114,21 +177,140 @@ class AppLauncherViewModel(app: Application) : WearableListenerViewModel(app) {
         }
     }
 
-    private suspend fun createAppsList(items: List<AppItemData>): List<AppItemViewModel> {
-        val viewModels = ArrayList<AppItemViewModel>(items.size)
+    /**
+     * Applies catalog changes as they are read; icons are decoded while the next entries are
+     * read. The list is published on the first entry and then every page
+     */
+    private suspend fun receiveCatalogChanges(changes: Flow<AppCatalogChange>) {
+        var received = 0
+
+        changes.map { change ->
+            if (change is AppCatalogChange.Updated) {
+                change to createAppItemViewModel(change.item.item)
+            } else {
+                change to null
+            }
+        }.buffer().collect { (change, viewModel) ->
+            catalogLock.withLock {
+                when (change) {
+                    is AppCatalogChange.Removed -> {
+                        if (change.reset) {
+                            catalog.clear()
+                            appViewModels.clear()
+                        } else {
+                            change.keys.forEach { key ->
+                                catalog.remove(key)
+                                appViewModels.remove(key)
+                            }
+                        }
+                    }
+
+                    is AppCatalogChange.Updated -> {
+                        val item = change.item
+                        catalog[item.key] = item
+                        viewModel?.let { appViewModels[item.key] = it }
+
+                        if (received++ % AppCatalogSerializer.PAGE_SIZE == 0) {
+                            // Show the first entries while the rest is received
+                            updateAppsList()
+                        }
+                    }
+                }
+            }
+        }
+
+        saveCatalog()
+    }
+
+    private suspend fun saveCatalog() {
+        val items = catalogLock.withLock {
+            updateAppsList()
+            catalog.values.toList()
+        }
+
+        appContext.appCatalogDataStore.updateData { items }
+    }
+
+    private suspend fun loadCatalog() {
+        if (isCatalogLoaded) return
+
+        runCatching {
+            appContext.appCatalogDataStore.data.first().forEach { item ->
+                catalog[item.key] = item
+            }
+        }.onFailure {
+            Logger.writeLine(Log.ERROR, it)
+        }
+
+        isCatalogLoaded = true
+    }
+
+    /**
+     * Publishes the catalog sorted by label; only new or changed entries are decoded
+     */
+    private suspend fun updateAppsList() {
+        val collator = Collator.getInstance()
+        val items = catalog.values.sortedWith { a, b ->
+            collator.compare(a.item.label ?: "", b.item.label ?: "")
+        }
 
-        items.forEach { item ->
-            val model = AppItemViewModel().apply {
-                appType = AppItemViewModel.AppType.APP
-                appLabel = item.label
-                packageName = item.packageName
-                activityName = item.activityName
-                bitmapIcon = item.iconBitmap?.toBitmap()
+        val appsList = items.map { catalogItem ->
+            appViewModels.getOrPut(catalogItem.key) {
+                createAppItemViewModel(catalogItem.item)
             }
-            viewModels.add(model)
         }
 
-        return viewModels
+        viewModelState.update { state ->
+            state.copy(
+                appsList = appsList,
+                isLoading = false
+            )
+        }
+    }
+
+    private suspend fun createAppItemViewModel(item: AppItemData): AppItemViewModel {
+        return AppItemViewModel().apply {
+            appType = AppItemViewModel.AppType.APP
+            appLabel = item.label
+            packageName = item.packageName
+            activityName = item.activityName
+            bitmapIcon = IconDecoder.decode(item.iconBitmap)
+                ?: AppIconLoader.getCachedIcon(item.key)
+        }
+    }
+
+    /**
+     * Requests the icons of the visible entries and of the next page
+     *
+     * @param visibleRange indices of the visible entries in [AppLauncherUiState.appsList]
+     */
+    fun onVisibleItemsChanged(visibleRange: IntRange) {
+        val state = uiState.value
+        if (!state.loadAppIcons || visibleRange.isEmpty()) return
+        if (!WireProtocolHelper.isIconFetchSupported(mPhoneNodeWithApp?.id)) return
+
+        val appsList = state.appsList
+        val first = visibleRange.first.coerceAtLeast(0)
+        val last = (visibleRange.last + visibleRange.count()).coerceAtMost(appsList.size - 1)
+
+        if (first <= last) {
+            iconLoader.requestIcons(appsList.subList(first, last + 1))
+        }
+    }
+
+    private suspend fun onAppIconLoaded(key: String, icon: Bitmap) {
+        catalogLock.withLock {
+            val viewModel = appViewModels[key]?.copy(bitmapIcon = icon) ?: return
+            appViewModels[key] = viewModel
+
+            viewModelState.update { state ->
+                state.copy(
+                    appsList = state.appsList.map {
+                        if (it.key == viewModel.key) viewModel else it
+                    }
+                )
+            }
+        }
     }
 
     fun showAppIcons(show: Boolean = true) {
@@ -156,6 +338,8 @@ class AppLauncherViewModel(app: Application) : WearableListenerViewModel(app) {
     }
 
     fun refreshApps() {
+        iconLoader.reset()
+
         // Update statuses
         viewModelScope.launch {
             updateConnectionStatus()
@@ -194,7 +378,18 @@ class AppLauncherViewModel(app: Application) : WearableListenerViewModel(app) {
     private fun requestAppsUpdate() {
         viewModelScope.launch {
             if (connect()) {
-                sendMessage(mPhoneNodeWithApp!!.id, WearableHelper.AppsPath, null)
+                val nodeID = mPhoneNodeWithApp!!.id
+
+                val manifest = if (WireProtocolHelper.isAppCatalogSupported(nodeID)) {
+                    catalogLock.withLock {
+                        loadCatalog()
+                        AppCatalogSerializer.createManifestPayload(catalog.values)
+                    }
+                } else {
+                    null
+                }
+
+                sendMessage(nodeID, WearableHelper.AppsPath, manifest)
             }
         }
     }
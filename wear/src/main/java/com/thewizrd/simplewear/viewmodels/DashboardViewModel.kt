@@ -5,8 +5,6 @@ import android.os.Bundle
 import android.os.CountDownTimer
 import android.util.ArrayMap
 import androidx.lifecycle.viewModelScope
-import com.google.android.gms.wearable.MessageClient
-import com.google.android.gms.wearable.Wearable
 import com.thewizrd.shared_resources.actions.Action
 import com.thewizrd.shared_resources.actions.ActionStatus
 import com.thewizrd.shared_resources.actions.Actions
@@ -14,6 +12,8 @@ import com.thewizrd.shared_resources.actions.BatteryStatus
 import com.thewizrd.shared_resources.controls.ActionButtonViewModel
 import com.thewizrd.shared_resources.helpers.WearConnectionStatus
 import com.thewizrd.shared_resources.helpers.WearableHelper
+import com.thewizrd.shared_resources.helpers.WearableRpcClient
+import com.thewizrd.shared_resources.helpers.WireProtocolHelper
 import com.thewizrd.shared_resources.utils.JSONParser
 import com.thewizrd.shared_resources.utils.bytesToLong
 import com.thewizrd.simplewear.R
@@ -23,9 +23,6 @@ import kotlinx.coroutines.flow.SharingStarted
 import kotlinx.coroutines.flow.stateIn
 import kotlinx.coroutines.flow.update
 import kotlinx.coroutines.launch
-import kotlinx.coroutines.suspendCancellableCoroutine
-import kotlinx.coroutines.tasks.await
-import kotlin.coroutines.resume
 
 data class DashboardState(
     val connectionStatus: WearConnectionStatus? = null,
@@ -125,11 +122,34 @@ class DashboardViewModel(app: Application) : WearableListenerViewModel(app) {
                         }
                     }
 
+                    WearableHelper.DashboardSnapshotPath -> {
+                        val snapshot = event.snapshot!!
+
+                        cancelTimer(TIMER_SYNC)
+                        cancelTimer(TIMER_SYNC_NORESPONSE)
+                        snapshot.actions.forEach { cancelTimer(it.actionType) }
+
+                        val models = snapshot.actions.associate {
+                            it.actionType to ActionButtonViewModel(it)
+                        }
+
+                        // Apply battery and action states in a single update
+                        viewModelState.update {
+                            it.copy(
+                                isStatusLoading = false,
+                                batteryStatus = snapshot.batteryStatus,
+                                actions = it.actions.map { model ->
+                                    models[model.actionType] ?: model
+                                },
+                                isActionsClickable = true
+                            )
+                        }
+                    }
+
                     ACTION_CHANGED -> {
-                        val jsonData = event.data.getString(EXTRA_ACTIONDATA)
-                        val action = JSONParser.deserializer(jsonData, Action::class.java)!!
+                        val action = event.action!!
 
-                        requestAction(jsonData)
+                        requestAction(action)
 
                         val timer: CountDownTimer = object : CountDownTimer(5000, 500) {
                             override fun onTick(millisUntilFinished: Long) {}
@@ -137,14 +157,7 @@ class DashboardViewModel(app: Application) : WearableListenerViewModel(app) {
                             override fun onFinish() {
                                 action.setActionSuccessful(ActionStatus.TIMEOUT)
                                 _eventsFlow.tryEmit(
-                                    WearableEvent(
-                                        WearableHelper.ActionsPath,
-                                        Bundle().apply {
-                                            putString(
-                                                EXTRA_ACTIONDATA,
-                                                JSONParser.serializer(action, Action::class.java)
-                                            )
-                                        })
+                                    WearableEvent(WearableHelper.ActionsPath, action = action)
                                 )
                             }
                         }
@@ -245,48 +258,30 @@ class DashboardViewModel(app: Application) : WearableListenerViewModel(app) {
     }
 
     fun requestActionChange(action: Action) {
-        _eventsFlow.tryEmit(WearableEvent(ACTION_CHANGED, Bundle().apply {
-            putString(EXTRA_ACTIONDATA, JSONParser.serializer(action, Action::class.java))
-        }))
+        _eventsFlow.tryEmit(WearableEvent(ACTION_CHANGED, action = action))
     }
 
     fun requestActionStatusUpdate(action: Action) {
-        _eventsFlow.tryEmit(WearableEvent(WearableHelper.ActionsPath, Bundle().apply {
-            putString(EXTRA_ACTIONDATA, JSONParser.serializer(action, Action::class.java))
-        }))
+        _eventsFlow.tryEmit(WearableEvent(WearableHelper.ActionsPath, action = action))
     }
 
-    suspend fun requestPhoneAppVersion(): Long {
-        return suspendCancellableCoroutine { continuation ->
-            val listener = MessageClient.OnMessageReceivedListener { event ->
-                when (event.path) {
-                    WearableHelper.VersionPath -> {
-                        if (continuation.isActive) {
-                            val versionCode = event.data.bytesToLong()
-                            continuation.resume(versionCode)
-                        }
-                    }
-                }
+    suspend fun requestPhoneAppVersion(): Long? {
+        val response = WearableRpcClient.awaitMessage(
+            key = WearableHelper.VersionPath,
+            timeoutMillis = 15000,
+            matcher = { event -> event.path == WearableHelper.VersionPath }
+        ) {
+            if (connect()) {
+                sendMessage(
+                    mPhoneNodeWithApp!!.id,
+                    WearableHelper.VersionPath,
+                    WireProtocolHelper.createVersionPayload()
+                )
             }
+        } ?: return null
 
-            continuation.invokeOnCancellation {
-                Wearable.getMessageClient(appContext)
-                    .removeListener(listener)
-            }
-
-            viewModelScope.launch {
-                Wearable.getMessageClient(appContext)
-                    .addListener(
-                        listener,
-                        WearableHelper.getWearDataUri("*", WearableHelper.VersionPath),
-                        MessageClient.FILTER_LITERAL
-                    ).await()
-
-                if (connect()) {
-                    sendMessage(mPhoneNodeWithApp!!.id, WearableHelper.VersionPath, null)
-                }
-            }
-        }
+        WireProtocolHelper.onVersionPayloadReceived(response.sourceNodeId, response.data)
+        return response.data.bytesToLong()
     }
 
     fun cancelTimer(action: Actions) {
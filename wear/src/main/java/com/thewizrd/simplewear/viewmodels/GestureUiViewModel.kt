@@ -2,21 +2,32 @@ package com.thewizrd.simplewear.viewmodels
 
 import android.app.Application
 import android.os.Bundle
+import android.util.Log
 import androidx.lifecycle.viewModelScope
 import com.google.android.gms.wearable.MessageEvent
+import com.google.android.gms.wearable.Wearable
 import com.thewizrd.shared_resources.actions.ActionStatus
 import com.thewizrd.shared_resources.actions.GestureActionState
 import com.thewizrd.shared_resources.helpers.GestureUIHelper
+import com.thewizrd.shared_resources.helpers.ScrollStreamWriter
 import com.thewizrd.shared_resources.helpers.WearConnectionStatus
+import com.thewizrd.shared_resources.helpers.WireProtocolHelper
 import com.thewizrd.shared_resources.utils.JSONParser
+import com.thewizrd.shared_resources.utils.Logger
 import com.thewizrd.shared_resources.utils.bytesToString
 import com.thewizrd.shared_resources.utils.intToBytes
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.channels.Channel
+import kotlinx.coroutines.channels.SendChannel
 import kotlinx.coroutines.flow.MutableStateFlow
 import kotlinx.coroutines.flow.SharingStarted
 import kotlinx.coroutines.flow.stateIn
 import kotlinx.coroutines.flow.update
 import kotlinx.coroutines.launch
+import kotlinx.coroutines.tasks.await
+import kotlinx.coroutines.withContext
 import java.nio.ByteBuffer
+import kotlin.coroutines.cancellation.CancellationException
 
 data class GestureUiState(
     val connectionStatus: WearConnectionStatus? = null,
@@ -27,6 +38,9 @@ data class GestureUiState(
 class GestureUiViewModel(app: Application) : WearableListenerViewModel(app) {
     private val viewModelState = MutableStateFlow(GestureUiState(isLoading = true))
 
+    // Deltas of the touch being streamed to the phone
+    private var scrollDeltas: SendChannel<Pair<Float, Float>>? = null
+
     val uiState = viewModelState.stateIn(
         viewModelScope,
         SharingStarted.Eagerly,
@@ -117,7 +131,81 @@ class GestureUiViewModel(app: Application) : WearableListenerViewModel(app) {
         }
     }
 
+    /**
+     * Starts streaming the scroll gesture of a touch to the phone, if supported; deltas are sent
+     * with [requestScrollDelta] until [endScrollStream]. If the stream fails, the touch is sent
+     * with [requestScroll] instead
+     */
+    fun startScrollStream(width: Float, height: Float) {
+        endScrollStream()
+
+        val nodeID = mPhoneNodeWithApp?.id ?: return
+        if (!WireProtocolHelper.isGestureStreamSupported(nodeID)) return
+
+        val deltas = Channel<Pair<Float, Float>>(Channel.UNLIMITED)
+        scrollDeltas = deltas
+
+        viewModelScope.launch(Dispatchers.IO) {
+            val channelClient = Wearable.getChannelClient(appContext)
+
+            runCatching {
+                val channel = channelClient.openChannel(nodeID, GestureUIHelper.ScrollStreamPath)
+                    .await()
+
+                try {
+                    channelClient.getOutputStream(channel).await().use { outputStream ->
+                        val writer = ScrollStreamWriter(outputStream)
+                        writer.writeHeader(width, height)
+
+                        for ((dX, dY) in deltas) {
+                            var sumX = dX
+                            var sumY = dY
+
+                            // Merge the deltas received while the last record was written
+                            while (true) {
+                                val (nextX, nextY) = deltas.tryReceive().getOrNull() ?: break
+                                sumX += nextX
+                                sumY += nextY
+                            }
+
+                            writer.writeDelta(sumX, sumY)
+                        }
+                    }
+                } finally {
+                    channelClient.close(channel)
+                }
+            }.onFailure {
+                if (it is CancellationException) throw it
+                Logger.writeLine(Log.ERROR, it, "GestureUiViewModel: error streaming scroll")
+
+                // Drop the stream, so the touch is sent over the message path when it ends
+                withContext(Dispatchers.Main) {
+                    if (scrollDeltas === deltas) scrollDeltas = null
+                }
+            }
+
+            deltas.cancel()
+        }
+    }
+
+    fun requestScrollDelta(dX: Float, dY: Float) {
+        scrollDeltas?.trySend(dX to dY)
+    }
+
+    /**
+     * @return true if a scroll stream was active
+     */
+    fun endScrollStream(): Boolean {
+        val deltas = scrollDeltas ?: return false
+        scrollDeltas = null
+        deltas.close()
+        return true
+    }
+
     fun requestScroll(dX: Float, dY: Float, width: Float, height: Float) {
+        // Touch was already streamed
+        if (endScrollStream()) return
+
         viewModelScope.launch {
             if (connect()) {
                 val buf = ByteBuffer.allocate(Float.SIZE_BYTES * 4).apply {
@@ -160,6 +248,7 @@ class GestureUiViewModel(app: Application) : WearableListenerViewModel(app) {
     }
 
     override fun onCleared() {
+        endScrollStream()
         super.onCleared()
     }
 }
\ No newline at end of file
@@ -1,6 +1,7 @@
 package com.thewizrd.simplewear.viewmodels
 
 import android.app.Application
+import android.graphics.Bitmap
 import android.os.Bundle
 import androidx.lifecycle.viewModelScope
 import com.google.android.gms.wearable.ChannelClient.Channel
@@ -8,20 +9,31 @@ import com.google.android.gms.wearable.ChannelClient.ChannelCallback
 import com.google.android.gms.wearable.MessageEvent
 import com.google.android.gms.wearable.Wearable
 import com.thewizrd.shared_resources.actions.ActionStatus
+import com.thewizrd.shared_resources.data.AppItemData
 import com.thewizrd.shared_resources.helpers.MediaHelper
 import com.thewizrd.shared_resources.helpers.WearConnectionStatus
+import com.thewizrd.shared_resources.helpers.WireProtocolHelper
+import com.thewizrd.shared_resources.media.MediaDataSerializer
 import com.thewizrd.shared_resources.media.MusicPlayersData
-import com.thewizrd.shared_resources.utils.ImageUtils.toBitmap
+import com.thewizrd.shared_resources.utils.FramedStream
+import com.thewizrd.shared_resources.utils.FramedStreamReader
 import com.thewizrd.shared_resources.utils.JSONParser
 import com.thewizrd.shared_resources.utils.Logger
 import com.thewizrd.shared_resources.utils.bytesToString
+import com.thewizrd.shared_resources.utils.collectBatched
 import com.thewizrd.simplewear.controls.AppItemViewModel
+import com.thewizrd.simplewear.helpers.AppIconLoader
 import com.thewizrd.simplewear.helpers.AppItemComparator
+import com.thewizrd.simplewear.helpers.IconDecoder
 import com.thewizrd.simplewear.preferences.Settings
 import kotlinx.coroutines.Dispatchers
 import kotlinx.coroutines.Job
+import kotlinx.coroutines.flow.Flow
 import kotlinx.coroutines.flow.MutableStateFlow
 import kotlinx.coroutines.flow.SharingStarted
+import kotlinx.coroutines.flow.asFlow
+import kotlinx.coroutines.flow.buffer
+import kotlinx.coroutines.flow.flowOn
 import kotlinx.coroutines.flow.map
 import kotlinx.coroutines.flow.stateIn
 import kotlinx.coroutines.flow.update
@@ -49,6 +61,10 @@ class MediaPlayerListViewModel(app: Application) : WearableListenerViewModel(app
 
     private val filteredAppsList = uiState.map { it.filteredAppsList }
 
+    private val iconLoader = AppIconLoader(viewModelScope, "media-players") { path, data ->
+        connect() && sendMessage(mPhoneNodeWithApp!!.id, path, data) != -1
+    }
+
     private val channelCallback = object : ChannelCallback() {
         override fun onChannelOpened(channel: Channel) {
             startChannelListener(channel)
@@ -92,24 +108,6 @@ class MediaPlayerListViewModel(app: Application) : WearableListenerViewModel(app
             }
         }
 
-        viewModelScope.launch {
-            channelEventsFlow.collect { event ->
-                when (event.eventType) {
-                    MediaHelper.MusicPlayersPath -> {
-                        val jsonData = event.data.getString(EXTRA_ACTIONDATA)
-
-                        viewModelScope.launch {
-                            val playersData = jsonData?.let {
-                                JSONParser.deserializer(it, MusicPlayersData::class.java)
-                            }
-
-                            updateMusicPlayers(playersData)
-                        }
-                    }
-                }
-            }
-        }
-
         viewModelScope.launch {
             filteredAppsList.collect {
                 if (uiState.value.allMediaAppsSet.isNotEmpty()) {
@@ -157,6 +155,10 @@ class MediaPlayerListViewModel(app: Application) : WearableListenerViewModel(app
             MediaHelper.MusicPlayersPath -> {
                 createChannelListener(channel)
             }
+
+            iconLoader.channelPath -> {
+                createIconChannelListener(channel)
+            }
         }
     }
 
@@ -166,17 +168,26 @@ class MediaPlayerListViewModel(app: Application) : WearableListenerViewModel(app
                 runCatching {
                     val stream = Wearable.getChannelClient(appContext)
                         .getInputStream(channel).await()
-                    stream.bufferedReader().use { reader ->
-                        val line = reader.readLine()
+                    stream.buffered().use { input ->
+                        if (FramedStream.isFramed(input)) {
+                            // Players are applied as they are read
+                            receiveMusicPlayers(
+                                MediaDataSerializer.deserialize(FramedStreamReader(input))
+                                    .flowOn(Dispatchers.IO)
+                            )
+                            return@use
+                        }
+
+                        val line = input.bufferedReader().readLine()
 
                         when {
                             line.startsWith("data: ") -> {
                                 runCatching {
                                     val json = line.substringAfter("data: ")
-                                    _channelEventsFlow.tryEmit(
-                                        WearableEvent(channel.path, Bundle().apply {
-                                            putString(EXTRA_ACTIONDATA, json)
-                                        })
+                                    val playersData =
+                                        JSONParser.deserializer(json, MusicPlayersData::class.java)
+                                    receiveMusicPlayers(
+                                        MediaDataSerializer.flatten(playersData).asFlow()
                                     )
                                 }.onFailure {
                                     Logger.error(
@@ -200,6 +211,21 @@ class MediaPlayerListViewModel(app: Application) : WearableListenerViewModel(app
             }
         }
 
+    private fun createIconChannelListener(channel: Channel): Job =
+        viewModelScope.launch(Dispatchers.IO) {
+            runCatching {
+                val stream = Wearable.getChannelClient(appContext)
+                    .getInputStream(channel).await()
+                stream.buffered().use {
+                    iconLoader.receiveIcons(it) { key, icon ->
+                        onAppIconLoaded(key, icon)
+                    }
+                }
+            }.onFailure {
+                Logger.error("MediaPlayerListChannelListener", it)
+            }
+        }
+
     override fun onCleared() {
         Wearable.getChannelClient(appContext).run {
             unregisterChannelCallback(channelCallback)
@@ -209,6 +235,8 @@ class MediaPlayerListViewModel(app: Application) : WearableListenerViewModel(app
     }
 
     fun refreshState() {
+        iconLoader.reset()
+
         viewModelScope.launch {
             updateConnectionStatus()
             requestPlayersUpdate()
@@ -241,20 +269,87 @@ class MediaPlayerListViewModel(app: Application) : WearableListenerViewModel(app
         }
     }
 
-    private suspend fun updateMusicPlayers(playersData: MusicPlayersData?) {
-        val mediaAppsList = playersData?.musicPlayers?.mapTo(mutableSetOf()) { player ->
-            AppItemViewModel().apply {
-                appLabel = player.label
-                packageName = player.packageName
-                activityName = player.activityName
-                bitmapIcon = player.iconBitmap?.toBitmap()
+    private suspend fun receiveMusicPlayers(data: Flow<Any>) {
+        var activePlayerKey: String? = null
+        val mediaAppsList = LinkedHashSet<AppItemViewModel>()
+
+        data.map { element ->
+            // Icons are decoded while the next players are read
+            if (element is AppItemData) {
+                AppItemViewModel().apply {
+                    appLabel = element.label
+                    packageName = element.packageName
+                    activityName = element.activityName
+                    bitmapIcon = IconDecoder.decode(element.iconBitmap)
+                        ?: AppIconLoader.getCachedIcon(element.key)
+                }
+            } else {
+                element
+            }
+        }.buffer().collectBatched { elements ->
+            val lastPlayerCount = mediaAppsList.size
+
+            elements.forEach { element ->
+                when (element) {
+                    is MusicPlayersData -> {
+                        activePlayerKey = element.activePlayerKey
+                    }
+
+                    is AppItemViewModel -> {
+                        mediaAppsList.add(element)
+                    }
+                }
+            }
+
+            // The list is sorted and filtered once per batch, not per player
+            if (mediaAppsList.size > lastPlayerCount) {
+                updateMusicPlayers(mediaAppsList.toSet(), activePlayerKey)
             }
         }
 
+        if (mediaAppsList.isEmpty()) {
+            updateMusicPlayers(emptySet(), activePlayerKey)
+        }
+    }
+
+    private fun updateMusicPlayers(mediaAppsList: Set<AppItemViewModel>, activePlayerKey: String?) {
         viewModelState.update {
             it.copy(
-                allMediaAppsSet = mediaAppsList ?: emptySet(),
-                activePlayerKey = playersData?.activePlayerKey
+                allMediaAppsSet = mediaAppsList,
+                activePlayerKey = activePlayerKey
+            )
+        }
+        updateAppsList()
+    }
+
+    /**
+     * Requests the icons of the visible players and of the next page
+     *
+     * @param visibleRange indices of the visible entries in [MediaPlayerListUiState.mediaAppsSet]
+     */
+    fun onVisibleItemsChanged(visibleRange: IntRange) {
+        if (visibleRange.isEmpty()) return
+        if (!WireProtocolHelper.isIconFetchSupported(mPhoneNodeWithApp?.id)) return
+
+        val mediaApps = uiState.value.mediaAppsSet.toList()
+        val first = visibleRange.first.coerceAtLeast(0)
+        val last = (visibleRange.last + visibleRange.count()).coerceAtMost(mediaApps.size - 1)
+
+        if (first <= last) {
+            iconLoader.requestIcons(mediaApps.subList(first, last + 1))
+        }
+    }
+
+    private fun onAppIconLoaded(key: String, icon: Bitmap) {
+        viewModelState.update { state ->
+            state.copy(
+                allMediaAppsSet = state.allMediaAppsSet.mapTo(LinkedHashSet()) {
+                    if ("${it.packageName}|${it.activityName}" == key) {
+                        it.copy(bitmapIcon = icon)
+                    } else {
+                        it
+                    }
+                }
             )
         }
         updateAppsList()
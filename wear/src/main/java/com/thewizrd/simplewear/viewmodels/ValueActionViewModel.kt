@@ -5,7 +5,6 @@ import android.os.Bundle
 import android.os.CountDownTimer
 import androidx.lifecycle.viewModelScope
 import com.google.android.gms.wearable.MessageEvent
-import com.thewizrd.shared_resources.actions.Action
 import com.thewizrd.shared_resources.actions.ActionStatus
 import com.thewizrd.shared_resources.actions.Actions
 import com.thewizrd.shared_resources.actions.AudioStreamState
@@ -16,6 +15,7 @@ import com.thewizrd.shared_resources.actions.ValueDirection
 import com.thewizrd.shared_resources.actions.VolumeAction
 import com.thewizrd.shared_resources.helpers.WearConnectionStatus
 import com.thewizrd.shared_resources.helpers.WearableHelper
+import com.thewizrd.shared_resources.utils.ConflatedRateLimiter
 import com.thewizrd.shared_resources.utils.JSONParser
 import com.thewizrd.shared_resources.utils.bytesToBool
 import com.thewizrd.shared_resources.utils.bytesToString
@@ -40,6 +40,17 @@ class ValueActionViewModel(app: Application) : WearableListenerViewModel(app) {
 
     private var timer: CountDownTimer? = null
 
+    // Slider and rotary input; only the latest value is sent, at a fixed rate
+    private val valueUpdates = ConflatedRateLimiter<Pair<Actions, Int>>(viewModelScope) {
+        val (action, value) = it
+
+        if (action == Actions.VOLUME) {
+            requestSetVolume(value)
+        } else {
+            requestSetValue(value)
+        }
+    }
+
     val uiState = viewModelState.stateIn(
         viewModelScope,
         SharingStarted.Eagerly,
@@ -70,10 +81,9 @@ class ValueActionViewModel(app: Application) : WearableListenerViewModel(app) {
                     }
 
                     ACTION_CHANGED -> {
-                        val jsonData = event.data.getString(EXTRA_ACTIONDATA)
-                        val action = JSONParser.deserializer(jsonData, Action::class.java)!!
+                        val action = event.action!!
 
-                        requestAction(jsonData)
+                        requestAction(action)
 
                         viewModelScope.launch {
                             timer?.cancel()
@@ -83,18 +93,7 @@ class ValueActionViewModel(app: Application) : WearableListenerViewModel(app) {
                                 override fun onFinish() {
                                     action.setActionSuccessful(ActionStatus.TIMEOUT)
                                     _eventsFlow.tryEmit(
-                                        WearableEvent(
-                                            WearableHelper.ActionsPath,
-                                            Bundle().apply {
-                                                putString(
-                                                    EXTRA_ACTIONDATA,
-                                                    JSONParser.serializer(
-                                                        action,
-                                                        Action::class.java
-                                                    )
-                                                )
-                                            }
-                                        )
+                                        WearableEvent(WearableHelper.ActionsPath, action = action)
                                     )
                                 }
                             }
@@ -140,9 +139,7 @@ class ValueActionViewModel(app: Application) : WearableListenerViewModel(app) {
                 ValueAction(state.action, ValueDirection.UP)
             }
 
-            _eventsFlow.tryEmit(WearableEvent(ACTION_CHANGED, Bundle().apply {
-                putString(EXTRA_ACTIONDATA, JSONParser.serializer(actionData, Action::class.java))
-            }))
+            _eventsFlow.tryEmit(WearableEvent(ACTION_CHANGED, action = actionData))
         }
     }
 
@@ -156,9 +153,7 @@ class ValueActionViewModel(app: Application) : WearableListenerViewModel(app) {
                 ValueAction(state.action, ValueDirection.DOWN)
             }
 
-            _eventsFlow.tryEmit(WearableEvent(ACTION_CHANGED, Bundle().apply {
-                putString(EXTRA_ACTIONDATA, JSONParser.serializer(actionData, Action::class.java))
-            }))
+            _eventsFlow.tryEmit(WearableEvent(ACTION_CHANGED, action = actionData))
         }
     }
 
@@ -166,13 +161,7 @@ class ValueActionViewModel(app: Application) : WearableListenerViewModel(app) {
         val state = uiState.value
 
         if (state.action != null) {
-            viewModelScope.launch {
-                if (state.action == Actions.VOLUME) {
-                    requestSetVolume(value)
-                } else {
-                    requestSetValue(value)
-                }
-            }
+            valueUpdates.submit(state.action to value)
         }
     }
 
@@ -1,5 +1,17 @@
 package com.thewizrd.simplewear.viewmodels
 
 import android.os.Bundle
+import com.thewizrd.shared_resources.actions.Action
+import com.thewizrd.shared_resources.actions.DashboardSnapshot
 
-data class WearableEvent(val eventType: String, val data: Bundle = Bundle.EMPTY)
\ No newline at end of file
+/**
+ * @param action Decoded action for action events (ActionsPath, ACTION_CHANGED), passed as is so
+ * consumers don't parse it again
+ * @param snapshot Decoded dashboard snapshot (DashboardSnapshotPath), applied by consumers as a whole
+ */
+data class WearableEvent(
+    val eventType: String,
+    val data: Bundle = Bundle.EMPTY,
+    val action: Action? = null,
+    val snapshot: DashboardSnapshot? = null
+)
\ No newline at end of file
@@ -17,7 +17,6 @@ import androidx.lifecycle.viewModelScope
 import androidx.wear.phone.interactions.PhoneTypeHelper
 import androidx.wear.remote.interactions.RemoteActivityHelper
 import com.google.android.gms.common.api.ApiException
-import com.google.android.gms.wearable.CapabilityClient
 import com.google.android.gms.wearable.CapabilityClient.OnCapabilityChangedListener
 import com.google.android.gms.wearable.CapabilityInfo
 import com.google.android.gms.wearable.MessageClient.OnMessageReceivedListener
@@ -26,12 +25,16 @@ import com.google.android.gms.wearable.Node
 import com.google.android.gms.wearable.Wearable
 import com.google.android.gms.wearable.WearableStatusCodes
 import com.thewizrd.shared_resources.actions.Action
+import com.thewizrd.shared_resources.actions.ActionSerializer
 import com.thewizrd.shared_resources.actions.Actions
 import com.thewizrd.shared_resources.actions.BatteryStatus
 import com.thewizrd.shared_resources.actions.ToggleAction
 import com.thewizrd.shared_resources.appLib
 import com.thewizrd.shared_resources.helpers.WearConnectionStatus
 import com.thewizrd.shared_resources.helpers.WearableHelper
+import com.thewizrd.shared_resources.helpers.WearableNodeRegistry
+import com.thewizrd.shared_resources.helpers.WearableRpcClient
+import com.thewizrd.shared_resources.helpers.WireProtocolHelper
 import com.thewizrd.shared_resources.utils.JSONParser
 import com.thewizrd.shared_resources.utils.Logger
 import com.thewizrd.shared_resources.utils.bytesToString
@@ -161,7 +164,9 @@ abstract class WearableListenerViewModel(private val app: Application) : Android
         }.getOrDefault(false)
     }
 
-    override fun onMessageReceived(messageEvent: MessageEvent) {
+    override fun onMessageReceived(event: MessageEvent) {
+        val messageEvent = WearableRpcClient.unwrap(event)
+
         viewModelScope.launch {
             when {
                 messageEvent.path.contains(WearableHelper.WifiPath) -> {
@@ -181,15 +186,12 @@ abstract class WearableListenerViewModel(private val app: Application) : Android
                         }
                     }
 
-                    _eventsFlow.tryEmit(WearableEvent(WearableHelper.ActionsPath, Bundle().apply {
-                        putString(
-                            EXTRA_ACTIONDATA,
-                            JSONParser.serializer(
-                                ToggleAction(Actions.WIFI, enabled),
-                                Action::class.java
-                            )
+                    _eventsFlow.tryEmit(
+                        WearableEvent(
+                            WearableHelper.ActionsPath,
+                            action = ToggleAction(Actions.WIFI, enabled)
                         )
-                    }))
+                    )
                 }
 
                 messageEvent.path.contains(WearableHelper.BluetoothPath) -> {
@@ -209,15 +211,12 @@ abstract class WearableListenerViewModel(private val app: Application) : Android
                         }
                     }
 
-                    _eventsFlow.tryEmit(WearableEvent(WearableHelper.ActionsPath, Bundle().apply {
-                        putString(
-                            EXTRA_ACTIONDATA,
-                            JSONParser.serializer(
-                                ToggleAction(Actions.BLUETOOTH, enabled),
-                                Action::class.java
-                            )
+                    _eventsFlow.tryEmit(
+                        WearableEvent(
+                            WearableHelper.ActionsPath,
+                            action = ToggleAction(Actions.BLUETOOTH, enabled)
                         )
-                    }))
+                    )
                 }
 
                 messageEvent.path == WearableHelper.BatteryPath -> {
@@ -229,6 +228,22 @@ abstract class WearableListenerViewModel(private val app: Application) : Android
                     }))
                 }
 
+                messageEvent.path == WearableHelper.DashboardSnapshotPath -> {
+                    val snapshot =
+                        ActionSerializer.decodeSnapshot(messageEvent.data) ?: return@launch
+
+                    _eventsFlow.tryEmit(
+                        WearableEvent(WearableHelper.DashboardSnapshotPath, snapshot = snapshot)
+                    )
+                }
+
+                messageEvent.path == WearableHelper.VersionPath -> {
+                    WireProtocolHelper.onVersionPayloadReceived(
+                        messageEvent.sourceNodeId,
+                        messageEvent.data
+                    )
+                }
+
                 messageEvent.path == WearableHelper.AppStatePath -> {
                     val appState = appLib.appState
                     sendMessage(
@@ -239,20 +254,19 @@ abstract class WearableListenerViewModel(private val app: Application) : Android
                 }
 
                 messageEvent.path == WearableHelper.ActionsPath -> {
-                    val data = messageEvent.data
-                    val jsonData: String = data.bytesToString()
+                    val action = ActionSerializer.deserialize(messageEvent.data) ?: return@launch
 
-                    _eventsFlow.tryEmit(WearableEvent(WearableHelper.ActionsPath, Bundle().apply {
-                        putString(EXTRA_ACTIONDATA, jsonData)
-                    }))
+                    _eventsFlow.tryEmit(WearableEvent(WearableHelper.ActionsPath, action = action))
                 }
             }
         }
     }
 
     override fun onCapabilityChanged(capabilityInfo: CapabilityInfo) {
+        WearableNodeRegistry.onCapabilityChanged(capabilityInfo)
+
         viewModelScope.launch {
-            val connectedNodes = getConnectedNodes()
+            val connectedNodes = WearableNodeRegistry.getConnectedNodes()
             mPhoneNodeWithApp = pickBestNodeId(capabilityInfo.nodes)
 
             if (mPhoneNodeWithApp == null) {
@@ -301,7 +315,7 @@ abstract class WearableListenerViewModel(private val app: Application) : Android
     }
 
     protected suspend fun checkConnectionStatus() {
-        val connectedNodes = getConnectedNodes()
+        val connectedNodes = WearableNodeRegistry.getConnectedNodes()
         mPhoneNodeWithApp = checkIfPhoneHasApp()
 
         if (mPhoneNodeWithApp == null) {
@@ -342,27 +356,24 @@ abstract class WearableListenerViewModel(private val app: Application) : Android
     }
 
     protected suspend fun checkIfPhoneHasApp(): Node? {
-        var node: Node? = null
-
-        try {
-            val capabilityInfo = Wearable.getCapabilityClient(appContext)
-                .getCapability(
-                    WearableHelper.CAPABILITY_PHONE_APP,
-                    CapabilityClient.FILTER_ALL
-                )
-                .await()
-            node = pickBestNodeId(capabilityInfo.nodes)
-        } catch (e: Exception) {
-            Logger.writeLine(Log.ERROR, e)
-        }
-
-        return node
+        return WearableNodeRegistry.getPhoneNode()
     }
 
     protected suspend fun connect(): Boolean {
         if (mPhoneNodeWithApp == null)
             mPhoneNodeWithApp = checkIfPhoneHasApp()
 
+        mPhoneNodeWithApp?.let { node ->
+            if (!WireProtocolHelper.isNegotiated(node.id)) {
+                // Advertise supported wire codecs; response is handled in onMessageReceived
+                sendMessage(
+                    node.id,
+                    WearableHelper.VersionPath,
+                    WireProtocolHelper.createVersionPayload()
+                )
+            }
+        }
+
         return mPhoneNodeWithApp != null
     }
 
@@ -375,16 +386,19 @@ abstract class WearableListenerViewModel(private val app: Application) : Android
     }
 
     protected fun requestAction(action: Action?) {
-        requestAction(JSONParser.serializer(action, Action::class.java))
-    }
-
-    protected fun requestAction(actionJSONString: String?) {
         viewModelScope.launch {
             if (connect()) {
+                val nodeID = mPhoneNodeWithApp!!.id
+
                 sendMessage(
-                    mPhoneNodeWithApp!!.id,
+                    nodeID,
                     WearableHelper.ActionsPath,
-                    actionJSONString?.stringToBytes()
+                    action?.let {
+                        ActionSerializer.serialize(
+                            it,
+                            WireProtocolHelper.isBinaryActionsSupported(nodeID)
+                        )
+                    }
                 )
             }
         }
@@ -433,18 +447,6 @@ abstract class WearableListenerViewModel(private val app: Application) : Android
         return bestNode
     }
 
-    private suspend fun getConnectedNodes(): List<Node> {
-        try {
-            return Wearable.getNodeClient(appContext)
-                .connectedNodes
-                .await()
-        } catch (e: Exception) {
-            Logger.writeLine(Log.ERROR, e)
-        }
-
-        return emptyList()
-    }
-
     protected suspend fun sendMessage(nodeID: String, path: String, data: ByteArray?): Int? {
         try {
             return Wearable.getMessageClient(appContext)
@@ -453,6 +455,7 @@ abstract class WearableListenerViewModel(private val app: Application) : Android
             if (e is ApiException || e.cause is ApiException) {
                 val apiException = e.cause as? ApiException ?: e as? ApiException
                 if (apiException?.statusCode == WearableStatusCodes.TARGET_NODE_NOT_CONNECTED) {
+                    WearableNodeRegistry.invalidate()
                     mConnectionStatus = WearConnectionStatus.DISCONNECTED
 
                     _eventsFlow.tryEmit(
@@ -473,12 +476,12 @@ abstract class WearableListenerViewModel(private val app: Application) : Android
 
     protected suspend fun sendRequest(nodeID: String, path: String, data: ByteArray?): ByteArray {
         try {
-            return Wearable.getMessageClient(appContext)
-                .sendRequest(nodeID, path, data).await()
+            return WearableRpcClient.request(nodeID, path, data) ?: byteArrayOf()
         } catch (e: Exception) {
             if (e is ApiException || e.cause is ApiException) {
                 val apiException = e.cause as? ApiException ?: e as? ApiException
                 if (apiException?.statusCode == WearableStatusCodes.TARGET_NODE_NOT_CONNECTED) {
+                    WearableNodeRegistry.invalidate()
                     mConnectionStatus = WearConnectionStatus.DISCONNECTED
 
                     _eventsFlow.tryEmit(
@@ -553,9 +556,10 @@ abstract class WearableListenerViewModel(private val app: Application) : Android
         const val EXTRA_ACTION = "SimpleWear.Droid.Wear.extra.ACTION"
 
         /**
-         * Extra contains Action data (serialized class in JSON) to be passed to BroadcastReceiver or Activity
+         * Extra contains event data (serialized class in JSON) to be passed to BroadcastReceiver or Activity;
+         * actions are passed as is through [WearableEvent.action]
          *
-         * @see Action
+         * @see ConfirmationData
          */
         const val EXTRA_ACTIONDATA = "SimpleWear.Droid.Wear.extra.ACTION_DATA"
 
@@ -30,7 +30,7 @@ import com.google.android.gms.wearable.MessageEvent
 import com.google.android.gms.wearable.Node
 import com.google.android.gms.wearable.Wearable
 import com.google.android.gms.wearable.WearableListenerService
-import com.thewizrd.shared_resources.actions.Action
+import com.thewizrd.shared_resources.actions.ActionSerializer
 import com.thewizrd.shared_resources.actions.Actions
 import com.thewizrd.shared_resources.actions.AudioStreamState
 import com.thewizrd.shared_resources.actions.BatteryStatus
@@ -40,7 +40,11 @@ import com.thewizrd.shared_resources.data.AppItemData
 import com.thewizrd.shared_resources.data.CallState
 import com.thewizrd.shared_resources.helpers.InCallUIHelper
 import com.thewizrd.shared_resources.helpers.MediaHelper
+import com.thewizrd.shared_resources.helpers.MessagePathRouter
 import com.thewizrd.shared_resources.helpers.WearableHelper
+import com.thewizrd.shared_resources.helpers.WearableNodeRegistry
+import com.thewizrd.shared_resources.helpers.WearableRpcClient
+import com.thewizrd.shared_resources.helpers.WireProtocolHelper
 import com.thewizrd.shared_resources.media.MediaMetaData
 import com.thewizrd.shared_resources.media.MediaPlayerState
 import com.thewizrd.shared_resources.media.PlaybackState
@@ -56,6 +60,7 @@ import com.thewizrd.simplewear.datastore.dashboard.dashboardDataStore
 import com.thewizrd.simplewear.datastore.media.appInfoDataStore
 import com.thewizrd.simplewear.datastore.media.artworkDataStore
 import com.thewizrd.simplewear.datastore.media.mediaDataStore
+import com.thewizrd.simplewear.media.ArtworkCache
 import com.thewizrd.simplewear.media.MediaPlayerActivity
 import com.thewizrd.simplewear.preferences.Settings
 import com.thewizrd.simplewear.viewmodels.WearableListenerViewModel
@@ -86,22 +91,33 @@ class WearableDataListenerService : WearableListenerService() {
 
     private lateinit var mNotificationManager: NotificationManager
     private var mLegacyTilesEnabled: Boolean = false
+    private lateinit var mRouter: MessagePathRouter<MessageEvent>
 
     override fun onCreate() {
         super.onCreate()
 
         mNotificationManager = getSystemService(NotificationManager::class.java)
         mLegacyTilesEnabled = resources.getBoolean(R.bool.enable_unofficial_tiles)
+        mRouter = createMessageRouter()
     }
 
     override fun onMessageReceived(messageEvent: MessageEvent) {
-        when {
-            messageEvent.path == WearableHelper.StartActivityPath -> {
-                val startIntent = Intent(this, PhoneSyncActivity::class.java)
-                this.startActivity(startIntent)
+        mRouter.dispatch(
+            appLib.appScope,
+            messageEvent.path,
+            WearableRpcClient.unwrap(messageEvent)
+        )
+    }
+
+    private fun createMessageRouter(): MessagePathRouter<MessageEvent> {
+        return MessagePathRouter<MessageEvent>().apply {
+            on(WearableHelper.StartActivityPath) {
+                val ctx = this@WearableDataListenerService
+                val startIntent = Intent(ctx, PhoneSyncActivity::class.java)
+                ctx.startActivity(startIntent)
             }
 
-            messageEvent.path == WearableHelper.BtDiscoverPath -> {
+            on(WearableHelper.BtDiscoverPath) { messageEvent ->
                 startBTDiscovery()
 
                 appLib.appScope.launch(Dispatchers.Default) {
@@ -113,7 +129,14 @@ class WearableDataListenerService : WearableListenerService() {
                 }
             }
 
-            messageEvent.path == MediaHelper.MediaPlayerStateBridgePath -> {
+            on(WearableHelper.VersionPath) { messageEvent ->
+                WireProtocolHelper.onVersionPayloadReceived(
+                    messageEvent.sourceNodeId,
+                    messageEvent.data
+                )
+            }
+
+            on(MediaHelper.MediaPlayerStateBridgePath) { messageEvent ->
                 val jsonData = messageEvent.data?.bytesToString()
                 val metadata = jsonData?.let {
                     JSONParser.deserializer(it, MediaMetaData::class.java)
@@ -126,7 +149,7 @@ class WearableDataListenerService : WearableListenerService() {
                 }
             }
 
-            messageEvent.path == InCallUIHelper.CallStateBridgePath -> {
+            on(InCallUIHelper.CallStateBridgePath) { messageEvent ->
                 val enable = messageEvent.data.bytesToBool()
                 val callState = messageEvent.data.takeIf { it.size > 1 }?.let {
                     JSONParser.deserializer(
@@ -142,30 +165,19 @@ class WearableDataListenerService : WearableListenerService() {
                 }
             }
 
-            messageEvent.path == WearableHelper.AudioStatusPath || messageEvent.path == MediaHelper.MediaVolumeStatusPath -> {
-                val status = messageEvent.data?.let {
-                    JSONParser.deserializer(
-                        it.bytesToString(),
-                        AudioStreamState::class.java
-                    )
-                }
+            on(WearableHelper.AudioStatusPath) { messageEvent ->
+                onAudioStreamStateReceived(messageEvent)
+            }
 
-                appLib.appScope.launch {
-                    runCatching {
-                        Logger.debug(TAG, "saving audio state...")
-                        applicationContext.mediaDataStore.updateData { cache ->
-                            cache.copy(audioStreamState = status)
-                        }
-                    }.onFailure {
-                        Logger.error(TAG, it)
-                    }
-                }
+            on(MediaHelper.MediaVolumeStatusPath) { messageEvent ->
+                onAudioStreamStateReceived(messageEvent)
             }
 
-            messageEvent.path == MediaHelper.MediaPlayerStatePath -> {
+            on(MediaHelper.MediaPlayerStatePath) { messageEvent ->
                 val playerState = messageEvent.data?.let {
                     JSONParser.deserializer(it.bytesToString(), MediaPlayerState::class.java)
                 }
+                val trackKey = MediaHelper.getTrackKey(playerState?.mediaMetaData)
 
                 appLib.appScope.launch {
                     runCatching {
@@ -177,6 +189,13 @@ class WearableDataListenerService : WearableListenerService() {
                             cache.copy(mediaPlayerState = playerState)
                         }
 
+                        if (trackKey != null && trackKey != MediaHelper.getTrackKey(currentState?.mediaPlayerState?.mediaMetaData)) {
+                            // Show the cached artwork of the track until the phone sends it
+                            ArtworkCache.getBytes(trackKey)?.let { cachedArtwork ->
+                                appLib.context.artworkDataStore.updateData { cachedArtwork }
+                            }
+                        }
+
                         if (!mLegacyTilesEnabled && (playerState?.key != currentState?.mediaPlayerState?.key || (playerState?.playbackState == PlaybackState.PLAYING && playerState.mediaMetaData?.positionState != currentState?.mediaPlayerState?.mediaMetaData?.positionState))) {
                             MediaPlayerTileProviderService.requestTileUpdate(appLib.context)
                             NowPlayingTileProviderService.requestTileUpdate(appLib.context)
@@ -187,8 +206,10 @@ class WearableDataListenerService : WearableListenerService() {
                 }
             }
 
-            messageEvent.path == MediaHelper.MediaPlayerArtPath -> {
-                val artworkBytes = messageEvent.data
+            on(MediaHelper.MediaPlayerArtPath) { messageEvent ->
+                // The phone sends the key of the track the artwork belongs to
+                val (trackKey, artworkBytes) =
+                    MediaHelper.parseMediaPlayerArtPayload(messageEvent.data)
 
                 appLib.appScope.launch {
                     runCatching {
@@ -198,6 +219,11 @@ class WearableDataListenerService : WearableListenerService() {
                         Logger.debug(TAG, "saving art - ${artworkBytes.size}bytes...")
                         artworkCache.updateData { artworkBytes }
 
+                        // Artwork from phones which don't send the key isn't cached
+                        trackKey?.let {
+                            ArtworkCache.put(it, artworkBytes)
+                        }
+
                         if (!mLegacyTilesEnabled && !artworkBytes.contentEquals(currentState)) {
                             MediaPlayerTileProviderService.requestTileUpdate(appLib.context)
                             NowPlayingTileProviderService.requestTileUpdate(appLib.context)
@@ -208,7 +234,7 @@ class WearableDataListenerService : WearableListenerService() {
                 }
             }
 
-            messageEvent.path == MediaHelper.MediaPlayerAppInfoPath -> {
+            on(MediaHelper.MediaPlayerAppInfoPath) { messageEvent ->
                 val appInfo = messageEvent.data?.let {
                     JSONParser.deserializer(it.bytesToString(), AppItemData::class.java)
                 }
@@ -238,7 +264,7 @@ class WearableDataListenerService : WearableListenerService() {
                 }
             }
 
-            messageEvent.path.contains(WearableHelper.WifiPath) -> {
+            onPrefix(WearableHelper.WifiPath) { messageEvent ->
                 messageEvent.data?.let { data ->
                     val wifiStatus = data[0].toInt()
                     var enabled = false
@@ -277,7 +303,7 @@ class WearableDataListenerService : WearableListenerService() {
                 }
             }
 
-            messageEvent.path.contains(WearableHelper.BluetoothPath) -> {
+            onPrefix(WearableHelper.BluetoothPath) { messageEvent ->
                 messageEvent.data?.let { data ->
                     val btStatus = data[0].toInt()
                     var enabled = false
@@ -316,7 +342,7 @@ class WearableDataListenerService : WearableListenerService() {
                 }
             }
 
-            messageEvent.path == WearableHelper.BatteryPath -> {
+            on(WearableHelper.BatteryPath) { messageEvent ->
                 val status = messageEvent.data?.let {
                     JSONParser.deserializer(it.bytesToString(), BatteryStatus::class.java)
                 }
@@ -347,9 +373,50 @@ class WearableDataListenerService : WearableListenerService() {
                 }
             }
 
-            messageEvent.path == WearableHelper.ActionsPath -> {
-                val jsonData = messageEvent.data?.bytesToString()
-                val action = JSONParser.deserializer(jsonData, Action::class.java)
+            on(WearableHelper.DashboardSnapshotPath) { messageEvent ->
+                val snapshot = messageEvent.data?.let { ActionSerializer.decodeSnapshot(it) }
+                    ?: return@on
+
+                appLib.appScope.launch {
+                    runCatching {
+                        val dashboardDataStore = appLib.context.dashboardDataStore
+                        val currentState = dashboardDataStore.data.firstOrNull()
+
+                        Logger.debug(
+                            TAG,
+                            "dashboard snapshot received - ${snapshot.actions.size} actions..."
+                        )
+
+                        // Apply all changes in a single write
+                        val updatedState = dashboardDataStore.updateData { cache ->
+                            cache.copy(
+                                batteryStatus = snapshot.batteryStatus ?: cache.batteryStatus,
+                                actions = cache.actions.toMutableMap().apply {
+                                    snapshot.actions.forEach { action ->
+                                        this[action.actionType] = action
+                                    }
+                                },
+                                syncState = snapshot.syncState ?: cache.syncState
+                            )
+                        }
+
+                        if (currentState?.batteryStatus != updatedState.batteryStatus) {
+                            BatteryStatusComplicationService.requestComplicationUpdate(
+                                applicationContext
+                            )
+                        }
+
+                        if (!mLegacyTilesEnabled && (currentState?.batteryStatus != updatedState.batteryStatus || currentState?.actions != updatedState.actions)) {
+                            DashboardTileProviderService.requestTileUpdate(appLib.context)
+                        }
+                    }.onFailure {
+                        Logger.error(TAG, it)
+                    }
+                }
+            }
+
+            on(WearableHelper.ActionsPath) { messageEvent ->
+                val action = ActionSerializer.deserialize(messageEvent.data)
 
                 when (action?.actionType) {
                     Actions.WIFI,
@@ -395,6 +462,26 @@ class WearableDataListenerService : WearableListenerService() {
         }
     }
 
+    private fun onAudioStreamStateReceived(messageEvent: MessageEvent) {
+        val status = messageEvent.data?.let {
+            JSONParser.deserializer(
+                it.bytesToString(),
+                AudioStreamState::class.java
+            )
+        }
+
+        appLib.appScope.launch {
+            runCatching {
+                Logger.debug(TAG, "saving audio state...")
+                applicationContext.mediaDataStore.updateData { cache ->
+                    cache.copy(audioStreamState = status)
+                }
+            }.onFailure {
+                Logger.error(TAG, it)
+            }
+        }
+    }
+
     @SuppressLint("MissingPermission")
     private fun startBTDiscovery() {
         val btService = applicationContext.getSystemService(BluetoothManager::class.java)
@@ -462,8 +549,7 @@ class WearableDataListenerService : WearableListenerService() {
 
     protected suspend fun sendRequest(nodeID: String, path: String, data: ByteArray?): ByteArray {
         try {
-            return Wearable.getMessageClient(this@WearableDataListenerService)
-                .sendRequest(nodeID, path, data).await()
+            return WearableRpcClient.request(nodeID, path, data) ?: byteArrayOf()
         } catch (e: Exception) {
             Logger.writeLine(Log.ERROR, e)
         }
@@ -664,6 +750,8 @@ class WearableDataListenerService : WearableListenerService() {
     }
 
     override fun onCapabilityChanged(capabilityInfo: CapabilityInfo) {
+        WearableNodeRegistry.onCapabilityChanged(capabilityInfo)
+
         mPhoneNodeWithApp = pickBestNodeId(capabilityInfo.nodes)
         if (mPhoneNodeWithApp == null) {
             // Disconnect or dismiss any ongoing activity
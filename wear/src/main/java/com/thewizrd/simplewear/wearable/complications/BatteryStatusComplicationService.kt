@@ -21,7 +21,7 @@ import com.thewizrd.shared_resources.appLib
 import com.thewizrd.shared_resources.utils.Logger
 import com.thewizrd.simplewear.DashboardActivity
 import com.thewizrd.simplewear.R
-import com.thewizrd.simplewear.datastore.dashboard.dashboardDataStore
+import com.thewizrd.simplewear.datastore.TileDataCache
 import com.thewizrd.simplewear.utils.asLauncherIntent
 import com.thewizrd.simplewear.wearable.tiles.DashboardTileMessenger
 import kotlinx.coroutines.CoroutineScope
@@ -31,8 +31,6 @@ import kotlinx.coroutines.SupervisorJob
 import kotlinx.coroutines.async
 import kotlinx.coroutines.cancel
 import kotlinx.coroutines.delay
-import kotlinx.coroutines.flow.firstOrNull
-import kotlinx.coroutines.flow.map
 import kotlinx.coroutines.isActive
 import kotlinx.coroutines.launch
 
@@ -227,7 +225,7 @@ class BatteryStatusComplicationService : SuspendingComplicationDataSourceService
     }
 
     private suspend fun latestStatus(): BatteryStatus? {
-        var status = this.dashboardDataStore.data.map { it.batteryStatus }.firstOrNull()
+        var status = TileDataCache.getDashboardData().batteryStatus
 
         if (status == null) {
             Logger.debug(TAG, "No battery status available. loading from remote...")
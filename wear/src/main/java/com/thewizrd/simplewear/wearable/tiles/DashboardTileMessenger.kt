@@ -5,11 +5,11 @@ import android.util.Log
 import com.google.android.gms.common.api.ApiException
 import com.google.android.gms.wearable.CapabilityClient
 import com.google.android.gms.wearable.CapabilityInfo
-import com.google.android.gms.wearable.MessageClient
 import com.google.android.gms.wearable.Node
 import com.google.android.gms.wearable.Wearable
 import com.google.android.gms.wearable.WearableStatusCodes
 import com.thewizrd.shared_resources.actions.Action
+import com.thewizrd.shared_resources.actions.ActionSerializer
 import com.thewizrd.shared_resources.actions.Actions
 import com.thewizrd.shared_resources.actions.BatteryStatus
 import com.thewizrd.shared_resources.actions.MultiChoiceAction
@@ -17,10 +17,13 @@ import com.thewizrd.shared_resources.actions.NormalAction
 import com.thewizrd.shared_resources.actions.ToggleAction
 import com.thewizrd.shared_resources.helpers.WearConnectionStatus
 import com.thewizrd.shared_resources.helpers.WearableHelper
+import com.thewizrd.shared_resources.helpers.WearableNodeRegistry
+import com.thewizrd.shared_resources.helpers.WearableRpcClient
+import com.thewizrd.shared_resources.helpers.WireProtocolHelper
 import com.thewizrd.shared_resources.utils.JSONParser
 import com.thewizrd.shared_resources.utils.Logger
 import com.thewizrd.shared_resources.utils.bytesToString
-import com.thewizrd.shared_resources.utils.stringToBytes
+import com.thewizrd.simplewear.datastore.TileDataCache
 import com.thewizrd.simplewear.wearable.tiles.DashboardTileProviderService.Companion.requestTileUpdate
 import kotlinx.coroutines.CoroutineScope
 import kotlinx.coroutines.Dispatchers
@@ -31,9 +34,7 @@ import kotlinx.coroutines.flow.SharingStarted
 import kotlinx.coroutines.flow.stateIn
 import kotlinx.coroutines.flow.update
 import kotlinx.coroutines.launch
-import kotlinx.coroutines.suspendCancellableCoroutine
 import kotlinx.coroutines.tasks.await
-import kotlin.coroutines.resume
 
 class DashboardTileMessenger(
     private val context: Context,
@@ -69,20 +70,28 @@ class DashboardTileMessenger(
 
     suspend fun requestUpdate() {
         if (connect()) {
-            sendMessage(mPhoneNodeWithApp!!.id, WearableHelper.UpdatePath, null)
+            // Send the last applied state so the phone only sends what changed since
+            val syncState = TileDataCache.getDashboardData().syncState
+
+            sendMessage(
+                mPhoneNodeWithApp!!.id,
+                WearableHelper.UpdatePath,
+                syncState?.let { ActionSerializer.encodeSyncState(it) }
+            )
         }
     }
 
     private suspend fun requestAction(action: Action) {
-        requestAction(JSONParser.serializer(action, Action::class.java))
-    }
-
-    private suspend fun requestAction(actionJSONString: String) {
         if (connect()) {
+            val nodeID = mPhoneNodeWithApp!!.id
+
             sendMessage(
-                mPhoneNodeWithApp!!.id,
+                nodeID,
                 WearableHelper.ActionsPath,
-                actionJSONString.stringToBytes()
+                ActionSerializer.serialize(
+                    action,
+                    WireProtocolHelper.isBinaryActionsSupported(nodeID)
+                )
             )
         }
     }
@@ -227,101 +236,49 @@ class DashboardTileMessenger(
         }
     }
 
-    suspend fun processActionAsync(state: DashboardTileState, actionType: Actions): Boolean =
-        suspendCancellableCoroutine { continuation ->
-            val listener = MessageClient.OnMessageReceivedListener { event ->
-                when (actionType) {
-                    Actions.WIFI -> {
-                        if (event.path == WearableHelper.WifiPath) {
-                            if (continuation.isActive) {
-                                continuation.resume(true)
-                                return@OnMessageReceivedListener
-                            }
-                        }
-                    }
-
-                    Actions.BLUETOOTH -> {
-                        if (event.path == WearableHelper.BluetoothPath) {
-                            if (continuation.isActive) {
-                                continuation.resume(true)
-                                return@OnMessageReceivedListener
-                            }
-                        }
+    suspend fun processActionAsync(state: DashboardTileState, actionType: Actions): Boolean {
+        val response = WearableRpcClient.awaitMessage(
+            key = Pair(WearableHelper.ActionsPath, actionType),
+            matcher = { event ->
+                when (event.path) {
+                    // Full update requested if the action state is unknown
+                    WearableHelper.DashboardSnapshotPath -> true
+                    WearableHelper.WifiPath -> actionType == Actions.WIFI
+                    WearableHelper.BluetoothPath -> actionType == Actions.BLUETOOTH
+                    WearableHelper.ActionsPath -> {
+                        actionType != Actions.WIFI && actionType != Actions.BLUETOOTH &&
+                                ActionSerializer.deserialize(event.data)?.actionType == actionType
                     }
 
-                    else -> {
-                        if (event.path == WearableHelper.ActionsPath) {
-                            val jsonData: String = event.data.bytesToString()
-                            val action = JSONParser.deserializer(jsonData, Action::class.java)
-
-                            if (action?.actionType == actionType) {
-                                if (continuation.isActive) {
-                                    continuation.resume(true)
-                                    return@OnMessageReceivedListener
-                                }
-                            }
-                        }
-                    }
+                    else -> false
                 }
             }
-
-            continuation.invokeOnCancellation {
-                Wearable.getMessageClient(context)
-                    .removeListener(listener)
-            }
-
-            scope.launch {
-                Wearable.getMessageClient(context)
-                    .addListener(listener)
-                    .await()
-
-                processAction(state, actionType)
-            }
+        ) {
+            processAction(state, actionType)
         }
 
+        return response != null
+    }
+
     suspend fun requestBatteryStatusAsync(): BatteryStatus? {
-        return suspendCancellableCoroutine { continuation ->
-            val listener = MessageClient.OnMessageReceivedListener { event ->
-                when (event.path) {
-                    WearableHelper.BatteryPath -> {
-                        if (continuation.isActive) {
-                            val jsonData: String = event.data.bytesToString()
-                            val status = JSONParser.deserializer(
-                                jsonData,
-                                BatteryStatus::class.java
-                            )
-
-                            continuation.resume(status)
-                            return@OnMessageReceivedListener
-                        }
-                    }
-                }
-            }
+        if (!connect()) return null
 
-            continuation.invokeOnCancellation {
-                Wearable.getMessageClient(context)
-                    .removeListener(listener)
-            }
+        val response = runCatching {
+            WearableRpcClient.request(mPhoneNodeWithApp!!.id, WearableHelper.BatteryPath)
+        }.onFailure {
+            Logger.error(TAG, it)
+        }.getOrNull()
 
-            scope.launch {
-                Wearable.getMessageClient(context)
-                    .addListener(
-                        listener,
-                        WearableHelper.getWearDataUri("*", WearableHelper.BatteryPath),
-                        MessageClient.FILTER_LITERAL
-                    )
-                    .await()
-
-                if (connect()) {
-                    sendMessage(mPhoneNodeWithApp!!.id, WearableHelper.BatteryPath, null)
-                }
-            }
+        return response?.let {
+            JSONParser.deserializer(it.bytesToString(), BatteryStatus::class.java)
         }
     }
 
     override fun onCapabilityChanged(capabilityInfo: CapabilityInfo) {
+        WearableNodeRegistry.onCapabilityChanged(capabilityInfo)
+
         scope.launch {
-            val connectedNodes = getConnectedNodes()
+            val connectedNodes = WearableNodeRegistry.getConnectedNodes()
             mPhoneNodeWithApp = WearableHelper.pickBestNodeId(capabilityInfo.nodes)
             mPhoneNodeWithApp?.let { node ->
                 if (node.isNearby && connectedNodes.any { it.id == node.id }) {
@@ -363,7 +320,7 @@ class DashboardTileMessenger(
     }
 
     suspend fun checkConnectionStatus(refreshTile: Boolean = false) {
-        val connectedNodes = getConnectedNodes()
+        val connectedNodes = WearableNodeRegistry.getConnectedNodes()
         mPhoneNodeWithApp = checkIfPhoneHasApp()
 
         mPhoneNodeWithApp?.let { node ->
@@ -405,57 +362,25 @@ class DashboardTileMessenger(
     }
 
     private suspend fun checkIfPhoneHasApp(): Node? {
-        var node: Node? = null
-
-        try {
-            val capabilityInfo = Wearable.getCapabilityClient(context)
-                .getCapability(
-                    WearableHelper.CAPABILITY_PHONE_APP,
-                    CapabilityClient.FILTER_ALL
-                )
-                .await()
-            node = pickBestNodeId(capabilityInfo.nodes)
-        } catch (e: Exception) {
-            Logger.writeLine(Log.ERROR, e)
-        }
-
-        return node
+        return WearableNodeRegistry.getPhoneNode()
     }
 
     suspend fun connect(): Boolean {
         if (mPhoneNodeWithApp == null)
             mPhoneNodeWithApp = checkIfPhoneHasApp()
 
-        return mPhoneNodeWithApp != null
-    }
-
-    /*
-     * There should only ever be one phone in a node set (much less w/ the correct capability), so
-     * I am just grabbing the first one (which should be the only one).
-    */
-    private fun pickBestNodeId(nodes: Collection<Node>): Node? {
-        var bestNode: Node? = null
-
-        // Find a nearby node/phone or pick one arbitrarily. Realistically, there is only one phone.
-        for (node in nodes) {
-            if (node.isNearby) {
-                return node
+        mPhoneNodeWithApp?.let { node ->
+            if (!WireProtocolHelper.isNegotiated(node.id)) {
+                // Advertise supported wire codecs; response is handled by WearableDataListenerService
+                sendMessage(
+                    node.id,
+                    WearableHelper.VersionPath,
+                    WireProtocolHelper.createVersionPayload()
+                )
             }
-            bestNode = node
         }
-        return bestNode
-    }
 
-    private suspend fun getConnectedNodes(): List<Node> {
-        try {
-            return Wearable.getNodeClient(context)
-                .connectedNodes
-                .await()
-        } catch (e: Exception) {
-            Logger.writeLine(Log.ERROR, e)
-        }
-
-        return emptyList()
+        return mPhoneNodeWithApp != null
     }
 
     private suspend fun sendMessage(nodeID: String, path: String, data: ByteArray?) {
@@ -467,6 +392,7 @@ class DashboardTileMessenger(
             if (e is ApiException || e.cause is ApiException) {
                 val apiException = e.cause as? ApiException ?: e as? ApiException
                 if (apiException?.statusCode == WearableStatusCodes.TARGET_NODE_NOT_CONNECTED) {
+                    WearableNodeRegistry.invalidate()
                     _connectionState.update { WearConnectionStatus.DISCONNECTED }
 
                     if (!isLegacyTile) {
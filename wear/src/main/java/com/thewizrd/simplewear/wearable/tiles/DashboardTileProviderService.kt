@@ -22,7 +22,7 @@ import com.thewizrd.shared_resources.appLib
 import com.thewizrd.shared_resources.utils.AnalyticsLogger
 import com.thewizrd.shared_resources.utils.Logger
 import com.thewizrd.simplewear.PhoneSyncActivity
-import com.thewizrd.simplewear.datastore.dashboard.dashboardDataStore
+import com.thewizrd.simplewear.datastore.TileDataCache
 import com.thewizrd.simplewear.preferences.DashboardTileUtils.DEFAULT_TILES
 import com.thewizrd.simplewear.preferences.Settings
 import com.thewizrd.simplewear.wearable.tiles.DashboardTileRenderer.Companion.ID_OPENONPHONE
@@ -36,6 +36,7 @@ import kotlinx.coroutines.flow.collectLatest
 import kotlinx.coroutines.flow.combine
 import kotlinx.coroutines.flow.filterNotNull
 import kotlinx.coroutines.flow.first
+import kotlinx.coroutines.flow.onStart
 import kotlinx.coroutines.flow.stateIn
 import kotlinx.coroutines.isActive
 import kotlinx.coroutines.launch
@@ -86,22 +87,28 @@ class DashboardTileProviderService : SuspendingTileService() {
         tileRenderer = DashboardTileRenderer(this)
 
         tileMessenger.register()
-        tileStateFlow = this.dashboardDataStore.data
-            .combine(tileMessenger.connectionState) { cache, connectionStatus ->
-                val userActions = Settings.getDashboardTileConfig() ?: DEFAULT_TILES
-
-                DashboardTileState(
-                    connectionStatus = connectionStatus,
-                    batteryStatus = cache.batteryStatus,
-                    actions = userActions.associateWith {
-                        cache.actions.run {
-                            // Add NormalActions
-                            this.plus(Actions.LOCKSCREEN to NormalAction(Actions.LOCKSCREEN))
-                        }[it]
-                    },
-                    showBatteryStatus = Settings.isShowTileBatStatus()
-                )
-            }
+        tileStateFlow = combine(
+            TileDataCache.dashboardData,
+            tileMessenger.connectionState,
+            // Config changes need a new layout; toggle changes only update the dynamic state
+            // (see DashboardTileRenderer)
+            Settings.getDashboardTileConfigFlow()
+                .onStart { emit(Settings.getDashboardTileConfig()) }
+        ) { cache, connectionStatus, tileConfig ->
+            val userActions = tileConfig ?: DEFAULT_TILES
+
+            DashboardTileState(
+                connectionStatus = connectionStatus,
+                batteryStatus = cache.batteryStatus,
+                actions = userActions.associateWith {
+                    cache.actions.run {
+                        // Add NormalActions
+                        this.plus(Actions.LOCKSCREEN to NormalAction(Actions.LOCKSCREEN))
+                    }[it]
+                },
+                showBatteryStatus = Settings.isShowTileBatStatus()
+            )
+        }
             .stateIn(
                 lifecycleScope,
                 started = SharingStarted.WhileSubscribed(2000),
@@ -20,7 +20,9 @@ import com.thewizrd.shared_resources.utils.Logger
 import com.thewizrd.simplewear.PhoneSyncActivity
 import com.thewizrd.simplewear.R
 import com.thewizrd.simplewear.wearable.tiles.layouts.DashboardTileLayout
+import com.thewizrd.simplewear.wearable.tiles.layouts.DashboardTileLayoutKey
 import com.thewizrd.simplewear.wearable.tiles.layouts.LoadingTileLayout
+import com.thewizrd.simplewear.wearable.tiles.layouts.getLayoutKey
 
 @OptIn(ExperimentalHorologistApi::class)
 class DashboardTileRenderer(context: Context, debugResourceMode: Boolean = false) :
@@ -69,6 +71,11 @@ class DashboardTileRenderer(context: Context, debugResourceMode: Boolean = false
         }
     }
 
+    private val resourceVersion = TileResourceVersion()
+
+    private var lastLayoutKey: DashboardTileLayoutKey? = null
+    private var lastLayout: LayoutElementBuilders.LayoutElement? = null
+
     override fun createState(state: DashboardTileState): StateBuilders.State {
         return StateBuilders.State.Builder()
             .apply {
@@ -88,6 +95,11 @@ class DashboardTileRenderer(context: Context, debugResourceMode: Boolean = false
         state: DashboardTileState,
         deviceParameters: DeviceParametersBuilders.DeviceParameters
     ): LayoutElementBuilders.LayoutElement {
+        // Reuse the layout if only the dynamic state changed; the tile still carries the
+        // full layout, but it isn't rebuilt and the toggles are redrawn from the state
+        val layoutKey = state.getLayoutKey(deviceParameters)
+        lastLayout?.takeIf { layoutKey == lastLayoutKey }?.let { return it }
+
         return Box.Builder()
             .setWidth(expand())
             .setHeight(expand())
@@ -114,6 +126,10 @@ class DashboardTileRenderer(context: Context, debugResourceMode: Boolean = false
                 }
             )
             .build()
+            .also {
+                lastLayoutKey = layoutKey
+                lastLayout = it
+            }
     }
 
     override fun ResourceBuilders.Resources.Builder.produceRequestedResources(
@@ -173,4 +189,9 @@ class DashboardTileRenderer(context: Context, debugResourceMode: Boolean = false
             }
         }
     }
+
+    override fun getResourcesVersionForTileState(state: DashboardTileState): String {
+        // The dashboard has no inline images; its resources only change with the app
+        return resourceVersion.getVersion()
+    }
 }
\ No newline at end of file
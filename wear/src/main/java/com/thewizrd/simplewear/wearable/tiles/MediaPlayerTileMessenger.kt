@@ -14,7 +14,10 @@ import com.thewizrd.shared_resources.actions.AudioStreamState
 import com.thewizrd.shared_resources.helpers.MediaHelper
 import com.thewizrd.shared_resources.helpers.WearConnectionStatus
 import com.thewizrd.shared_resources.helpers.WearableHelper
+import com.thewizrd.shared_resources.helpers.WearableNodeRegistry
+import com.thewizrd.shared_resources.helpers.WearableRpcClient
 import com.thewizrd.shared_resources.helpers.WearableHelper.pickBestNodeId
+import com.thewizrd.shared_resources.helpers.WireProtocolHelper
 import com.thewizrd.shared_resources.utils.JSONParser
 import com.thewizrd.shared_resources.utils.Logger
 import com.thewizrd.shared_resources.utils.booleanToBytes
@@ -24,19 +27,13 @@ import com.thewizrd.simplewear.wearable.tiles.MediaPlayerTileProviderService.Com
 import kotlinx.coroutines.CoroutineScope
 import kotlinx.coroutines.Dispatchers
 import kotlinx.coroutines.SupervisorJob
-import kotlinx.coroutines.async
-import kotlinx.coroutines.awaitAll
 import kotlinx.coroutines.cancel
-import kotlinx.coroutines.delay
 import kotlinx.coroutines.flow.MutableStateFlow
 import kotlinx.coroutines.flow.SharingStarted
 import kotlinx.coroutines.flow.stateIn
 import kotlinx.coroutines.flow.update
-import kotlinx.coroutines.isActive
 import kotlinx.coroutines.launch
-import kotlinx.coroutines.suspendCancellableCoroutine
 import kotlinx.coroutines.tasks.await
-import kotlin.coroutines.resume
 
 class MediaPlayerTileMessenger(
     private val context: Context,
@@ -45,6 +42,8 @@ class MediaPlayerTileMessenger(
     MessageClient.OnMessageReceivedListener, CapabilityClient.OnCapabilityChangedListener {
     companion object {
         private const val TAG = "MediaPlayerTileMessenger"
+
+        private const val NEGOTIATE_TIMEOUT = 2000L
     }
 
     enum class PlayerAction {
@@ -111,8 +110,10 @@ class MediaPlayerTileMessenger(
     }
 
     override fun onCapabilityChanged(capabilityInfo: CapabilityInfo) {
+        WearableNodeRegistry.onCapabilityChanged(capabilityInfo)
+
         scope.launch {
-            val connectedNodes = getConnectedNodes()
+            val connectedNodes = WearableNodeRegistry.getConnectedNodes()
             mPhoneNodeWithApp = pickBestNodeId(capabilityInfo.nodes)
 
             mPhoneNodeWithApp?.let { node ->
@@ -159,7 +160,7 @@ class MediaPlayerTileMessenger(
             sendMessage(
                 mPhoneNodeWithApp!!.id,
                 MediaHelper.MediaPlayerConnectPath,
-                true.booleanToBytes() // isAutoLaunch
+                createPlayerConnectPayload(mPhoneNodeWithApp!!.id)
             )
         }
     }
@@ -181,7 +182,7 @@ class MediaPlayerTileMessenger(
             sendMessage(
                 mPhoneNodeWithApp!!.id,
                 MediaHelper.MediaPlayerConnectPath,
-                true.booleanToBytes()
+                createPlayerConnectPayload(mPhoneNodeWithApp!!.id)
             )
 
             when (action) {
@@ -225,136 +226,47 @@ class MediaPlayerTileMessenger(
     }
 
     suspend fun updatePlayerStateFromRemote() {
-        val stateListenerJob = scope.async {
-            var complete = false
-
-            val listener = MessageClient.OnMessageReceivedListener { event ->
-                if (event.path == MediaHelper.MediaPlayerStatePath) {
-                    this@MediaPlayerTileMessenger.onMessageReceived(event)
-                    complete = true
-                }
-            }
-
-            Wearable.getMessageClient(context)
-                .addListener(
-                    listener,
-                    WearableHelper.getWearDataUri("*", MediaHelper.MediaPlayerStatePath),
-                    MessageClient.FILTER_LITERAL
-                )
-                .await()
-
-            while (isActive && !complete) {
-                delay(250)
-            }
-
-            Wearable.getMessageClient(context).removeListener(listener)
-        }
-
-        val artListenerJob = scope.async {
-            var complete = false
-
-            val listener = MessageClient.OnMessageReceivedListener { event ->
-                if (event.path == MediaHelper.MediaPlayerArtPath) {
-                    this@MediaPlayerTileMessenger.onMessageReceived(event)
-                    complete = true
-                }
-            }
-
-            Wearable.getMessageClient(context)
-                .addListener(
-                    listener,
-                    WearableHelper.getWearDataUri("*", MediaHelper.MediaPlayerArtPath),
-                    MessageClient.FILTER_LITERAL
-                )
-                .await()
-
-            while (isActive && !complete) {
-                delay(250)
-            }
-
-            Wearable.getMessageClient(context).removeListener(listener)
-        }
-
-        val updateRequestJob by lazy {
-            scope.async {
+        var stateResponse: MessageEvent? = null
+
+        // Artwork is sent along with the player state; await both
+        val artResponse = WearableRpcClient.awaitMessage(
+            matcher = { event -> event.path == MediaHelper.MediaPlayerArtPath }
+        ) {
+            stateResponse = WearableRpcClient.awaitMessage(
+                key = MediaHelper.MediaPlayerStatePath,
+                matcher = { event -> event.path == MediaHelper.MediaPlayerStatePath }
+            ) {
                 requestUpdatePlayerState()
             }
         }
 
-        awaitAll(stateListenerJob, artListenerJob, updateRequestJob)
+        stateResponse?.let { onMessageReceived(it) }
+        artResponse?.let { onMessageReceived(it) }
     }
 
-    suspend fun requestPlayerActionAsync(action: PlayerAction): Boolean =
-        suspendCancellableCoroutine { continuation ->
-            val listener = when (action) {
-                PlayerAction.VOL_UP, PlayerAction.VOL_DOWN -> {
-                    object : MessageClient.OnMessageReceivedListener {
-                        override fun onMessageReceived(event: MessageEvent) {
-                            if (event.path == WearableHelper.AudioStatusPath || event.path == MediaHelper.MediaVolumeStatusPath) {
-                                this@MediaPlayerTileMessenger.onMessageReceived(event)
-                                if (continuation.isActive) {
-                                    continuation.resume(true)
-                                    Wearable.getMessageClient(context).removeListener(this)
-                                }
-                            }
-                        }
+    suspend fun requestPlayerActionAsync(action: PlayerAction): Boolean {
+        val response = WearableRpcClient.awaitMessage(
+            key = action,
+            matcher = { event ->
+                when (action) {
+                    PlayerAction.VOL_UP, PlayerAction.VOL_DOWN -> {
+                        event.path == WearableHelper.AudioStatusPath || event.path == MediaHelper.MediaVolumeStatusPath
                     }
-                }
 
-                else -> {
-                    object : MessageClient.OnMessageReceivedListener {
-                        override fun onMessageReceived(event: MessageEvent) {
-                            if (event.path == MediaHelper.MediaPlayerStatePath) {
-                                this@MediaPlayerTileMessenger.onMessageReceived(event)
-                                if (continuation.isActive) {
-                                    continuation.resume(true)
-                                    Wearable.getMessageClient(context).removeListener(this)
-                                }
-                            }
-                        }
-                    }
+                    else -> event.path == MediaHelper.MediaPlayerStatePath
                 }
             }
+        ) {
+            requestPlayerAction(action)
+        }
 
-            continuation.invokeOnCancellation {
-                Wearable.getMessageClient(context).removeListener(listener)
-            }
+        response?.let { onMessageReceived(it) }
 
-            scope.launch {
-                Wearable.getMessageClient(context)
-                    .run {
-                        when (action) {
-                            PlayerAction.VOL_UP, PlayerAction.VOL_DOWN -> {
-                                addListener(
-                                    listener,
-                                    WearableHelper.getWearDataUri(
-                                        "*",
-                                        MediaHelper.MediaVolumeStatusPath
-                                    ),
-                                    MessageClient.FILTER_LITERAL
-                                )
-                            }
-
-                            else -> {
-                                addListener(
-                                    listener,
-                                    WearableHelper.getWearDataUri(
-                                        "*",
-                                        MediaHelper.MediaPlayerStatePath
-                                    ),
-                                    MessageClient.FILTER_LITERAL
-                                )
-                            }
-                        }
-                    }
-                    .await()
-
-                requestPlayerAction(action)
-            }
-        }
+        return response != null
+    }
 
     suspend fun checkConnectionStatus(refreshTile: Boolean = false) {
-        val connectedNodes = getConnectedNodes()
+        val connectedNodes = WearableNodeRegistry.getConnectedNodes()
         mPhoneNodeWithApp = checkIfPhoneHasApp()
 
         mPhoneNodeWithApp?.let { node ->
@@ -396,21 +308,7 @@ class MediaPlayerTileMessenger(
     }
 
     private suspend fun checkIfPhoneHasApp(): Node? {
-        var node: Node? = null
-
-        try {
-            val capabilityInfo = Wearable.getCapabilityClient(context)
-                .getCapability(
-                    WearableHelper.CAPABILITY_PHONE_APP,
-                    CapabilityClient.FILTER_ALL
-                )
-                .await()
-            node = pickBestNodeId(capabilityInfo.nodes)
-        } catch (e: Exception) {
-            Logger.error(TAG, e)
-        }
-
-        return node
+        return WearableNodeRegistry.getPhoneNode()
     }
 
     suspend fun connect(): Boolean {
@@ -420,16 +318,32 @@ class MediaPlayerTileMessenger(
         return mPhoneNodeWithApp != null
     }
 
-    suspend fun getConnectedNodes(): List<Node> {
-        try {
-            return Wearable.getNodeClient(context)
-                .connectedNodes
-                .await()
-        } catch (e: Exception) {
-            Logger.error(TAG, e)
+    /**
+     * The artwork spec is only included once the protocol version of the phone is known;
+     * the tile may run before any other component negotiated it, so negotiate here first.
+     * If the phone doesn't respond in time, the payload is sent without the spec
+     */
+    private suspend fun createPlayerConnectPayload(nodeID: String): ByteArray? {
+        if (!WireProtocolHelper.isNegotiated(nodeID)) {
+            runCatching {
+                WearableRpcClient.request(
+                    nodeID,
+                    WearableHelper.VersionPath,
+                    WireProtocolHelper.createVersionPayload(),
+                    NEGOTIATE_TIMEOUT
+                )
+            }.onSuccess { response ->
+                WireProtocolHelper.onVersionPayloadReceived(nodeID, response)
+            }.onFailure {
+                Logger.error(TAG, it, "unable to negotiate protocol version")
+            }
         }
 
-        return emptyList()
+        return MediaHelper.createMediaPlayerConnectPayload(
+            nodeID,
+            true.booleanToBytes(), // isAutoLaunch
+            MediaHelper.getMediaArtworkSpec(context)
+        )
     }
 
     private suspend fun sendMessage(nodeID: String, path: String, data: ByteArray?) {
@@ -441,6 +355,7 @@ class MediaPlayerTileMessenger(
             if (e is ApiException || e.cause is ApiException) {
                 val apiException = e.cause as? ApiException ?: e as? ApiException
                 if (apiException?.statusCode == WearableStatusCodes.TARGET_NODE_NOT_CONNECTED) {
+                    WearableNodeRegistry.invalidate()
                     _connectionState.update { WearConnectionStatus.DISCONNECTED }
 
                     if (!isLegacyTile) {
@@ -53,6 +53,8 @@ class MediaPlayerTileRenderer(context: Context, debugResourceMode: Boolean = fal
         }
     }
 
+    private val resourceVersion = TileResourceVersion()
+
     override fun renderTile(
         state: MediaPlayerTileState,
         deviceParameters: DeviceParametersBuilders.DeviceParameters
@@ -143,7 +145,8 @@ class MediaPlayerTileRenderer(context: Context, debugResourceMode: Boolean = fal
     }
 
     override fun getResourcesVersionForTileState(state: MediaPlayerTileState): String {
-        return "${state.title}:${state.artist}:${state.artwork?.size}"
+        // Only the inline images change the resources; text updates reuse them
+        return resourceVersion.getVersion(state.artwork, state.appIcon)
     }
 
     override fun getFreshnessIntervalMillis(state: MediaPlayerTileState): Long {
@@ -19,9 +19,7 @@ import com.thewizrd.shared_resources.appLib
 import com.thewizrd.shared_resources.utils.AnalyticsLogger
 import com.thewizrd.shared_resources.utils.Logger
 import com.thewizrd.simplewear.PhoneSyncActivity
-import com.thewizrd.simplewear.datastore.media.appInfoDataStore
-import com.thewizrd.simplewear.datastore.media.artworkDataStore
-import com.thewizrd.simplewear.datastore.media.mediaDataStore
+import com.thewizrd.simplewear.datastore.TileDataCache
 import com.thewizrd.simplewear.wearable.tiles.MediaPlayerTileMessenger.PlayerAction
 import com.thewizrd.simplewear.wearable.tiles.NowPlayingTileRenderer.Companion.ID_OPENONPHONE
 import com.thewizrd.simplewear.wearable.tiles.NowPlayingTileRenderer.Companion.ID_PHONEDISCONNECTED
@@ -86,9 +84,9 @@ class NowPlayingTileProviderService : SuspendingTileService() {
 
         tileMessenger.register()
         tileStateFlow = combine(
-            this.mediaDataStore.data,
-            this.artworkDataStore.data,
-            this.appInfoDataStore.data,
+            TileDataCache.mediaData,
+            TileDataCache.artwork,
+            TileDataCache.appInfo,
             tileMessenger.connectionState
         ) { mediaCache, artwork, appInfo, connectionStatus ->
             MediaPlayerTileState(
@@ -50,6 +50,8 @@ class NowPlayingTileRenderer(context: Context, debugResourceMode: Boolean = fals
         }
     }
 
+    private val resourceVersion = TileResourceVersion()
+
     override fun renderTile(
         state: MediaPlayerTileState,
         deviceParameters: DeviceParametersBuilders.DeviceParameters
@@ -146,7 +148,8 @@ class NowPlayingTileRenderer(context: Context, debugResourceMode: Boolean = fals
     }
 
     override fun getResourcesVersionForTileState(state: MediaPlayerTileState): String {
-        return "${state.title}:${state.artist}:${state.artwork?.size}"
+        // Only the inline images change the resources; text updates reuse them
+        return resourceVersion.getVersion(state.artwork, state.appIcon)
     }
 
     override fun getFreshnessIntervalMillis(state: MediaPlayerTileState): Long {
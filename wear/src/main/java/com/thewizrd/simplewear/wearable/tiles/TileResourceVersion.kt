@@ -0,0 +1,44 @@
+package com.thewizrd.simplewear.wearable.tiles
+
+import com.thewizrd.shared_resources.utils.HashUtils
+import com.thewizrd.simplewear.BuildConfig
+
+/**
+ * Resource version of a tile, made up of the app version and content hashes of the inline images
+ *
+ * Drawable resources only change with the app, so a tile keeps its version (and the tile host
+ * its resources) until the images it inlines change. The hash of each image is kept until a
+ * different image is passed in; tile states rendered from the same cache share their image
+ * arrays, so an image is only hashed once
+ */
+internal class TileResourceVersion {
+    private class ImageHash(val data: ByteArray, val hash: String)
+
+    private val imageHashes = HashMap<Int, ImageHash>()
+
+    /**
+     * @param images The inline images of the tile, in a fixed order
+     */
+    @Synchronized
+    fun getVersion(vararg images: ByteArray?): String {
+        return buildString {
+            append(BuildConfig.VERSION_CODE)
+            images.forEachIndexed { index, image ->
+                append(':').append(getImageHash(index, image))
+            }
+        }
+    }
+
+    private fun getImageHash(index: Int, image: ByteArray?): String {
+        if (image == null || image.isEmpty()) return ""
+
+        imageHashes[index]?.let {
+            if (it.data === image || it.data.contentEquals(image)) return it.hash
+        }
+
+        val hash = HashUtils.sha1Hex(image)
+
+        imageHashes[index] = ImageHash(image, hash)
+        return hash
+    }
+}
@@ -11,6 +11,7 @@ import androidx.wear.protolayout.DeviceParametersBuilders.DeviceParameters
 import androidx.wear.protolayout.DimensionBuilders.dp
 import androidx.wear.protolayout.DimensionBuilders.expand
 import androidx.wear.protolayout.DimensionBuilders.sp
+import androidx.wear.protolayout.LayoutElementBuilders.Box
 import androidx.wear.protolayout.LayoutElementBuilders.Column
 import androidx.wear.protolayout.LayoutElementBuilders.FONT_VARIANT_BODY
 import androidx.wear.protolayout.LayoutElementBuilders.FONT_WEIGHT_MEDIUM
@@ -21,7 +22,9 @@ import androidx.wear.protolayout.LayoutElementBuilders.SpanImage
 import androidx.wear.protolayout.LayoutElementBuilders.SpanText
 import androidx.wear.protolayout.LayoutElementBuilders.Spannable
 import androidx.wear.protolayout.LayoutElementBuilders.TEXT_OVERFLOW_MARQUEE
+import androidx.wear.protolayout.ModifiersBuilders
 import androidx.wear.protolayout.StateBuilders
+import androidx.wear.protolayout.TypeBuilders
 import androidx.wear.protolayout.expression.AppDataKey
 import androidx.wear.protolayout.expression.DynamicBuilders
 import androidx.wear.protolayout.expression.DynamicDataBuilders
@@ -47,6 +50,7 @@ import androidx.wear.protolayout.types.LayoutColor
 import androidx.wear.protolayout.types.layoutString
 import com.google.android.horologist.annotations.ExperimentalHorologistApi
 import com.google.android.horologist.compose.tools.tileRendererPreviewData
+import com.thewizrd.shared_resources.actions.Action
 import com.thewizrd.shared_resources.actions.Actions
 import com.thewizrd.shared_resources.actions.BatteryStatus
 import com.thewizrd.shared_resources.actions.DNDChoice
@@ -251,28 +255,38 @@ private fun MaterialScope.ActionButton(
     state: DashboardTileState,
     action: Actions
 ): LayoutElement {
-    val isEnabled = state.isActionEnabled(action)
+    // Toggles are drawn from the dynamic state (see DashboardTileRenderer.createState), so the
+    // layout stays the same when they change
+    val toggleResourceIds = getToggleResourceIds(state, action)
+        ?.takeIf { deviceConfiguration.supportsVisibilityModifier() }
+    val isEnabled = toggleResourceIds == null && state.isActionEnabled(action)
 
     return iconButton(
         onClick = clickable(
             id = action.name,
             action = ActionBuilders.LoadAction.Builder()
-                .setRequestState(
-                    StateBuilders.State.Builder()
-                        .addKeyToValueMapping(
-                            AppDataKey(action.name),
-                            DynamicDataBuilders.DynamicDataValue.fromBool(
-                                state.isNextActionEnabled(action)
-                            )
+                .apply {
+                    if (toggleResourceIds == null) {
+                        setRequestState(
+                            StateBuilders.State.Builder()
+                                .addKeyToValueMapping(
+                                    AppDataKey(action.name),
+                                    DynamicDataBuilders.DynamicDataValue.fromBool(
+                                        state.isNextActionEnabled(action)
+                                    )
+                                )
+                                .build()
                         )
-                        .build()
-                )
+                    }
+                }
                 .build()
         ),
         width = expand(),
         height = expand(),
         iconContent = {
-            icon(protoLayoutResourceId = getResourceIdForAction(state, action))
+            toggleResourceIds?.let { (onResourceId, offResourceId) ->
+                ToggleIcon(action, onResourceId, offResourceId)
+            } ?: icon(protoLayoutResourceId = getResourceIdForAction(state, action))
         },
         colors = filledTonalButtonColors().copy(
             containerColor = LayoutColor(
@@ -307,6 +321,124 @@ private fun MaterialScope.ActionButton(
     )
 }
 
+/**
+ * Shows the icon matching the dynamic state of the action
+ */
+private fun MaterialScope.ToggleIcon(
+    action: Actions,
+    onResourceId: String,
+    offResourceId: String
+): LayoutElement {
+    if (onResourceId == offResourceId) {
+        return icon(protoLayoutResourceId = onResourceId)
+    }
+
+    val isEnabled = DynamicBuilders.DynamicBool.from(AppDataKey(action.name))
+
+    return Box.Builder()
+        .addContent(
+            VisibleWhen(isEnabled, icon(protoLayoutResourceId = onResourceId), false)
+        )
+        .addContent(
+            VisibleWhen(isEnabled.negate(), icon(protoLayoutResourceId = offResourceId), true)
+        )
+        .build()
+}
+
+private fun VisibleWhen(
+    condition: DynamicBuilders.DynamicBool,
+    content: LayoutElement,
+    staticValue: Boolean
+): LayoutElement {
+    return Box.Builder()
+        .setModifiers(
+            ModifiersBuilders.Modifiers.Builder()
+                .setVisible(
+                    TypeBuilders.BoolProp.Builder(staticValue)
+                        .setDynamicValue(condition)
+                        .build()
+                )
+                .build()
+        )
+        .addContent(content)
+        .build()
+}
+
+/**
+ * Icons (enabled to disabled) of actions whose button only depends on whether the action
+ * is enabled; null if the button depends on more than that
+ */
+private fun getToggleResourceIds(state: DashboardTileState, action: Actions): Pair<String, String>? {
+    return when (action) {
+        Actions.WIFI -> ID_WIFI_ON to ID_WIFI_OFF
+        Actions.BLUETOOTH -> ID_BT_ON to ID_BT_OFF
+        Actions.MOBILEDATA -> ID_DATA_ON to ID_DATA_OFF
+        Actions.NFC -> ID_NFC_ON to ID_NFC_OFF
+        Actions.TORCH -> ID_FLASHLIGHT to ID_FLASHLIGHT
+        Actions.HOTSPOT -> ID_HOTSPOT to ID_HOTSPOT
+        Actions.BATTERYSAVER -> ID_BATTERY_SAVER to ID_BATTERY_SAVER
+        // Multi-choice actions have an icon per choice
+        Actions.LOCATION -> {
+            if (state.getAction(action) !is MultiChoiceAction) {
+                ID_LOCATION_HIGHACC to ID_LOCATION_OFF
+            } else {
+                null
+            }
+        }
+
+        Actions.DONOTDISTURB -> {
+            if (state.getAction(action) !is MultiChoiceAction) {
+                ID_DND_PRIORITY to ID_DND_OFF
+            } else {
+                null
+            }
+        }
+
+        else -> null
+    }
+}
+
+/**
+ * Everything the layout is built from. Actions which are drawn from the dynamic state
+ * (see [getToggleResourceIds]) are left out, so a new layout is only needed when something
+ * else changes, such as the tile config
+ */
+internal data class DashboardTileLayoutKey(
+    val screenWidthDp: Int,
+    val screenHeightDp: Int,
+    val screenDensity: Float,
+    val fontScale: Float,
+    val screenShape: Int,
+    val rendererSchemaVersion: Pair<Int, Int>,
+    val connectionStatus: WearConnectionStatus,
+    val batteryStatus: BatteryStatus?,
+    val showBatteryStatus: Boolean,
+    val actions: List<Pair<Actions, Action?>>
+)
+
+internal fun DashboardTileState.getLayoutKey(deviceParameters: DeviceParameters): DashboardTileLayoutKey {
+    val isDynamic = deviceParameters.supportsVisibilityModifier()
+
+    return DashboardTileLayoutKey(
+        screenWidthDp = deviceParameters.screenWidthDp,
+        screenHeightDp = deviceParameters.screenHeightDp,
+        screenDensity = deviceParameters.screenDensity,
+        fontScale = deviceParameters.fontScale,
+        screenShape = deviceParameters.screenShape,
+        rendererSchemaVersion = deviceParameters.rendererSchemaVersion.run { major to minor },
+        connectionStatus = connectionStatus,
+        batteryStatus = batteryStatus,
+        showBatteryStatus = showBatteryStatus,
+        actions = actions.map { (actionType, action) ->
+            if (isDynamic && getToggleResourceIds(this, actionType) != null) {
+                actionType to null
+            } else {
+                actionType to action
+            }
+        }
+    )
+}
+
 private fun getResourceIdForAction(state: DashboardTileState, action: Actions): String {
     return when (action) {
         Actions.WIFI -> {
@@ -22,6 +22,15 @@ fun DeviceParameters.supportsDynamicValue(): Boolean {
     return this.rendererSchemaVersion >= supportedVersion
 }
 
+fun DeviceParameters.supportsVisibilityModifier(): Boolean {
+    // @RequiresSchemaVersion(major = 1, minor = 300)
+    val supportedVersion = VersionInfo.Builder()
+        .setMajor(1).setMinor(300)
+        .build()
+
+    return this.rendererSchemaVersion >= supportedVersion
+}
+
 fun DeviceParameters.squareNotSupported(): Boolean {
     // @RequiresSchemaVersion(major = 1, minor = 400)
     val supportedVersion = VersionInfo.Builder()
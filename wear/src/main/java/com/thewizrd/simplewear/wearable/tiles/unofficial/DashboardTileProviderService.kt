@@ -17,7 +17,7 @@ import com.thewizrd.shared_resources.utils.AnalyticsLogger
 import com.thewizrd.shared_resources.utils.Logger
 import com.thewizrd.simplewear.PhoneSyncActivity
 import com.thewizrd.simplewear.R
-import com.thewizrd.simplewear.datastore.dashboard.dashboardDataStore
+import com.thewizrd.simplewear.datastore.TileDataCache
 import com.thewizrd.simplewear.preferences.DashboardTileUtils.DEFAULT_TILES
 import com.thewizrd.simplewear.preferences.DashboardTileUtils.MAX_BUTTONS
 import com.thewizrd.simplewear.preferences.Settings
@@ -60,7 +60,7 @@ class DashboardTileProviderService : TileProviderService() {
         tileMessenger = DashboardTileMessenger(this, isLegacyTile = true)
         tileMessenger.register()
 
-        tileStateFlow = this.dashboardDataStore.data
+        tileStateFlow = TileDataCache.dashboardData
             .combine(tileMessenger.connectionState) { cache, connectionStatus ->
                 val userActions = Settings.getDashboardTileConfig() ?: DEFAULT_TILES
 
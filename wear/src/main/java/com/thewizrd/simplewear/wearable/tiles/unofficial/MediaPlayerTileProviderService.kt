@@ -16,9 +16,7 @@ import com.thewizrd.shared_resources.utils.AnalyticsLogger
 import com.thewizrd.shared_resources.utils.ImageUtils.toBitmap
 import com.thewizrd.shared_resources.utils.Logger
 import com.thewizrd.simplewear.R
-import com.thewizrd.simplewear.datastore.media.appInfoDataStore
-import com.thewizrd.simplewear.datastore.media.artworkDataStore
-import com.thewizrd.simplewear.datastore.media.mediaDataStore
+import com.thewizrd.simplewear.datastore.TileDataCache
 import com.thewizrd.simplewear.media.MediaPlayerActivity
 import com.thewizrd.simplewear.wearable.tiles.MediaPlayerTileMessenger
 import com.thewizrd.simplewear.wearable.tiles.MediaPlayerTileMessenger.PlayerAction
@@ -60,9 +58,9 @@ class MediaPlayerTileProviderService : TileProviderService() {
         tileMessenger.register()
 
         tileStateFlow = combine(
-            this.mediaDataStore.data,
-            this.artworkDataStore.data,
-            this.appInfoDataStore.data,
+            TileDataCache.mediaData,
+            TileDataCache.artwork,
+            TileDataCache.appInfo,
             tileMessenger.connectionState
         ) { mediaCache, artwork, appInfo, connectionStatus ->
             MediaPlayerTileState(